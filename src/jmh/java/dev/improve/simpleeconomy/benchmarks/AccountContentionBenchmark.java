@@ -0,0 +1,157 @@
+package dev.improve.simpleeconomy.benchmarks;
+
+import dev.improve.simpleeconomy.managers.DatabaseManager;
+import dev.improve.simpleeconomy.utils.Config;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how deposit, withdraw, transfer and balance lookups scale with thread count when every
+ * thread works on random accounts. Compare the 1, 4 and MAX thread results to see
+ * how much the per-account locks let unrelated accounts proceed in parallel.
+ * Sample-time mode reports the latency percentiles next to the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountContentionBenchmark {
+
+    @Param({"10000"})
+    public int accounts;
+
+    @Param({BenchmarkProviders.MEMORY, BenchmarkProviders.SQLITE})
+    public String provider;
+
+    private Path folder;
+    private DatabaseManager manager;
+    private UUID[] ids;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkProviders.configure();
+        folder = BenchmarkProviders.createFolder(provider);
+        manager = BenchmarkProviders.createManager(provider, folder);
+
+        ids = new UUID[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = UUID.randomUUID();
+            manager.setBalance(ids[i], Config.DEFAULT_BALANCE);
+        }
+        manager.flushPendingWrites();
+    }
+
+    /**
+     * Saves what the iteration queued, so one iteration's backlog does not slow down the next.
+     */
+    @TearDown(Level.Iteration)
+    public void flush() {
+        manager.flushPendingWrites();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+        BenchmarkProviders.deleteFolder(folder);
+    }
+
+    private UUID randomAccount() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    private Object deposit() {
+        return manager.deposit(randomAccount(), 1.0);
+    }
+
+    private Object withdraw() {
+        return manager.withdraw(randomAccount(), 1.0);
+    }
+
+    private double getBalance() {
+        return manager.getBalance(randomAccount());
+    }
+
+    private Object transfer() {
+        UUID from = randomAccount();
+        UUID to = randomAccount();
+        return manager.transfer(from, to, 1.0);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object deposit1() {
+        return deposit();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object deposit4() {
+        return deposit();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object depositMax() {
+        return deposit();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object withdraw1() {
+        return withdraw();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object withdraw4() {
+        return withdraw();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object withdrawMax() {
+        return withdraw();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double getBalance1() {
+        return getBalance();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double getBalance4() {
+        return getBalance();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public double getBalanceMax() {
+        return getBalance();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object transfer1() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object transfer4() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object transferMax() {
+        return transfer();
+    }
+}
@@ -0,0 +1,79 @@
+package dev.improve.simpleeconomy.benchmarks;
+
+import dev.improve.simpleeconomy.database.DatabaseProvider;
+import dev.improve.simpleeconomy.database.SQLiteProvider;
+import dev.improve.simpleeconomy.managers.DatabaseManager;
+import dev.improve.simpleeconomy.utils.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Builds the storage backends the benchmarks run against, selected by a {@code provider} parameter.
+ * "memory" uses {@link InMemoryProvider}; "sqlite" uses a real database file in a temporary folder.
+ */
+final class BenchmarkProviders {
+
+    static final String MEMORY = "memory";
+    static final String SQLITE = "sqlite";
+
+    private BenchmarkProviders() {
+    }
+
+    /**
+     * Sets the configuration every benchmark assumes: large starting balances and no auto-save.
+     */
+    static void configure() {
+        Config.DEFAULT_BALANCE = 1_000_000.0;
+        Config.MIN_BALANCE = 0.0;
+        Config.MAX_BALANCE = Double.MAX_VALUE;
+        Config.FRACTIONAL_DIGITS = 2;
+        Config.SAVE_INTERVAL_TICKS = 1200L;
+        Config.WRITE_BATCH_SIZE = 1000;
+        Config.MAX_PENDING_WRITES = Integer.MAX_VALUE;
+        Config.CURRENCY_SYMBOL = "$";
+        Config.DATABASE_EXECUTOR = "fixed";
+        Config.DATABASE_EXECUTOR_THREADS = 2;
+    }
+
+    static Path createFolder(String provider) {
+        if (!SQLITE.equals(provider)) {
+            return null;
+        }
+        try {
+            return Files.createTempDirectory("simpleeconomy-bench");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static DatabaseProvider create(String provider, Path folder) {
+        return switch (provider) {
+            case MEMORY -> new InMemoryProvider();
+            case SQLITE -> new SQLiteProvider(folder.toFile(), 4);
+            default -> throw new IllegalArgumentException("Unknown provider " + provider);
+        };
+    }
+
+    static DatabaseManager createManager(String provider, Path folder) {
+        DatabaseManager manager = new DatabaseManager(Logger.getLogger("SimpleEconomy-Benchmark"), create(provider, folder));
+        manager.setup();
+        return manager;
+    }
+
+    static void deleteFolder(Path folder) {
+        if (folder == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException ignored) {
+        }
+    }
+}
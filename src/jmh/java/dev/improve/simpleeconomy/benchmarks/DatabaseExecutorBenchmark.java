@@ -0,0 +1,136 @@
+package dev.improve.simpleeconomy.benchmarks;
+
+import dev.improve.simpleeconomy.managers.DatabaseManager;
+import dev.improve.simpleeconomy.utils.Config;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Compares the fixed two-thread database executor with the virtual-thread one during a burst of async work.
+ * Each invocation loads {@code burst} accounts that are not cached, as in a join storm, alongside a few
+ * baltop queries, and waits for all of them. The backend holds every query for {@code latencyMicros},
+ * like a network round trip, and runs at most {@link #CONNECTIONS} at once, like a connection pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class DatabaseExecutorBenchmark {
+
+    static final int CONNECTIONS = 10;
+
+    @Param({"fixed", "virtual"})
+    public String executor;
+
+    @Param({"200", "1000"})
+    public int latencyMicros;
+
+    @Param({"100"})
+    public int burst;
+
+    private DatabaseManager manager;
+    private UUID[] ids;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkProviders.configure();
+        Config.DATABASE_EXECUTOR = executor;
+        manager = new DatabaseManager(Logger.getLogger("SimpleEconomy-Benchmark"),
+                new RemoteProvider(latencyMicros, CONNECTIONS));
+        manager.setup();
+
+        ids = new UUID[burst];
+        for (int i = 0; i < burst; i++) {
+            ids[i] = UUID.randomUUID();
+            manager.setBalance(ids[i], 100.0);
+        }
+        manager.flushPendingWrites();
+    }
+
+    @Setup(Level.Invocation)
+    public void evict() {
+        for (UUID id : ids) {
+            manager.evictFromCache(id);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public void joinStorm() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[burst + burst / 20];
+        for (int i = 0; i < burst; i++) {
+            futures[i] = manager.loadBalanceAsync(ids[i]);
+        }
+        for (int i = burst; i < futures.length; i++) {
+            futures[i] = manager.getTopBalancesAsync(10);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * {@link InMemoryProvider} behind a simulated connection pool and round trip.
+     */
+    static final class RemoteProvider extends InMemoryProvider {
+
+        private final long latencyNanos;
+        private final Semaphore connections;
+        private final int size;
+
+        RemoteProvider(int latencyMicros, int size) {
+            this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+            this.connections = new Semaphore(size);
+            this.size = size;
+        }
+
+        private void roundTrip() {
+            connections.acquireUninterruptibly();
+            try {
+                LockSupport.parkNanos(latencyNanos);
+            } finally {
+                connections.release();
+            }
+        }
+
+        @Override
+        public boolean hasBalance(UUID uuid) {
+            roundTrip();
+            return super.hasBalance(uuid);
+        }
+
+        @Override
+        public Double loadBalance(UUID uuid) {
+            roundTrip();
+            return super.loadBalance(uuid);
+        }
+
+        @Override
+        public void saveBalances(Map<UUID, Double> balances) {
+            roundTrip();
+            super.saveBalances(balances);
+        }
+
+        @Override
+        public Map<UUID, Double> getTopBalances(int limit) {
+            roundTrip();
+            return super.getTopBalances(limit);
+        }
+
+        @Override
+        public int maxConnections() {
+            return size;
+        }
+    }
+}
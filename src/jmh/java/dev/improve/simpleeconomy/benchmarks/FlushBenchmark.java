@@ -0,0 +1,63 @@
+package dev.improve.simpleeconomy.benchmarks;
+
+import dev.improve.simpleeconomy.managers.DatabaseManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one {@link DatabaseManager#flushPendingWrites()} call for a given number of changed accounts.
+ * Every iteration first changes {@code dirty} balances, then times the flush that saves them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class FlushBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int dirty;
+
+    @Param({BenchmarkProviders.MEMORY, BenchmarkProviders.SQLITE})
+    public String provider;
+
+    private Path folder;
+    private DatabaseManager manager;
+    private UUID[] ids;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkProviders.configure();
+        folder = BenchmarkProviders.createFolder(provider);
+        manager = BenchmarkProviders.createManager(provider, folder);
+
+        ids = new UUID[dirty];
+        for (int i = 0; i < dirty; i++) {
+            ids[i] = UUID.randomUUID();
+            manager.setBalance(ids[i], 0.0);
+        }
+        manager.flushPendingWrites();
+    }
+
+    @Setup(Level.Iteration)
+    public void dirtyAccounts() {
+        for (UUID id : ids) {
+            manager.deposit(id, 1.0);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+        BenchmarkProviders.deleteFolder(folder);
+    }
+
+    @Benchmark
+    public void flush() {
+        manager.flushPendingWrites();
+    }
+}
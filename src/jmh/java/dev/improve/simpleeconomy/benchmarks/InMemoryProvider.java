@@ -0,0 +1,143 @@
+package dev.improve.simpleeconomy.benchmarks;
+
+import dev.improve.simpleeconomy.database.DatabaseProvider;
+import dev.improve.simpleeconomy.database.LedgerEntry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Database stand-in that keeps every row in a map, so benchmarks measure the manager and not JDBC.
+ */
+public class InMemoryProvider implements DatabaseProvider {
+
+    private final Map<UUID, Double> rows = new ConcurrentHashMap<>();
+    private final Map<UUID, String> names = new LinkedHashMap<>();
+    private final List<LedgerEntry> ledger = new ArrayList<>();
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public void shutdown() {
+        rows.clear();
+    }
+
+    @Override
+    public boolean hasBalance(UUID uuid) {
+        return rows.containsKey(uuid);
+    }
+
+    @Override
+    public Double loadBalance(UUID uuid) {
+        return rows.get(uuid);
+    }
+
+    @Override
+    public void saveBalance(UUID uuid, double balance) {
+        rows.put(uuid, balance);
+    }
+
+    @Override
+    public void saveBalances(Map<UUID, Double> balances) {
+        rows.putAll(balances);
+    }
+
+    @Override
+    public void deleteBalance(UUID uuid) {
+        rows.remove(uuid);
+    }
+
+    @Override
+    public Map<UUID, Double> getTopBalances(int limit) {
+        Map<UUID, Double> top = new LinkedHashMap<>();
+        rows.entrySet().stream()
+                .sorted(RANKING)
+                .limit(limit)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    @Override
+    public Map<UUID, Double> getTopBalancesAfter(double balance, UUID uuid, int limit) {
+        Map.Entry<UUID, Double> after = Map.entry(uuid, balance);
+        Map<UUID, Double> top = new LinkedHashMap<>();
+        rows.entrySet().stream()
+                .filter(entry -> RANKING.compare(entry, after) > 0)
+                .sorted(RANKING)
+                .limit(limit)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    @Override
+    public void forEachBalance(BiConsumer<UUID, Double> consumer) {
+        rows.forEach(consumer);
+    }
+
+    @Override
+    public synchronized void saveNames(Map<UUID, String> saved) {
+        saved.forEach((uuid, name) -> {
+            names.remove(uuid);
+            names.put(uuid, name);
+        });
+    }
+
+    @Override
+    public synchronized void forEachName(BiConsumer<UUID, String> consumer) {
+        names.forEach(consumer);
+    }
+
+    @Override
+    public synchronized void saveLedger(List<LedgerEntry> entries) {
+        ledger.addAll(entries);
+    }
+
+    @Override
+    public synchronized List<LedgerEntry> getLedger(UUID uuid, int limit) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (int i = ledger.size() - 1; i >= 0 && entries.size() < limit; i--) {
+            if (ledger.get(i).account().equals(uuid)) {
+                entries.add(ledger.get(i));
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized int pruneLedger(long before) {
+        // Entries are not grouped by month here, so nothing counts as a dropped month
+        ledger.removeIf(entry -> entry.time() < before);
+        return 0;
+    }
+
+    @Override
+    public double getTotalBalance() {
+        return rows.values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    @Override
+    public int getPlayerCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getPlayerRank(UUID uuid) {
+        Double balance = rows.get(uuid);
+        if (balance == null) {
+            return -1;
+        }
+        return (int) rows.values().stream().filter(value -> value > balance).count() + 1;
+    }
+
+    @Override
+    public String getName() {
+        return "Memory";
+    }
+}
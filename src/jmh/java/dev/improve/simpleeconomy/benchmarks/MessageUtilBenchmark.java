@@ -0,0 +1,51 @@
+package dev.improve.simpleeconomy.benchmarks;
+
+import dev.improve.simpleeconomy.utils.Config;
+import dev.improve.simpleeconomy.utils.MessageUtil;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures message formatting, which runs for every command reply and placeholder render.
+ * Run with the GC profiler to see how much each call allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageUtilBenchmark {
+
+    private MessageUtil messages;
+    private double amount;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkProviders.configure();
+        messages = new MessageUtil(new YamlConfiguration(), 2);
+        amount = 1_234_567.891;
+    }
+
+    @Benchmark
+    public String colorizePlain() {
+        return messages.colorize("You have been paid by another player.");
+    }
+
+    @Benchmark
+    public String colorizeLegacy() {
+        return messages.colorize("&aYou received &e$100.00 &afrom &bSteve&a.");
+    }
+
+    @Benchmark
+    public String colorizeHex() {
+        return messages.colorize("&#55FF55You received &#FFFF55$100.00 &#55FF55from &#55FFFFSteve&a.");
+    }
+
+    @Benchmark
+    public String formatCurrency() {
+        return messages.formatCurrency(amount);
+    }
+}
@@ -0,0 +1,386 @@
+package dev.improve.simpleeconomy.loadtest;
+
+import dev.improve.simpleeconomy.database.DatabaseProvider;
+import dev.improve.simpleeconomy.database.MySQLProvider;
+import dev.improve.simpleeconomy.database.SQLiteProvider;
+import dev.improve.simpleeconomy.hooks.VaultEconomyHook;
+import dev.improve.simpleeconomy.managers.DatabaseManager;
+import dev.improve.simpleeconomy.managers.EconomyResult;
+import dev.improve.simpleeconomy.metrics.LatencyHistogram;
+import dev.improve.simpleeconomy.utils.Config;
+import org.bukkit.OfflinePlayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Drives a {@link DatabaseManager} the way a busy server does, without a server.
+ * <p>
+ * A simulated main thread ticks 20 times a second. Each tick it makes the configured share of
+ * Vault calls (shop plugins), starts {@code transferAsync} and {@code getTopBalancesAsync} calls
+ * (commands), and lets players join and quit, which preloads and evicts their balances.
+ * Buyers are online players; sellers and payees are drawn from all accounts, so offline accounts
+ * are loaded on demand. Both follow a Zipfian popularity curve.
+ * <p>
+ * Reports throughput and latency percentiles per operation, and how long the main thread spent inside
+ * economy calls, which is time a real server could not spend on the tick.
+ */
+public final class LoadTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int TICKS_PER_SECOND = 20;
+    private static final int TOP_LIMIT = 10;
+
+    private final LoadTestOptions options;
+    private final Map<String, Stat> stats = new LinkedHashMap<>();
+    private final LatencyHistogram ticks = new LatencyHistogram();
+    private final Logger logger = Logger.getLogger("SimpleEconomy-LoadTest");
+
+    private DatabaseManager manager;
+    private VaultEconomyHook vault;
+    private OfflinePlayer[] players;
+    private ZipfianGenerator accountPopularity;
+    private ZipfianGenerator onlinePopularity;
+    private int[] online;
+    private boolean[] isOnline;
+    private volatile boolean measuring;
+    private long ticksOverBudget;
+
+    private static final class Stat {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder declined = new LongAdder();
+    }
+
+    private LoadTest(LoadTestOptions options) {
+        this.options = options;
+        for (String op : new String[]{"vault.getBalance", "vault.has", "vault.withdraw", "vault.deposit",
+                "transferAsync", "getTopBalancesAsync", "join", "quit", "flush"}) {
+            stats.put(op, new Stat());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            if (arg.equals("help") || arg.equals("--help")) {
+                System.out.println(LoadTestOptions.USAGE);
+                return;
+            }
+        }
+        new LoadTest(LoadTestOptions.parse(args)).run();
+    }
+
+    private void run() throws Exception {
+        configure();
+        Path temporaryFolder = null;
+        DatabaseProvider provider;
+        if (options.provider().equals("mysql")) {
+            provider = new MySQLProvider(options.mysqlHost(), options.mysqlPort(), options.mysqlDatabase(),
+                    options.mysqlUsername(), options.mysqlPassword(), Config.MYSQL_POOL_SIZE, false, 0);
+        } else {
+            Path folder;
+            if (options.folder() != null) {
+                folder = Path.of(options.folder());
+            } else {
+                temporaryFolder = Files.createTempDirectory("simpleeconomy-loadtest");
+                folder = temporaryFolder;
+            }
+            provider = new SQLiteProvider(folder.toFile(), Config.SQLITE_READ_CONNECTIONS);
+        }
+
+        manager = new DatabaseManager(logger, provider);
+        manager.setup();
+        vault = new VaultEconomyHook(null, manager);
+
+        ScheduledExecutorService autoSave = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SimpleEconomy-AutoSave");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            seed();
+            if (options.saveIntervalTicks() > 0) {
+                long period = options.saveIntervalTicks() * TICK_NANOS;
+                autoSave.scheduleAtFixedRate(this::autoSave, period, period, TimeUnit.NANOSECONDS);
+            }
+
+            Thread mainThread = new Thread(this::tickLoop, "Server thread");
+            mainThread.start();
+            mainThread.join();
+            report(provider.getName());
+        } finally {
+            autoSave.shutdownNow();
+            manager.shutdown();
+            deleteFolder(temporaryFolder);
+        }
+    }
+
+    private void configure() {
+        Config.DEFAULT_BALANCE = 1_000.0;
+        Config.MIN_BALANCE = 0.0;
+        Config.MAX_BALANCE = Double.MAX_VALUE;
+        Config.FRACTIONAL_DIGITS = 2;
+        Config.CURRENCY_SYMBOL = "$";
+        Config.SAVE_INTERVAL_TICKS = options.saveIntervalTicks();
+        Config.WRITE_BATCH_SIZE = 1000;
+        Config.MAX_PENDING_WRITES = 50_000;
+        Config.MYSQL_POOL_SIZE = 10;
+        Config.SQLITE_READ_CONNECTIONS = 4;
+        Config.DATABASE_EXECUTOR = options.executor();
+        Config.DATABASE_EXECUTOR_THREADS = 2;
+    }
+
+    /**
+     * Creates every account, then evicts all but the online players so the run starts with a realistic cache.
+     */
+    private void seed() {
+        int accounts = options.accounts();
+        System.out.println("Seeding " + accounts + " accounts...");
+        players = new OfflinePlayer[accounts];
+        for (int i = 0; i < accounts; i++) {
+            // Fixed ids, so a reused SQLite folder or MySQL database is seeded in place
+            UUID uuid = new UUID(0x53454C4F41445445L, i);
+            players[i] = offlinePlayer(uuid, "Player" + i);
+            manager.setBalance(uuid, Config.DEFAULT_BALANCE);
+        }
+        manager.flushPendingWrites();
+
+        online = new int[options.players()];
+        isOnline = new boolean[accounts];
+        for (int i = 0; i < online.length; i++) {
+            online[i] = i;
+            isOnline[i] = true;
+        }
+        for (int i = online.length; i < accounts; i++) {
+            manager.evictFromCache(players[i].getUniqueId());
+        }
+
+        accountPopularity = new ZipfianGenerator(accounts, options.zipfTheta());
+        onlinePopularity = new ZipfianGenerator(Math.max(1, online.length), options.zipfTheta());
+    }
+
+    private static OfflinePlayer offlinePlayer(UUID uuid, String name) {
+        return (OfflinePlayer) Proxy.newProxyInstance(LoadTest.class.getClassLoader(), new Class<?>[]{OfflinePlayer.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getUniqueId" -> uuid;
+                    case "getName", "toString" -> name;
+                    case "hasPlayedBefore" -> true;
+                    case "isOnline" -> false;
+                    case "hashCode" -> uuid.hashCode();
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private void tickLoop() {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+        double vaultCalls = 0;
+        double transfers = 0;
+        double baltops = 0;
+        double joins = 0;
+        long next = start;
+
+        while (true) {
+            long tickStart = System.nanoTime();
+            if (tickStart >= end) {
+                break;
+            }
+            measuring = tickStart >= measureFrom;
+
+            vaultCalls += options.vaultCallsPerSecond() / TICKS_PER_SECOND;
+            for (; vaultCalls >= 1; vaultCalls--) {
+                vaultCall();
+            }
+            transfers += options.transfersPerSecond() / TICKS_PER_SECOND;
+            for (; transfers >= 1; transfers--) {
+                transfer();
+            }
+            baltops += options.baltopPerSecond() / TICKS_PER_SECOND;
+            for (; baltops >= 1; baltops--) {
+                baltop();
+            }
+            joins += options.joinsPerSecond() / TICKS_PER_SECOND;
+            for (; joins >= 1; joins--) {
+                churn();
+            }
+
+            long tickNanos = System.nanoTime() - tickStart;
+            if (measuring) {
+                ticks.record(tickNanos);
+                if (tickNanos > TICK_NANOS) {
+                    ticksOverBudget++;
+                }
+            }
+
+            next += TICK_NANOS;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            } else {
+                // Like the server, a late tick does not make the following ones run early
+                next = System.nanoTime();
+            }
+        }
+        measuring = false;
+    }
+
+    private void vaultCall() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double roll = random.nextDouble();
+        double amount = random.nextInt(1, 10_000) / 100.0;
+        OfflinePlayer buyer = players[online[onlinePopularity.next()]];
+
+        if (roll < options.withdrawShare()) {
+            time("vault.withdraw", () -> vault.withdrawPlayer(buyer, amount).transactionSuccess());
+        } else if (roll < options.withdrawShare() + options.depositShare()) {
+            OfflinePlayer seller = players[accountPopularity.next()];
+            time("vault.deposit", () -> vault.depositPlayer(seller, amount).transactionSuccess());
+        } else if (random.nextBoolean()) {
+            time("vault.getBalance", () -> vault.getBalance(buyer) >= 0);
+        } else {
+            time("vault.has", () -> {
+                vault.has(buyer, amount);
+                return true;
+            });
+        }
+    }
+
+    private void transfer() {
+        UUID from = players[online[onlinePopularity.next()]].getUniqueId();
+        UUID to = players[accountPopularity.next()].getUniqueId();
+        double amount = ThreadLocalRandom.current().nextInt(1, 10_000) / 100.0;
+        track("transferAsync", manager.transferAsync(from, to, amount), EconomyResult::success);
+    }
+
+    private void baltop() {
+        track("getTopBalancesAsync", manager.getTopBalancesAsync(TOP_LIMIT), top -> !top.isEmpty());
+    }
+
+    /**
+     * One player quits and a random offline player joins in their slot.
+     */
+    private void churn() {
+        if (online.length == 0 || online.length == players.length) {
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int slot = random.nextInt(online.length);
+        int leaving = online[slot];
+        int joining;
+        do {
+            joining = random.nextInt(players.length);
+        } while (isOnline[joining]);
+
+        UUID leavingId = players[leaving].getUniqueId();
+        time("quit", () -> {
+            manager.evictFromCache(leavingId);
+            return true;
+        });
+        isOnline[leaving] = false;
+
+        UUID joiningId = players[joining].getUniqueId();
+        track("join", manager.loadBalanceAsync(joiningId), balance -> true);
+        isOnline[joining] = true;
+        online[slot] = joining;
+    }
+
+    private void autoSave() {
+        time("flush", () -> {
+            manager.flushPendingWrites();
+            return true;
+        });
+    }
+
+    private void time(String op, BooleanSupplier call) {
+        long start = System.nanoTime();
+        boolean success = call.getAsBoolean();
+        if (measuring) {
+            Stat stat = stats.get(op);
+            stat.latency.record(System.nanoTime() - start);
+            if (!success) {
+                stat.declined.increment();
+            }
+        }
+    }
+
+    private interface Outcome<T> {
+        boolean success(T result);
+    }
+
+    /**
+     * Records an async call from submission to completion. The submission itself counts as main thread time.
+     */
+    private <T> void track(String op, CompletableFuture<T> future, Outcome<T> outcome) {
+        long start = System.nanoTime();
+        boolean counted = measuring;
+        future.whenComplete((result, error) -> {
+            if (!counted) {
+                return;
+            }
+            Stat stat = stats.get(op);
+            stat.latency.record(System.nanoTime() - start);
+            if (error != null || !outcome.success(result)) {
+                stat.declined.increment();
+            }
+        });
+    }
+
+    private void report(String providerName) {
+        double seconds = options.durationSeconds();
+        System.out.printf("%n=== %s, %d accounts, %d online, zipf %.2f, %d s measured ===%n",
+                providerName, options.accounts(), options.players(), options.zipfTheta(), options.durationSeconds());
+        System.out.printf("%-22s %10s %10s %10s %10s %10s %10s %9s%n",
+                "operation", "count", "ops/s", "p50 us", "p99 us", "p999 us", "max us", "declined");
+        for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            if (latency.count() == 0) {
+                continue;
+            }
+            System.out.printf("%-22s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %9d%n",
+                    entry.getKey(), latency.count(), latency.count() / seconds,
+                    micros(latency.percentile(0.50)), micros(latency.percentile(0.99)),
+                    micros(latency.percentile(0.999)), micros(latency.max()), entry.getValue().declined.sum());
+        }
+
+        long tickCount = ticks.count();
+        double blockedMillis = ticks.sum() / 1_000_000.0;
+        double budgetMillis = tickCount * (TICK_NANOS / 1_000_000.0);
+        System.out.printf("%nmain thread: %d ticks, %.1f ms blocked in economy calls (%.2f%% of the tick budget)%n",
+                tickCount, blockedMillis, budgetMillis == 0 ? 0.0 : 100.0 * blockedMillis / budgetMillis);
+        System.out.printf("per tick: p50 %.3f ms, p99 %.3f ms, p999 %.3f ms, max %.3f ms, %d ticks over 50 ms%n",
+                ticks.percentile(0.50) / 1_000_000.0, ticks.percentile(0.99) / 1_000_000.0,
+                ticks.percentile(0.999) / 1_000_000.0, ticks.max() / 1_000_000.0, ticksOverBudget);
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+
+    private static void deleteFolder(Path folder) {
+        if (folder == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException ignored) {
+        }
+    }
+}
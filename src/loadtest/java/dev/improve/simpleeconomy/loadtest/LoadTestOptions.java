@@ -0,0 +1,91 @@
+package dev.improve.simpleeconomy.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load test settings, read from {@code key=value} arguments. Rates are per second of simulated server time.
+ */
+record LoadTestOptions(
+        String provider,
+        String folder,
+        String executor,
+        String mysqlHost,
+        int mysqlPort,
+        String mysqlDatabase,
+        String mysqlUsername,
+        String mysqlPassword,
+        int accounts,
+        int players,
+        double zipfTheta,
+        int durationSeconds,
+        int warmupSeconds,
+        double vaultCallsPerSecond,
+        double withdrawShare,
+        double depositShare,
+        double transfersPerSecond,
+        double baltopPerSecond,
+        double joinsPerSecond,
+        long saveIntervalTicks
+) {
+
+    static final String USAGE = """
+            Usage: loadTest [key=value ...]
+              provider=sqlite|mysql     storage backend (sqlite)
+              folder=<path>             SQLite data folder (a temporary folder)
+              executor=fixed|virtual    database executor, as database.executor.type (fixed)
+              host, port, database, username, password   MySQL/MariaDB connection (localhost:3306/loadtest root)
+              accounts=100000           accounts in the database
+              players=1000              players online at once
+              zipf=0.99                 account popularity skew, 0 for uniform
+              duration=60 warmup=10     measured and warm-up seconds
+              vault=4000                Vault calls per second from the main thread
+              withdraw=0.3 deposit=0.3  share of Vault calls that withdraw or deposit; the rest read balances
+              transfers=50              transferAsync calls per second
+              baltop=2                  getTopBalancesAsync calls per second
+              joins=5                   players joining (and as many quitting) per second
+              save-interval=1200        ticks between auto-saves
+            """;
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+            values.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+
+        LoadTestOptions options = new LoadTestOptions(
+                values.getOrDefault("provider", "sqlite"),
+                values.get("folder"),
+                values.getOrDefault("executor", "fixed"),
+                values.getOrDefault("host", "localhost"),
+                Integer.parseInt(values.getOrDefault("port", "3306")),
+                values.getOrDefault("database", "loadtest"),
+                values.getOrDefault("username", "root"),
+                values.getOrDefault("password", ""),
+                Integer.parseInt(values.getOrDefault("accounts", "100000")),
+                Integer.parseInt(values.getOrDefault("players", "1000")),
+                Double.parseDouble(values.getOrDefault("zipf", "0.99")),
+                Integer.parseInt(values.getOrDefault("duration", "60")),
+                Integer.parseInt(values.getOrDefault("warmup", "10")),
+                Double.parseDouble(values.getOrDefault("vault", "4000")),
+                Double.parseDouble(values.getOrDefault("withdraw", "0.3")),
+                Double.parseDouble(values.getOrDefault("deposit", "0.3")),
+                Double.parseDouble(values.getOrDefault("transfers", "50")),
+                Double.parseDouble(values.getOrDefault("baltop", "2")),
+                Double.parseDouble(values.getOrDefault("joins", "5")),
+                Long.parseLong(values.getOrDefault("save-interval", "1200"))
+        );
+
+        if (options.players > options.accounts) {
+            throw new IllegalArgumentException("players cannot exceed accounts");
+        }
+        if (options.withdrawShare + options.depositShare > 1.0) {
+            throw new IllegalArgumentException("withdraw and deposit shares add up to more than 1");
+        }
+        return options;
+    }
+}
@@ -0,0 +1,55 @@
+package dev.improve.simpleeconomy.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks indexes in {@code [0, items)} with Zipfian popularity: index 0 is the most popular,
+ * and the probability of index {@code i} falls off as {@code 1 / (i + 1)^theta}.
+ * Uses the constant-time method from Gray et al., "Quickly Generating Billion-Record Synthetic Databases".
+ */
+final class ZipfianGenerator {
+
+    private final int items;
+    private final double theta;
+    private final double zetaN;
+    private final double alpha;
+    private final double eta;
+
+    /**
+     * @param theta the skew, in {@code [0, 1)}; 0 is uniform and 0.99 is the usual "hot keys" setting
+     */
+    ZipfianGenerator(int items, double theta) {
+        if (items < 1) {
+            throw new IllegalArgumentException("items must be at least 1");
+        }
+        if (theta < 0.0 || theta >= 1.0) {
+            throw new IllegalArgumentException("theta must be in [0, 1)");
+        }
+        this.items = items;
+        this.theta = theta;
+        this.zetaN = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1.0 - Math.pow(2.0 / items, 1.0 - theta)) / (1.0 - zeta(2, theta) / zetaN);
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0.0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1.0 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    int next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return Math.min(1, items - 1);
+        }
+        int index = (int) (items * Math.pow(eta * u - eta + 1.0, alpha));
+        return Math.min(index, items - 1);
+    }
+}
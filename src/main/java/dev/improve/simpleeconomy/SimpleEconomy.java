@@ -1,17 +1,22 @@
 package dev.improve.simpleeconomy;
 
+import dev.improve.simpleeconomy.api.AsyncEconomy;
 import dev.improve.simpleeconomy.commands.*;
 import dev.improve.simpleeconomy.hooks.PAPIHook;
 import dev.improve.simpleeconomy.hooks.VaultEconomyHook;
 import dev.improve.simpleeconomy.listeners.PlayerListener;
+import dev.improve.simpleeconomy.listeners.TabCompleteListener;
 import dev.improve.simpleeconomy.managers.DatabaseManager;
+import dev.improve.simpleeconomy.metrics.PrometheusExporter;
 import dev.improve.simpleeconomy.utils.Config;
 import dev.improve.simpleeconomy.utils.MessageUtil;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -21,6 +26,7 @@ public class SimpleEconomy extends JavaPlugin {
 
     private MessageUtil messageUtil;
     private DatabaseManager databaseManager;
+    private PrometheusExporter prometheusExporter;
     private Config config;
 
     @Override
@@ -32,8 +38,12 @@ public class SimpleEconomy extends JavaPlugin {
 
         databaseManager = new DatabaseManager(this);
         databaseManager.setup();
+        seedNames();
+        startPrometheusExporter();
 
-        messageUtil = new MessageUtil(getConfig());
+        messageUtil = new MessageUtil(getConfig(), databaseManager.getFractionalDigits());
+
+        Bukkit.getServicesManager().register(AsyncEconomy.class, databaseManager, this, ServicePriority.Normal);
 
         if (Bukkit.getPluginManager().getPlugin("Vault") != null) {
             Bukkit.getServicesManager().register(
@@ -52,13 +62,39 @@ public class SimpleEconomy extends JavaPlugin {
         registerCommands();
 
         if (getServer().getPluginManager().isPluginEnabled("PlaceholderAPI")) {
-            new PAPIHook(this).register();
+            PAPIHook papiHook = new PAPIHook(this);
+            papiHook.register();
+            getServer().getPluginManager().registerEvents(papiHook, this);
             getLogger().info("PlaceholderAPI hook registered.");
         }
     }
 
+    /**
+     * Fills an empty name index once from the server's player data, so names resolve straight after upgrading.
+     * Players already online, after a reload, are recorded either way.
+     */
+    private void seedNames() {
+        if (databaseManager.getKnownNameCount() == 0) {
+            int seeded = 0;
+            for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
+                String name = player.getName();
+                if (name != null) {
+                    databaseManager.updateName(player.getUniqueId(), name);
+                    seeded++;
+                }
+            }
+            if (seeded > 0) {
+                getLogger().info("Seeded the name index with " + seeded + " players from the server's player data.");
+            }
+        }
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            databaseManager.updateName(player.getUniqueId(), player.getName());
+        }
+    }
+
     @Override
     public void onDisable() {
+        stopPrometheusExporter();
         if (databaseManager != null) {
             databaseManager.shutdown();
         }
@@ -68,15 +104,19 @@ public class SimpleEconomy extends JavaPlugin {
         BalanceCommand balanceCommand = new BalanceCommand(this);
         PayCommand payCommand = new PayCommand(this);
         EcoCommand ecoCommand = new EcoCommand(this);
+        TabCompleteListener tabCompleteListener = new TabCompleteListener();
+
+        registerCommand("balance", balanceCommand, balanceCommand, tabCompleteListener);
+        registerCommand("baltop", new BalTopCommand(this), null, tabCompleteListener);
+        registerCommand("pay", payCommand, payCommand, tabCompleteListener);
+        registerCommand("eco", ecoCommand, ecoCommand, tabCompleteListener);
+        registerCommand("simpleeconomy", new ReloadCommand(this), null, tabCompleteListener);
 
-        registerCommand("balance", balanceCommand, balanceCommand);
-        registerCommand("baltop", new BalTopCommand(this), null);
-        registerCommand("pay", payCommand, payCommand);
-        registerCommand("eco", ecoCommand, ecoCommand);
-        registerCommand("simpleeconomy", new ReloadCommand(this), null);
+        getServer().getPluginManager().registerEvents(tabCompleteListener, this);
     }
 
-    private void registerCommand(String name, CommandExecutor executor, TabCompleter tabCompleter) {
+    private void registerCommand(String name, CommandExecutor executor, TabCompleter tabCompleter,
+                                 TabCompleteListener tabCompleteListener) {
         PluginCommand command = getCommand(name);
         if (command == null) {
             getLogger().severe("Command " + name + " is not defined in plugin.yml");
@@ -85,16 +125,34 @@ public class SimpleEconomy extends JavaPlugin {
         command.setExecutor(executor);
         if (tabCompleter != null) {
             command.setTabCompleter(tabCompleter);
+            tabCompleteListener.register(command, tabCompleter);
         }
     }
 
     public void refreshConfiguration() {
         reloadConfig();
         config.reload();
-        messageUtil = new MessageUtil(getConfig());
+        messageUtil = new MessageUtil(getConfig(), databaseManager.getFractionalDigits());
         if (databaseManager != null) {
             databaseManager.reloadSettings();
         }
+        stopPrometheusExporter();
+        startPrometheusExporter();
+    }
+
+    private void startPrometheusExporter() {
+        if (!Config.PROMETHEUS_ENABLED || databaseManager == null) {
+            return;
+        }
+        prometheusExporter = new PrometheusExporter(databaseManager.getMetrics(), getLogger());
+        prometheusExporter.start(Config.PROMETHEUS_BIND, Config.PROMETHEUS_PORT, Config.PROMETHEUS_PATH);
+    }
+
+    private void stopPrometheusExporter() {
+        if (prometheusExporter != null) {
+            prometheusExporter.stop();
+            prometheusExporter = null;
+        }
     }
 
     public static SimpleEconomy getInstance() {
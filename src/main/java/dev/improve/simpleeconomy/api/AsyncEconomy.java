@@ -0,0 +1,70 @@
+package dev.improve.simpleeconomy.api;
+
+import dev.improve.simpleeconomy.managers.BalanceChange;
+import dev.improve.simpleeconomy.managers.BatchMode;
+import dev.improve.simpleeconomy.managers.EconomyResult;
+import dev.improve.simpleeconomy.managers.LeaderboardPage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking access to SimpleEconomy, registered with Bukkit's services manager:
+ * <pre>{@code
+ * AsyncEconomy economy = Bukkit.getServicesManager().load(AsyncEconomy.class);
+ * economy.depositAsync(uuid, 100).thenAccept(result -> ...);
+ * }</pre>
+ * Futures complete on SimpleEconomy's own threads, or straight away when no database work is needed.
+ * Switch back to the main thread with the scheduler before touching the Bukkit API.
+ */
+public interface AsyncEconomy {
+
+    /**
+     * Whether the player has an account, without creating one.
+     */
+    CompletableFuture<Boolean> hasBalanceAsync(UUID uuid);
+
+    /**
+     * Loads and caches a player's balance, creating the account with the starting balance if needed.
+     */
+    CompletableFuture<Double> loadBalanceAsync(UUID uuid);
+
+    CompletableFuture<EconomyResult> depositAsync(UUID uuid, double amount);
+
+    CompletableFuture<EconomyResult> withdrawAsync(UUID uuid, double amount);
+
+    CompletableFuture<EconomyResult> setBalanceAsync(UUID uuid, double amount);
+
+    /**
+     * Moves money between two accounts atomically: either both balances change or neither does.
+     */
+    CompletableFuture<EconomyResult> transferAsync(UUID from, UUID to, double amount);
+
+    /**
+     * Applies many deposits (positive amounts) and withdrawals (negative amounts) under one set of locks,
+     * with one result per change in the same order. See {@code DatabaseManager#applyChanges}.
+     */
+    CompletableFuture<EconomyResult[]> applyChangesAsync(List<BalanceChange> changes, BatchMode mode);
+
+    /**
+     * The richest accounts, highest first.
+     */
+    CompletableFuture<Map<UUID, Double>> getTopBalancesAsync(int limit);
+
+    /**
+     * One page of the leaderboard, starting at 1, with each player's last known name. Pages are cached briefly
+     * and shared between callers, so this is cheap to call repeatedly.
+     */
+    CompletableFuture<LeaderboardPage> getTopPageAsync(int page);
+
+    CompletableFuture<Double> getTotalEconomyAsync();
+
+    CompletableFuture<Integer> getPlayerCountAsync();
+
+    /**
+     * A player's position on the leaderboard, starting at 1, or -1 if they have no account.
+     */
+    CompletableFuture<Integer> getPlayerRankAsync(UUID uuid);
+}
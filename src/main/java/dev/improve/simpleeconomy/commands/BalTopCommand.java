@@ -1,17 +1,16 @@
 package dev.improve.simpleeconomy.commands;
 
 import dev.improve.simpleeconomy.managers.DatabaseManager;
+import dev.improve.simpleeconomy.managers.LeaderboardPage;
+import dev.improve.simpleeconomy.utils.MessageTemplate;
 import dev.improve.simpleeconomy.utils.MessageUtil;
 import dev.improve.simpleeconomy.utils.Config;
 import dev.improve.simpleeconomy.SimpleEconomy;
-import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 
-import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class BalTopCommand implements CommandExecutor {
 
@@ -26,36 +25,60 @@ public class BalTopCommand implements CommandExecutor {
         MessageUtil msg = plugin.getMessageUtil();
         DatabaseManager db = plugin.getDatabaseManager();
 
-        sender.sendMessage(msg.getMessage("baltop.loading", "&7Loading baltop data..."));
+        int page = 1;
+        if (args.length > 1) {
+            sender.sendMessage(msg.getMessage("error.usage-baltop", "&cUsage: /baltop [page]"));
+            return true;
+        }
+        if (args.length == 1) {
+            try {
+                page = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                page = 0;
+            }
+            if (page < 1) {
+                sender.sendMessage(msg.getMessage("error.usage-baltop", "&cUsage: /baltop [page]"));
+                return true;
+            }
+        }
 
-        db.getTopBalancesAsync(10).thenAccept(topBalances -> {
+        CompletableFuture<LeaderboardPage> future = db.getTopPageAsync(page);
+        if (!future.isDone()) {
+            sender.sendMessage(msg.getMessage("baltop.loading", "&7Loading baltop data..."));
+        }
+
+        future.thenAccept(topPage -> {
             // Return to main thread for sending messages
             plugin.getServer().getScheduler().runTask(plugin, () -> {
-                sender.sendMessage(msg.getMessage("baltop.header", "&7Top &#54daf410 &7Richest Players:"));
+                sender.sendMessage(msg.getMessage("baltop.header", "&7Richest Players &8(&7page &#54daf4{page}&8):",
+                        "page", String.valueOf(topPage.number())));
 
-                if (topBalances.isEmpty()) {
+                if (topPage.entries().isEmpty()) {
                     sender.sendMessage(msg.getMessage("baltop.empty", "&7No player data found."));
                     return;
                 }
 
-                int position = 1;
-                for (Map.Entry<UUID, Double> entry : topBalances.entrySet()) {
-                    OfflinePlayer player = Bukkit.getOfflinePlayer(entry.getKey());
-                    String playerName = player.getName() == null ? "Unknown" : player.getName();
-                    String template = msg.getMessage("baltop.entry", "&7{position}. &#54daf4{player} &7- &#54daf4{balance}");
-                    String balance = msg.formatCurrency(entry.getValue());
+                MessageTemplate template = msg.template("baltop.entry", "&7{position}. &#54daf4{player} &7- &#54daf4{balance}");
+                boolean symbolInTemplate = template.text().contains("${balance}");
+                for (LeaderboardPage.Entry entry : topPage.entries()) {
+                    String playerName = entry.name() == null ? "Unknown" : entry.name();
+                    String balance = msg.formatCurrency(entry.balance());
 
-                    if (template.contains("${balance}")) {
+                    if (symbolInTemplate) {
                         balance = balance.startsWith(Config.CURRENCY_SYMBOL)
                                 ? balance.substring(Config.CURRENCY_SYMBOL.length())
                                 : balance;
                     }
 
-                    sender.sendMessage(template
-                            .replace("{position}", String.valueOf(position))
-                            .replace("{player}", playerName)
-                            .replace("{balance}", balance));
-                    position++;
+                    sender.sendMessage(template.render(
+                            "position", String.valueOf(entry.position()),
+                            "player", playerName,
+                            "balance", balance));
+                }
+
+                String footer = msg.getMessage("baltop.footer", "", "next", String.valueOf(topPage.number() + 1));
+                if (topPage.hasNext() && !footer.isEmpty()) {
+                    sender.sendMessage(footer);
                 }
             });
         });
@@ -1,10 +1,10 @@
 package dev.improve.simpleeconomy.commands;
 
 import dev.improve.simpleeconomy.managers.DatabaseManager;
+import dev.improve.simpleeconomy.utils.Config;
 import dev.improve.simpleeconomy.utils.MessageUtil;
 import dev.improve.simpleeconomy.SimpleEconomy;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -14,7 +14,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static org.bukkit.Bukkit.getScheduler;
 public class BalanceCommand implements CommandExecutor, TabCompleter {
@@ -33,20 +32,21 @@ public class BalanceCommand implements CommandExecutor, TabCompleter {
             getScheduler().runTaskAsynchronously(plugin, () -> {
                 double balance = db.getBalance(player.getUniqueId());
                 Bukkit.getScheduler().runTask(plugin, () -> player.sendMessage(
-                        msg.getMessage("balance.self", "&7Your balance is: &#54daf4{balance}")
-                                .replace("{balance}", msg.formatCurrency(balance))
+                        msg.getMessage("balance.self", "&7Your balance is: &#54daf4{balance}",
+                                "balance", msg.formatCurrency(balance))
                 ));
             });
             return true;
         } else if (args.length == 1) {
-            OfflinePlayer target = Bukkit.getOfflinePlayer(args[0]);
-            if (target.hasPlayedBefore() || target.isOnline()) {
+            UUID target = db.resolveName(args[0]);
+            if (target != null) {
+                String targetName = db.getName(target);
                 getScheduler().runTaskAsynchronously(plugin, () -> {
-                    double balance = db.getBalance(target.getUniqueId());
+                    double balance = db.getBalance(target);
                     Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage(
-                            msg.getMessage("balance.other", "&7{player}'s balance is: &#54daf4{balance}")
-                                    .replace("{player}", target.getName() == null ? "Unknown" : target.getName())
-                                    .replace("{balance}", msg.formatCurrency(balance))
+                            msg.getMessage("balance.other", "&7{player}'s balance is: &#54daf4{balance}",
+                                    "player", targetName,
+                                    "balance", msg.formatCurrency(balance))
                     ));
                 });
             } else {
@@ -62,11 +62,7 @@ public class BalanceCommand implements CommandExecutor, TabCompleter {
     public @Nullable List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
 
         if (args.length == 1) {
-            return Arrays.stream(Bukkit.getOfflinePlayers())
-                    .map(OfflinePlayer::getName)
-                    .filter(Objects::nonNull)
-                    .filter(name -> name.startsWith(args[0]))
-                    .collect(Collectors.toList());
+            return plugin.getDatabaseManager().completeNames(args[0], Config.TAB_COMPLETE_LIMIT);
         }
 
         return Collections.emptyList();
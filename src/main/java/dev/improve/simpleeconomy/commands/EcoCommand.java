@@ -1,12 +1,12 @@
 package dev.improve.simpleeconomy.commands;
 
+import dev.improve.simpleeconomy.database.LedgerEntry;
 import dev.improve.simpleeconomy.managers.DatabaseManager;
 import dev.improve.simpleeconomy.managers.EconomyResult;
 import dev.improve.simpleeconomy.managers.EconomyStatus;
 import dev.improve.simpleeconomy.utils.MessageUtil;
 import dev.improve.simpleeconomy.SimpleEconomy;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -16,14 +16,20 @@ import org.jetbrains.annotations.Nullable;
 
 import dev.improve.simpleeconomy.utils.Config;
 
-import java.util.Arrays;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class EcoCommand implements CommandExecutor, TabCompleter {
 
+    private static final DateTimeFormatter HISTORY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+            .withZone(ZoneId.systemDefault());
+
     private final SimpleEconomy plugin;
 
     public EcoCommand(SimpleEconomy plugin) {
@@ -39,34 +45,58 @@ public class EcoCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
+        if (args.length == 0) {
+            sender.sendMessage(msg.getMessage("error.usage-eco", "&cUsage: /eco <give|take|set|reset|history> <player> [amount]"));
+            return true;
+        }
+
         String sub = args[0].toLowerCase();
 
+        if (sub.equals("history")) {
+            if (args.length != 2) {
+                sender.sendMessage(msg.getMessage("error.usage-eco", "&cUsage: /eco <give|take|set|reset|history> <player> [amount]"));
+                return true;
+            }
+            if (!db.isLedgerEnabled()) {
+                sender.sendMessage(msg.getMessage("error.ledger-disabled", "&cThe ledger is disabled; enable it in the config to record history."));
+                return true;
+            }
+
+            UUID target = db.resolveName(args[1]);
+            if (target == null) {
+                sender.sendMessage(msg.getMessage("error.player-not-found", "&cThat player could not be found."));
+                return true;
+            }
+
+            db.getLedgerAsync(target, Config.LEDGER_HISTORY_SIZE).thenAccept(entries ->
+                    Bukkit.getScheduler().runTask(plugin, () -> sendHistory(sender, db.getName(target), entries)));
+            return true;
+        }
+
         // Handle reset separately (only 2 args needed)
         if (sub.equals("reset")) {
             if (args.length != 2) {
-                sender.sendMessage(msg.getMessage("error.usage-eco", "&cUsage: /eco <give|take|set|reset> <player> [amount]"));
+                sender.sendMessage(msg.getMessage("error.usage-eco", "&cUsage: /eco <give|take|set|reset|history> <player> [amount]"));
                 return true;
             }
 
-            OfflinePlayer target = Bukkit.getOfflinePlayer(args[1]);
-            if (!target.hasPlayedBefore() && !target.isOnline()) {
+            UUID target = db.resolveName(args[1]);
+            if (target == null) {
                 sender.sendMessage(msg.getMessage("error.player-not-found", "&cThat player could not be found."));
                 return true;
             }
 
-            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-                EconomyResult result = db.setBalance(target.getUniqueId(), Config.DEFAULT_BALANCE);
-
+            db.setBalanceAsync(target, Config.DEFAULT_BALANCE, sender.getName()).thenAccept(result -> {
                 Bukkit.getScheduler().runTask(plugin, () -> {
                     if (!result.success()) {
                         sender.sendMessage(msg.getMessage(mapStatusToMessage(result.status()), "&cUnable to reset that balance."));
                         return;
                     }
 
-                    String targetName = target.getName() == null ? "Unknown" : target.getName();
-                    sender.sendMessage(msg.getMessage("eco.reset", "&7Reset &#54daf4{player}&7's balance to &#54daf4{amount}&7.")
-                            .replace("{player}", targetName)
-                            .replace("{amount}", msg.formatCurrency(Config.DEFAULT_BALANCE)));
+                    String targetName = db.getName(target);
+                    sender.sendMessage(msg.getMessage("eco.reset", "&7Reset &#54daf4{player}&7's balance to &#54daf4{amount}&7.",
+                            "player", targetName,
+                            "amount", msg.formatCurrency(Config.DEFAULT_BALANCE)));
                 });
             });
             return true;
@@ -74,13 +104,12 @@ public class EcoCommand implements CommandExecutor, TabCompleter {
 
         // Other subcommands require 3 args
         if (args.length != 3) {
-            sender.sendMessage(msg.getMessage("error.usage-eco", "&cUsage: /eco <give|take|set|reset> <player> [amount]"));
+            sender.sendMessage(msg.getMessage("error.usage-eco", "&cUsage: /eco <give|take|set|reset|history> <player> [amount]"));
             return true;
         }
 
-        OfflinePlayer target = Bukkit.getOfflinePlayer(args[1]);
-
-        if (!target.hasPlayedBefore() && !target.isOnline()) {
+        UUID target = db.resolveName(args[1]);
+        if (target == null) {
             sender.sendMessage(msg.getMessage("error.player-not-found", "&cThat player could not be found."));
             return true;
         }
@@ -93,19 +122,18 @@ public class EcoCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            EconomyResult result;
-            switch (sub) {
-                case "give" -> result = db.deposit(target.getUniqueId(), amount);
-                case "take" -> result = db.withdraw(target.getUniqueId(), amount);
-                case "set" -> result = db.setBalance(target.getUniqueId(), amount);
-                default -> {
-                    Bukkit.getScheduler().runTask(plugin, () ->
-                            sender.sendMessage(msg.getMessage("error.usage-eco", "&cUsage: /eco <give|take|set|reset> <player> [amount]")));
-                    return;
-                }
+        CompletableFuture<EconomyResult> update;
+        switch (sub) {
+            case "give" -> update = db.depositAsync(target, amount, sender.getName());
+            case "take" -> update = db.withdrawAsync(target, amount, sender.getName());
+            case "set" -> update = db.setBalanceAsync(target, amount, sender.getName());
+            default -> {
+                sender.sendMessage(msg.getMessage("error.usage-eco", "&cUsage: /eco <give|take|set|reset|history> <player> [amount]"));
+                return true;
             }
+        }
 
+        update.thenAccept(result -> {
             Bukkit.getScheduler().runTask(plugin, () -> {
                 if (!result.success()) {
                     sender.sendMessage(msg.getMessage(mapStatusToMessage(result.status()),
@@ -116,18 +144,18 @@ public class EcoCommand implements CommandExecutor, TabCompleter {
                 String amountFormatted = msg.formatCurrency(
                         sub.equalsIgnoreCase("set") ? result.resultingBalance() : amount);
 
-                String targetName = target.getName() == null ? "Unknown" : target.getName();
+                String targetName = db.getName(target);
 
                 switch (sub) {
-                    case "give" -> sender.sendMessage(msg.getMessage("eco.given", "&7Gave &#54daf4{amount} &7to &#54daf4{player}&7.")
-                            .replace("{player}", targetName)
-                            .replace("{amount}", amountFormatted));
-                    case "take" -> sender.sendMessage(msg.getMessage("eco.taken", "&7Took &#54daf4{amount} &7from &#54daf4{player}&7.")
-                            .replace("{player}", targetName)
-                            .replace("{amount}", amountFormatted));
-                    case "set" -> sender.sendMessage(msg.getMessage("eco.set", "&7Set &#54daf4{player}&7's balance to &#54daf4{amount}&7.")
-                            .replace("{player}", targetName)
-                            .replace("{amount}", amountFormatted));
+                    case "give" -> sender.sendMessage(msg.getMessage("eco.given", "&7Gave &#54daf4{amount} &7to &#54daf4{player}&7.",
+                            "player", targetName,
+                            "amount", amountFormatted));
+                    case "take" -> sender.sendMessage(msg.getMessage("eco.taken", "&7Took &#54daf4{amount} &7from &#54daf4{player}&7.",
+                            "player", targetName,
+                            "amount", amountFormatted));
+                    case "set" -> sender.sendMessage(msg.getMessage("eco.set", "&7Set &#54daf4{player}&7's balance to &#54daf4{amount}&7.",
+                            "player", targetName,
+                            "amount", amountFormatted));
                 }
             });
         });
@@ -135,18 +163,49 @@ public class EcoCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    private void sendHistory(CommandSender sender, String playerName, List<LedgerEntry> entries) {
+        MessageUtil msg = plugin.getMessageUtil();
+        DatabaseManager db = plugin.getDatabaseManager();
+
+        if (entries.isEmpty()) {
+            sender.sendMessage(msg.getMessage("eco.history-empty", "&7No recorded changes for &#54daf4{player}&7.",
+                    "player", playerName));
+            return;
+        }
+
+        sender.sendMessage(msg.getMessage("eco.history-header", "&7Recent changes to &#54daf4{player}&7's balance:",
+                "player", playerName));
+        for (LedgerEntry entry : entries) {
+            String counterparty = "";
+            String type = entry.type().name().toLowerCase(Locale.ROOT);
+            if (entry.counterparty() != null) {
+                String name = db.getName(entry.counterparty());
+                counterparty = name != null ? name : entry.counterparty().toString();
+                type += (entry.delta() < 0 ? " to " : " from ") + counterparty;
+            }
+            String delta = (entry.delta() < 0 ? "-" : "+") + msg.formatCurrency(Math.abs(entry.delta()));
+
+            sender.sendMessage(msg.getMessage("eco.history-entry",
+                    "&8{time} &7{type} &#54daf4{delta} &7-> &#54daf4{balance} &8({actor}, {source})",
+                    "time", HISTORY_TIME.format(Instant.ofEpochMilli(entry.time())),
+                    "type", type,
+                    "delta", delta,
+                    "balance", msg.formatCurrency(entry.balance()),
+                    "counterparty", counterparty,
+                    "actor", entry.actor() != null ? entry.actor() : "-",
+                    "source", entry.source() != null ? entry.source() : "-"));
+        }
+    }
+
     @Override
     public @Nullable List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
 
         if (args.length == 1) {
-            return List.of("give", "take", "set", "reset");
+            return List.of("give", "take", "set", "reset", "history");
         }
 
         if (args.length == 2) {
-            return Arrays.stream(Bukkit.getOfflinePlayers())
-                    .map(OfflinePlayer::getName).filter(Objects::nonNull) // intellij was screaming at me :(
-                    .filter(name -> name.startsWith(args[1]))
-                    .collect(Collectors.toList());
+            return plugin.getDatabaseManager().completeNames(args[1], Config.TAB_COMPLETE_LIMIT);
         }
 
         return Collections.emptyList();
@@ -3,10 +3,10 @@ package dev.improve.simpleeconomy.commands;
 import dev.improve.simpleeconomy.managers.DatabaseManager;
 import dev.improve.simpleeconomy.managers.EconomyResult;
 import dev.improve.simpleeconomy.managers.EconomyStatus;
+import dev.improve.simpleeconomy.utils.Config;
 import dev.improve.simpleeconomy.utils.MessageUtil;
 import dev.improve.simpleeconomy.SimpleEconomy;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -15,11 +15,9 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.UUID;
 
 public class PayCommand implements CommandExecutor, TabCompleter {
 
@@ -44,13 +42,13 @@ public class PayCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        OfflinePlayer target = Bukkit.getOfflinePlayer(args[0]);
-        if (!target.hasPlayedBefore() && !target.isOnline()) {
+        UUID target = db.resolveName(args[0]);
+        if (target == null) {
             player.sendMessage(msg.getMessage("error.player-not-found", "&cThat player could not be found."));
             return true;
         }
 
-        if (target.getUniqueId().equals(player.getUniqueId())) {
+        if (target.equals(player.getUniqueId())) {
             player.sendMessage(msg.getMessage("error.same-account", "&cYou cannot send money to yourself."));
             return true;
         }
@@ -68,7 +66,7 @@ public class PayCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        db.transferAsync(player.getUniqueId(), target.getUniqueId(), amount).thenAccept(result -> {
+        db.transferAsync(player.getUniqueId(), target, amount, player.getName()).thenAccept(result -> {
             // Return to main thread for sending messages
             Bukkit.getScheduler().runTask(plugin, () -> {
                 if (!result.success()) {
@@ -76,15 +74,16 @@ public class PayCommand implements CommandExecutor, TabCompleter {
                     return;
                 }
 
-                String targetName = target.getName() == null ? "Unknown" : target.getName();
-                player.sendMessage(msg.getMessage("pay.sent", "&7You sent &#54daf4{amount} &7to &#54daf4{player}&7.")
-                        .replace("{player}", targetName)
-                        .replace("{amount}", msg.formatCurrency(amount)));
+                String targetName = db.getName(target);
+                player.sendMessage(msg.getMessage("pay.sent", "&7You sent &#54daf4{amount} &7to &#54daf4{player}&7.",
+                        "player", targetName,
+                        "amount", msg.formatCurrency(amount)));
 
-                if (target.isOnline() && target.getPlayer() != null) {
-                    target.getPlayer().sendMessage(msg.getMessage("pay.received", "&7You received &#54daf4{amount} &7from &#54daf4{player}&7.")
-                            .replace("{player}", player.getName())
-                            .replace("{amount}", msg.formatCurrency(amount)));
+                Player recipient = Bukkit.getPlayer(target);
+                if (recipient != null) {
+                    recipient.sendMessage(msg.getMessage("pay.received", "&7You received &#54daf4{amount} &7from &#54daf4{player}&7.",
+                            "player", player.getName(),
+                            "amount", msg.formatCurrency(amount)));
                 }
             });
         });
@@ -130,11 +129,7 @@ public class PayCommand implements CommandExecutor, TabCompleter {
     public @Nullable List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
 
         if (args.length == 1){
-            return Arrays.stream(Bukkit.getOfflinePlayers())
-                    .map(OfflinePlayer::getName)
-                    .filter(Objects::nonNull)
-                    .filter(name -> name.startsWith(args[0]))
-                    .collect(Collectors.toList());
+            return plugin.getDatabaseManager().completeNames(args[0], Config.TAB_COMPLETE_LIMIT);
         }
 
         return Collections.emptyList();
@@ -1,10 +1,16 @@
 package dev.improve.simpleeconomy.commands;
 
 import dev.improve.simpleeconomy.SimpleEconomy;
+import dev.improve.simpleeconomy.metrics.LatencyHistogram;
+import dev.improve.simpleeconomy.metrics.Metrics;
+import dev.improve.simpleeconomy.utils.MessageUtil;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 
+import java.util.Locale;
+import java.util.Map;
+
 public class ReloadCommand implements CommandExecutor {
 
     private final SimpleEconomy plugin;
@@ -20,13 +26,70 @@ public class ReloadCommand implements CommandExecutor {
             return true;
         }
 
-        if (args.length != 1 || !args[0].equalsIgnoreCase("reload")) {
-            sender.sendMessage(plugin.getMessageUtil().colorize("&7Usage: &3/simpleeconomy reload"));
+        if (args.length == 1 && args[0].equalsIgnoreCase("reload")) {
+            plugin.refreshConfiguration();
+            sender.sendMessage(plugin.getMessageUtil().getMessage("reload.success", "&7[&e&lSimpleEconomy&7] &aConfiguration reloaded."));
+            return true;
+        }
+
+        if (args.length >= 1 && args[0].equalsIgnoreCase("stats")) {
+            Metrics metrics = plugin.getDatabaseManager().getMetrics();
+            if (args.length == 2 && args[1].equalsIgnoreCase("reset")) {
+                metrics.reset();
+                sender.sendMessage(plugin.getMessageUtil().colorize("&7[&e&lSimpleEconomy&7] &aStatistics reset."));
+            } else {
+                sendStats(sender, metrics);
+            }
             return true;
         }
 
-        plugin.refreshConfiguration();
-        sender.sendMessage(plugin.getMessageUtil().getMessage("reload.success", "&7[&e&lSimpleEconomy&7] &aConfiguration reloaded."));
+        sender.sendMessage(plugin.getMessageUtil().colorize("&7Usage: &3/simpleeconomy <reload|stats [reset]>"));
         return true;
     }
+
+    private void sendStats(CommandSender sender, Metrics metrics) {
+        MessageUtil msg = plugin.getMessageUtil();
+        long seconds = Math.max(1, (System.currentTimeMillis() - metrics.since()) / 1000);
+        long hits = metrics.count("cache.hits");
+        long misses = metrics.count("cache.misses");
+        long acquired = metrics.count("lock.acquired");
+        LatencyHistogram lockWait = metrics.timers().get("lock.wait");
+        LatencyHistogram flush = metrics.timers().get("flush");
+        LatencyHistogram flushSize = metrics.distributions().get("flush.size");
+
+        sender.sendMessage(msg.colorize("&7[&e&lSimpleEconomy&7] &fStatistics over the last &e" + seconds + "s"));
+        sender.sendMessage(msg.colorize("&7Cache: &e" + (long) metrics.gauge("cache.size") + " &7accounts, hit rate &e"
+                + percent(hits, hits + misses) + " &7(" + misses + " misses)"));
+        sender.sendMessage(msg.colorize("&7Pending writes: &e" + (long) metrics.gauge("pending.writes") + " &7queued, &e"
+                + (long) metrics.gauge("pending.flushing") + " &7flushing, oldest &e"
+                + String.format(Locale.ROOT, "%.1fs", metrics.gauge("flush.lag.seconds"))));
+        sender.sendMessage(msg.colorize("&7Executor: &e" + (long) metrics.gauge("executor.active") + " &7active, &e"
+                + (long) metrics.gauge("executor.queue") + " &7queued"));
+        sender.sendMessage(msg.colorize("&7Flushes: &e" + flush.count() + " &7p50 &e" + micros(flush.percentile(0.5))
+                + " &7p99 &e" + micros(flush.percentile(0.99)) + " &7| batch p50 &e" + flushSize.percentile(0.5)
+                + " &7max &e" + flushSize.max()));
+        sender.sendMessage(msg.colorize("&7Lock waits: &e" + lockWait.count() + "&7/" + acquired + " contended ("
+                + percent(lockWait.count(), acquired) + "), p99 &e" + micros(lockWait.percentile(0.99))));
+
+        sender.sendMessage(msg.colorize("&7Latency (µs): &fcount p50 p99 p99.9 max"));
+        for (Map.Entry<String, LatencyHistogram> entry : metrics.timers().entrySet()) {
+            LatencyHistogram timer = entry.getValue();
+            if (timer.count() == 0 || timer == lockWait || timer == flush) {
+                continue;
+            }
+            sender.sendMessage(msg.colorize("&7 " + entry.getKey() + ": &e" + timer.count()
+                    + " &f" + micros(timer.percentile(0.5))
+                    + " " + micros(timer.percentile(0.99))
+                    + " " + micros(timer.percentile(0.999))
+                    + " " + micros(timer.max())));
+        }
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    private static String percent(long part, long whole) {
+        return whole == 0 ? "-" : String.format(Locale.ROOT, "%.1f%%", part * 100.0 / whole);
+    }
 }
@@ -0,0 +1,8 @@
+package dev.improve.simpleeconomy.database;
+
+/**
+ * A change to save to a shared database: add {@code amount} to the stored balance, or store {@code balance}
+ * if the account has no row, because no server saved it yet or another one deleted it.
+ */
+public record BalanceAddition(double amount, double balance) {
+}
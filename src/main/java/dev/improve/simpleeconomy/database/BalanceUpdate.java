@@ -0,0 +1,17 @@
+package dev.improve.simpleeconomy.database;
+
+import java.util.UUID;
+
+/**
+ * One entry of the change log of a shared database: an account was written by some server
+ * and now holds this balance at this row version.
+ *
+ * @param sequence the position in the log, increasing in the order writes started
+ * @param version  the row version after the write, or 0 if the account was deleted
+ */
+public record BalanceUpdate(long sequence, UUID uuid, double balance, long version) {
+
+    public boolean isDeletion() {
+        return version == 0;
+    }
+}
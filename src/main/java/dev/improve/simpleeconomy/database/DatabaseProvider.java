@@ -1,15 +1,35 @@
 package dev.improve.simpleeconomy.database;
 
+import dev.improve.simpleeconomy.metrics.Metrics;
+
 import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 /**
  * Interface for database storage backends.
  * Implementations handle connection management and SQL execution.
+ * Calls may arrive from several threads at once, so implementations must be thread-safe.
  */
 public interface DatabaseProvider {
 
+    /**
+     * The leaderboard order: highest balance first, then by UUID in the unsigned byte order of the binary key columns.
+     */
+    Comparator<Map.Entry<UUID, Double>> RANKING = Map.Entry.<UUID, Double>comparingByValue(Comparator.reverseOrder())
+            .thenComparing(Map.Entry::getKey, DatabaseProvider::compareUuids);
+
+    /**
+     * Compares UUIDs the way the databases compare their binary keys.
+     */
+    static int compareUuids(UUID a, UUID b) {
+        int cmp = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return cmp != 0 ? cmp : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
     /**
      * Initialize the database connection and create tables if needed.
      */
@@ -47,10 +67,51 @@ public interface DatabaseProvider {
     void deleteBalance(UUID uuid) throws SQLException;
 
     /**
-     * Get the top balances ordered by amount descending.
+     * Get the top balances in {@link #RANKING} order.
      */
     Map<UUID, Double> getTopBalances(int limit) throws SQLException;
 
+    /**
+     * Get the balances ranked after the given account in {@link #RANKING} order, which need not exist any more.
+     * Pages through the leaderboard from the last row of the previous page without an OFFSET scan.
+     */
+    Map<UUID, Double> getTopBalancesAfter(double balance, UUID uuid, int limit) throws SQLException;
+
+    /**
+     * Pass every stored balance to the consumer, reading the table incrementally
+     * instead of materializing it. While legacy rows are being migrated a row may be passed twice;
+     * the later call carries the current balance.
+     */
+    void forEachBalance(BiConsumer<UUID, Double> consumer) throws SQLException;
+
+    /**
+     * Store the latest known name of each player. A name can pass to another player after a rename,
+     * so whichever UUID saved a name most recently owns it.
+     */
+    void saveNames(Map<UUID, String> names) throws SQLException;
+
+    /**
+     * Visit every stored name, least recently saved first.
+     */
+    void forEachName(BiConsumer<UUID, String> consumer) throws SQLException;
+
+    /**
+     * Append entries to the ledger. Each entry is stored with the month it was made in,
+     * so {@link #pruneLedger(long)} can drop old months whole.
+     */
+    void saveLedger(List<LedgerEntry> entries) throws SQLException;
+
+    /**
+     * Get an account's most recent ledger entries, newest first.
+     */
+    List<LedgerEntry> getLedger(UUID uuid, int limit) throws SQLException;
+
+    /**
+     * Drop the ledger of every month that ended before the given time.
+     * @return the number of months dropped
+     */
+    int pruneLedger(long before) throws SQLException;
+
     /**
      * Get the sum of all balances.
      */
@@ -68,9 +129,27 @@ public interface DatabaseProvider {
     int getPlayerRank(UUID uuid) throws SQLException;
 
     /**
-     * Execute a transfer between two accounts atomically.
+     * Move up to {@code limit} rows from a legacy table layout into the current one.
+     * Each call is a short transaction, so it can run alongside normal traffic.
+     * @return the number of rows handled, or 0 once nothing is left to migrate
+     */
+    default int migrateLegacyRows(int limit) throws SQLException {
+        return 0;
+    }
+
+    /**
+     * How many queries the backend can usefully run at once, such as the size of its connection pool.
+     */
+    default int maxConnections() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Register gauges for backend internals, such as connection pool usage.
+     * Gauges are read when metrics are displayed or scraped, so they must not query the database.
      */
-    void executeTransfer(UUID from, double fromBalance, UUID to, double toBalance) throws SQLException;
+    default void registerMetrics(Metrics metrics) {
+    }
 
     /**
      * Get the name of this provider for logging purposes.
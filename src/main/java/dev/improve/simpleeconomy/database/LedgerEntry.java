@@ -0,0 +1,22 @@
+package dev.improve.simpleeconomy.database;
+
+import java.util.UUID;
+
+/**
+ * One balance change in the ledger. The delta is signed and the balance is the account's balance right after it.
+ *
+ * @param time         when the change was made, in epoch milliseconds
+ * @param counterparty the other account of a transfer, otherwise null
+ * @param actor        who made the change, such as the player or console running a command, or null if unknown
+ * @param source       the plugin that made the change, or null if unknown
+ */
+public record LedgerEntry(long time, UUID account, Type type, double delta, double balance,
+                          UUID counterparty, String actor, String source) {
+
+    public enum Type {
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        SET
+    }
+}
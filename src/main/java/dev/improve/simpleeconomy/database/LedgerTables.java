@@ -0,0 +1,157 @@
+package dev.improve.simpleeconomy.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * The ledger table layout shared by the SQL backends. Entries go to one table per calendar month (UTC),
+ * named like {@code ledger_202601}, so retention drops whole tables instead of deleting rows.
+ * Each table is indexed by account and insertion order, which is the order {@code /eco history} reads.
+ */
+final class LedgerTables {
+
+    static final String COLUMNS = "time, uuid, type, delta, balance, counterparty, actor, source";
+    // Rows per INSERT statement, keeping the parameter count under SQLite's lower limit of 999
+    static final int ROWS_PER_INSERT = 100;
+
+    private LedgerTables() {
+    }
+
+    /**
+     * The month of a timestamp as a number such as 202601.
+     */
+    static int month(long time) {
+        LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC);
+        return date.getYear() * 100 + date.getMonthValue();
+    }
+
+    static String table(String prefix, int month) {
+        return prefix + month;
+    }
+
+    /**
+     * @return the month of a ledger table name, or -1 if the name is not one
+     */
+    static int monthOf(String prefix, String table) {
+        if (table.length() != prefix.length() + 6 || !table.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(table.substring(prefix.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Splits entries by the month table they belong to, oldest month first, keeping their order within each month.
+     */
+    static Map<Integer, List<LedgerEntry>> byMonth(List<LedgerEntry> entries) {
+        Map<Integer, List<LedgerEntry>> months = new TreeMap<>();
+        int lastMonth = -1;
+        List<LedgerEntry> last = null;
+        for (LedgerEntry entry : entries) {
+            int month = month(entry.time());
+            if (month != lastMonth) {
+                last = months.computeIfAbsent(month, ignored -> new ArrayList<>());
+                lastMonth = month;
+            }
+            last.add(entry);
+        }
+        return months;
+    }
+
+    /**
+     * A single INSERT of {@code rows} rows, so a batch costs one statement per hundred entries instead of one per entry.
+     */
+    static String insert(String table, int rows) {
+        StringBuilder sql = new StringBuilder(64 + rows * 18)
+                .append("INSERT INTO ").append(table).append(" (").append(COLUMNS).append(") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Writes entries to a table with as few multi-row INSERTs as possible.
+     */
+    static void insertAll(Connection connection, String table, List<LedgerEntry> entries) throws SQLException {
+        int index = 0;
+        if (entries.size() >= ROWS_PER_INSERT) {
+            try (PreparedStatement full = connection.prepareStatement(insert(table, ROWS_PER_INSERT))) {
+                while (entries.size() - index >= ROWS_PER_INSERT) {
+                    bindRows(full, entries, index, ROWS_PER_INSERT);
+                    full.executeUpdate();
+                    index += ROWS_PER_INSERT;
+                }
+            }
+        }
+        int remaining = entries.size() - index;
+        if (remaining > 0) {
+            try (PreparedStatement tail = connection.prepareStatement(insert(table, remaining))) {
+                bindRows(tail, entries, index, remaining);
+                tail.executeUpdate();
+            }
+        }
+    }
+
+    private static void bindRows(PreparedStatement statement, List<LedgerEntry> entries, int from, int rows) throws SQLException {
+        int parameter = 1;
+        for (int i = from; i < from + rows; i++) {
+            LedgerEntry entry = entries.get(i);
+            statement.setLong(parameter++, entry.time());
+            statement.setBytes(parameter++, UuidCodec.toBytes(entry.account()));
+            statement.setString(parameter++, entry.type().name());
+            statement.setDouble(parameter++, entry.delta());
+            statement.setDouble(parameter++, entry.balance());
+            if (entry.counterparty() != null) {
+                statement.setBytes(parameter++, UuidCodec.toBytes(entry.counterparty()));
+            } else {
+                statement.setNull(parameter++, Types.BINARY);
+            }
+            statement.setString(parameter++, entry.actor());
+            statement.setString(parameter++, entry.source());
+        }
+    }
+
+    /**
+     * The newest entries of one account in a month table, newest first.
+     */
+    static String history(String table) {
+        return "SELECT " + COLUMNS + " FROM " + table + " WHERE uuid = ? ORDER BY id DESC LIMIT ?";
+    }
+
+    /**
+     * Reads rows selected with {@link #COLUMNS} into the list, skipping rows that do not parse.
+     */
+    static void read(ResultSet rs, UUID account, List<LedgerEntry> into) throws SQLException {
+        while (rs.next()) {
+            try {
+                byte[] counterparty = rs.getBytes(6);
+                into.add(new LedgerEntry(
+                        rs.getLong(1),
+                        account,
+                        LedgerEntry.Type.valueOf(rs.getString(3)),
+                        rs.getDouble(4),
+                        rs.getDouble(5),
+                        counterparty != null ? UuidCodec.fromBytes(counterparty) : null,
+                        rs.getString(7),
+                        rs.getString(8)));
+            } catch (IllegalArgumentException ignored) {
+                // Skip rows written by a newer version or edited by hand
+            }
+        }
+    }
+}
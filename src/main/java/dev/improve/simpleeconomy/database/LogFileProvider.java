@@ -0,0 +1,936 @@
+package dev.improve.simpleeconomy.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Single-server backend that keeps balances in append-only segment files with an in-memory index
+ * from UUID to the latest record. Saves are sequential appends made durable by one fsync per group of
+ * concurrent writers, and a load is one positioned read.
+ * <p>
+ * Writes go to the active segment, which is sealed once it reaches the configured size. A background task
+ * copies the live records of the sealed segments into one compacted segment once at least half of them
+ * are overwritten or deleted. A compacted segment supersedes every segment with a lower id.
+ * <p>
+ * Player names are appended as text lines to a separate file, which is rewritten on startup once most of it is outdated.
+ * The ledger is appended as text lines to one file per month; reading an account's history scans the newest files.
+ */
+public class LogFileProvider implements DatabaseProvider {
+
+    private static final int MAGIC = 0x53454C47;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int TYPE_PUT = 1;
+    private static final int TYPE_DELETE = 2;
+    private static final int FLAG_COMPACTED = 1;
+    private static final int SCAN_BUFFER_SIZE = RECORD_SIZE * 2048;
+    private static final String NAMES_FILE = "names.txt";
+    private static final String LEDGER_FOLDER = "ledger";
+
+    private final Path folder;
+    private final long segmentBytes;
+    private final long compactionIntervalSeconds;
+    private final Logger logger;
+
+    // Latest record per account, as segment id << 32 | offset
+    private final Map<UUID, Long> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    // Held for reading around positioned reads, and for writing while compaction swaps segments
+    private final ReentrantReadWriteLock fileLock = new ReentrantReadWriteLock();
+    private final Object syncLock = new Object();
+    private final Object namesLock = new Object();
+    private final Object ledgerLock = new Object();
+    // Months whose file has had any torn last line removed since startup, guarded by ledgerLock
+    private final Set<Integer> ledgerChecked = new HashSet<>();
+    private final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(RECORD_SIZE));
+    private Segment active;
+    private long writes;
+    private long syncedWrites;
+    private ScheduledExecutorService compactor;
+    private FileChannel namesChannel;
+    private volatile boolean closed;
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final AtomicInteger live = new AtomicInteger();
+        volatile long size;
+
+        Segment(int id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        int records() {
+            return (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+        }
+    }
+
+    /**
+     * @param segmentBytes size at which the active segment is sealed and a new one started
+     * @param compactionIntervalSeconds how often to check for compactable segments, or 0 to never compact
+     */
+    public LogFileProvider(Path folder, long segmentBytes, long compactionIntervalSeconds, Logger logger) {
+        this.folder = folder;
+        // Offsets are stored in 32 bits
+        this.segmentBytes = Math.max(HEADER_SIZE + RECORD_SIZE, Math.min(segmentBytes, Integer.MAX_VALUE / 2));
+        this.compactionIntervalSeconds = compactionIntervalSeconds;
+        this.logger = logger;
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        try {
+            Files.createDirectories(folder);
+            recover();
+            openNames();
+        } catch (IOException ex) {
+            throw new SQLException("Unable to open balance log in " + folder, ex);
+        }
+
+        if (compactionIntervalSeconds > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "SimpleEconomy-Compaction");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(this::compactQuietly,
+                    compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Rebuilds the index by replaying the segments in id order, dropping superseded ones and any torn tail.
+     */
+    private void recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        int compactedFrom = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".compact")) {
+                    // A compaction that never finished
+                    Files.delete(file);
+                    continue;
+                }
+                if (!name.startsWith("segment-") || !name.endsWith(".log")) {
+                    continue;
+                }
+                int id = Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length()));
+                ids.add(id);
+                if (isCompacted(file)) {
+                    compactedFrom = Math.max(compactedFrom, id);
+                }
+            }
+        }
+        ids.sort(Comparator.naturalOrder());
+
+        for (int id : ids) {
+            Path path = segmentPath(id);
+            if (id < compactedFrom) {
+                // Superseded by a compaction that stopped before deleting it
+                Files.delete(path);
+                continue;
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(id, path, channel, HEADER_SIZE);
+            segments.put(id, segment);
+            replay(segment, id == ids.get(ids.size() - 1));
+            active = segment;
+        }
+
+        if (active == null || active.size >= segmentBytes || isCompacted(active.path)) {
+            active = createSegment(active == null ? 1 : active.id + 1, false);
+        }
+    }
+
+    /**
+     * Opens the names file for appending, dropping a torn last line and rewriting the file if most lines are outdated.
+     */
+    private void openNames() throws IOException {
+        Path path = folder.resolve(NAMES_FILE);
+        Map<UUID, String> names = new LinkedHashMap<>();
+        int[] lines = new int[1];
+        long complete = readNames(path, (uuid, name) -> {
+            lines[0]++;
+            // Re-inserted so the map stays in the order names were last saved
+            names.remove(uuid);
+            names.put(uuid, name);
+        });
+
+        if (lines[0] > names.size() * 2 + 1024) {
+            Path temp = folder.resolve(NAMES_FILE + ".compact");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(out, encodeNames(names), 0);
+                out.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            complete = Files.size(path);
+        }
+
+        namesChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        namesChannel.truncate(complete);
+        namesChannel.position(complete);
+    }
+
+    /**
+     * Passes every complete line of the names file to the consumer, oldest first.
+     *
+     * @return the length of the file up to the end of the last complete line
+     */
+    private static long readNames(Path path, BiConsumer<UUID, String> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+
+        String text = new String(bytes, 0, end, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int newline = text.indexOf('\n', start);
+            int tab = text.indexOf('\t', start);
+            if (tab > start && tab < newline) {
+                try {
+                    consumer.accept(UUID.fromString(text.substring(start, tab)), text.substring(tab + 1, newline));
+                } catch (IllegalArgumentException ignored) {
+                    // Skip malformed lines
+                }
+            }
+            start = newline + 1;
+        }
+        return end;
+    }
+
+    private static ByteBuffer encodeNames(Map<UUID, String> names) {
+        StringBuilder text = new StringBuilder(names.size() * 56);
+        names.forEach((uuid, name) -> text.append(uuid).append('\t').append(name).append('\n'));
+        return ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isCompacted(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            return header.getInt(0) == MAGIC && (header.getInt(4) & FLAG_COMPACTED) != 0;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private void replay(Segment segment, boolean last) throws IOException {
+        FileChannel channel = segment.channel;
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (fileSize < HEADER_SIZE || channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            // Created but never written; start it over
+            writeHeader(channel, false);
+            channel.truncate(HEADER_SIZE);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = HEADER_SIZE;
+        while (position + RECORD_SIZE <= fileSize) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < RECORD_SIZE) {
+                break;
+            }
+            int records = read / RECORD_SIZE;
+            for (int i = 0; i < records; i++) {
+                int offset = i * RECORD_SIZE;
+                if (!isValid(buffer, offset)) {
+                    if (!last) {
+                        throw new IOException("Corrupt record in " + segment.path + " at offset " + (position + offset));
+                    }
+                    // The last run stopped in the middle of this write
+                    channel.truncate(position + offset);
+                    segment.size = position + offset;
+                    return;
+                }
+                UUID uuid = new UUID(buffer.getLong(offset + 8), buffer.getLong(offset + 16));
+                if (buffer.getInt(offset) == TYPE_PUT) {
+                    point(uuid, location(segment.id, position + offset));
+                } else {
+                    unpoint(uuid);
+                }
+            }
+            position += (long) records * RECORD_SIZE;
+        }
+        if (position < fileSize) {
+            channel.truncate(position);
+        }
+        segment.size = position;
+    }
+
+    private Segment createSegment(int id, boolean compacted) throws IOException {
+        Path path = segmentPath(id);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeHeader(channel, compacted);
+        channel.force(true);
+        Segment segment = new Segment(id, path, channel, HEADER_SIZE);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static void writeHeader(FileChannel channel, boolean compacted) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, compacted ? FLAG_COMPACTED : 0);
+        writeFully(channel, header, 0);
+    }
+
+    private Path segmentPath(int id) {
+        return folder.resolve("segment-" + id + ".log");
+    }
+
+    @Override
+    public void shutdown() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            try {
+                compactor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            closed = true;
+            for (Segment segment : segments.values()) {
+                try {
+                    segment.channel.force(true);
+                    segment.channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            segments.clear();
+            index.clear();
+        }
+
+        synchronized (namesLock) {
+            if (namesChannel != null) {
+                try {
+                    namesChannel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Balance log is closed");
+        }
+    }
+
+    @Override
+    public boolean hasBalance(UUID uuid) throws SQLException {
+        checkOpen();
+        return index.containsKey(uuid);
+    }
+
+    @Override
+    public Double loadBalance(UUID uuid) throws SQLException {
+        fileLock.readLock().lock();
+        try {
+            checkOpen();
+            Long location = index.get(uuid);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer buffer = readBuffers.get().clear();
+            readFully(segments.get(segmentId(location)).channel, buffer, offset(location));
+            return Double.longBitsToDouble(buffer.getLong(24));
+        } catch (IOException ex) {
+            throw new SQLException("Failed to read balance for " + uuid, ex);
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveBalance(UUID uuid, double balance) throws SQLException {
+        saveBalances(Map.of(uuid, balance));
+    }
+
+    @Override
+    public void saveBalances(Map<UUID, Double> balances) throws SQLException {
+        if (balances.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(balances.size() * RECORD_SIZE);
+        int offset = 0;
+        for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
+            putRecord(buffer, offset, TYPE_PUT, entry.getKey(), Double.doubleToRawLongBits(entry.getValue()));
+            offset += RECORD_SIZE;
+        }
+
+        long write;
+        synchronized (this) {
+            checkOpen();
+            long base = append(buffer);
+            offset = 0;
+            for (UUID uuid : balances.keySet()) {
+                point(uuid, location(active.id, base + offset));
+                offset += RECORD_SIZE;
+            }
+            write = ++writes;
+        }
+        sync(write);
+    }
+
+    @Override
+    public void deleteBalance(UUID uuid) throws SQLException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        putRecord(buffer, 0, TYPE_DELETE, uuid, 0L);
+
+        long write;
+        synchronized (this) {
+            checkOpen();
+            append(buffer);
+            unpoint(uuid);
+            write = ++writes;
+        }
+        sync(write);
+    }
+
+    /**
+     * Writes whole records at the end of the active segment, sealing it first if they would not fit.
+     * Must be called while synchronized on the provider.
+     *
+     * @return the offset the records were written at
+     */
+    private long append(ByteBuffer records) throws SQLException {
+        try {
+            if (active.size + records.capacity() > segmentBytes && active.size > HEADER_SIZE) {
+                // Everything in the sealed segment must be durable before later writes can be
+                active.channel.force(false);
+                active = createSegment(active.id + 1, false);
+            }
+            long base = active.size;
+            writeFully(active.channel, records, base);
+            active.size = base + records.capacity();
+            return base;
+        } catch (IOException ex) {
+            throw new SQLException("Failed to append to balance log", ex);
+        }
+    }
+
+    /**
+     * Waits until the given write is on disk. Whoever gets the lock first forces every write made so far,
+     * so concurrent writers share one fsync.
+     */
+    private void sync(long write) throws SQLException {
+        synchronized (syncLock) {
+            if (syncedWrites >= write) {
+                return;
+            }
+            FileChannel channel;
+            long upTo;
+            synchronized (this) {
+                channel = active.channel;
+                upTo = writes;
+            }
+            try {
+                channel.force(false);
+            } catch (IOException ex) {
+                throw new SQLException("Failed to sync balance log", ex);
+            }
+            syncedWrites = upTo;
+        }
+    }
+
+    private void point(UUID uuid, long location) {
+        Long previous = index.put(uuid, location);
+        if (previous != null) {
+            segments.get(segmentId(previous)).live.decrementAndGet();
+        }
+        segments.get(segmentId(location)).live.incrementAndGet();
+    }
+
+    private void unpoint(UUID uuid) {
+        Long previous = index.remove(uuid);
+        if (previous != null) {
+            segments.get(segmentId(previous)).live.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Map<UUID, Double> getTopBalances(int limit) throws SQLException {
+        return top(null, limit);
+    }
+
+    @Override
+    public Map<UUID, Double> getTopBalancesAfter(double balance, UUID uuid, int limit) throws SQLException {
+        return top(Map.entry(uuid, balance), limit);
+    }
+
+    /**
+     * Keeps the best {@code limit} accounts ranked after the cursor, or from the top if it is null, in a heap.
+     */
+    private Map<UUID, Double> top(Map.Entry<UUID, Double> after, int limit) throws SQLException {
+        // Worst ranked first, so the head is the one to drop
+        PriorityQueue<Map.Entry<UUID, Double>> heap = new PriorityQueue<>(RANKING.reversed());
+        forEachBalance((uuid, balance) -> {
+            Map.Entry<UUID, Double> entry = Map.entry(uuid, balance);
+            if (limit <= 0 || after != null && RANKING.compare(entry, after) <= 0) {
+                return;
+            }
+            if (heap.size() < limit) {
+                heap.add(entry);
+            } else if (RANKING.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        });
+
+        List<Map.Entry<UUID, Double>> sorted = new ArrayList<>(heap);
+        sorted.sort(RANKING);
+        Map<UUID, Double> top = new LinkedHashMap<>();
+        for (Map.Entry<UUID, Double> entry : sorted) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    /**
+     * Reads the current record of every account in the index. Accounts changed during the walk
+     * are passed with whichever value was current when they were reached.
+     */
+    @Override
+    public void forEachBalance(BiConsumer<UUID, Double> consumer) throws SQLException {
+        checkOpen();
+        for (UUID uuid : index.keySet()) {
+            Double balance = loadBalance(uuid);
+            if (balance != null) {
+                consumer.accept(uuid, balance);
+            }
+        }
+    }
+
+    @Override
+    public void saveNames(Map<UUID, String> names) throws SQLException {
+        ByteBuffer lines = encodeNames(names);
+        synchronized (namesLock) {
+            checkOpen();
+            try {
+                while (lines.hasRemaining()) {
+                    namesChannel.write(lines);
+                }
+                namesChannel.force(false);
+            } catch (IOException ex) {
+                throw new SQLException("Unable to write player names", ex);
+            }
+        }
+    }
+
+    @Override
+    public void forEachName(BiConsumer<UUID, String> consumer) throws SQLException {
+        checkOpen();
+        try {
+            readNames(folder.resolve(NAMES_FILE), consumer);
+        } catch (IOException ex) {
+            throw new SQLException("Unable to read player names", ex);
+        }
+    }
+
+    @Override
+    public void saveLedger(List<LedgerEntry> entries) throws SQLException {
+        Map<Integer, List<LedgerEntry>> months = LedgerTables.byMonth(entries);
+        synchronized (ledgerLock) {
+            checkOpen();
+            try {
+                Files.createDirectories(folder.resolve(LEDGER_FOLDER));
+                for (Map.Entry<Integer, List<LedgerEntry>> month : months.entrySet()) {
+                    try (FileChannel channel = FileChannel.open(ledgerFile(month.getKey()),
+                            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                        long end = channel.size();
+                        if (ledgerChecked.add(month.getKey())) {
+                            // A crash mid-append leaves a partial line that would swallow the next entry
+                            end = completeLength(channel);
+                            channel.truncate(end);
+                        }
+                        writeFully(channel, encodeLedger(month.getValue()), end);
+                        channel.force(false);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new SQLException("Unable to write the ledger", ex);
+            }
+        }
+    }
+
+    private Path ledgerFile(int month) {
+        return folder.resolve(LEDGER_FOLDER).resolve("ledger-" + month + ".log");
+    }
+
+    /**
+     * The length of the file up to the end of its last complete line.
+     */
+    private static long completeLength(FileChannel channel) throws IOException {
+        long end = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (end > 0) {
+            int length = (int) Math.min(buffer.capacity(), end);
+            buffer.clear().limit(length);
+            readFully(channel, buffer, end - length);
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return end - length + i + 1;
+                }
+            }
+            end -= length;
+        }
+        return 0;
+    }
+
+    private static ByteBuffer encodeLedger(List<LedgerEntry> entries) {
+        StringBuilder text = new StringBuilder(entries.size() * 128);
+        for (LedgerEntry entry : entries) {
+            text.append(entry.time()).append('\t')
+                    .append(entry.account()).append('\t')
+                    .append(entry.type().name()).append('\t')
+                    .append(entry.delta()).append('\t')
+                    .append(entry.balance()).append('\t')
+                    .append(entry.counterparty() != null ? entry.counterparty().toString() : "").append('\t')
+                    .append(ledgerText(entry.actor())).append('\t')
+                    .append(ledgerText(entry.source())).append('\n');
+        }
+        return ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String ledgerText(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Scans month files from the newest down until enough entries are found.
+     */
+    @Override
+    public List<LedgerEntry> getLedger(UUID uuid, int limit) throws SQLException {
+        checkOpen();
+        List<LedgerEntry> entries = new ArrayList<>();
+        String key = uuid.toString();
+        try {
+            for (int month : ledgerMonths(true)) {
+                if (entries.size() >= limit) {
+                    break;
+                }
+                List<LedgerEntry> found = new ArrayList<>();
+                readLedger(ledgerFile(month), key, uuid, found);
+                for (int i = found.size() - 1; i >= 0 && entries.size() < limit; i--) {
+                    entries.add(found.get(i));
+                }
+            }
+        } catch (IOException ex) {
+            throw new SQLException("Unable to read the ledger", ex);
+        }
+        return entries;
+    }
+
+    /**
+     * The months that have a ledger file, in ascending or descending order.
+     */
+    private List<Integer> ledgerMonths(boolean newestFirst) throws IOException {
+        List<Integer> months = new ArrayList<>();
+        Path ledger = folder.resolve(LEDGER_FOLDER);
+        if (!Files.isDirectory(ledger)) {
+            return months;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(ledger, "ledger-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int month = LedgerTables.monthOf("ledger-", name.substring(0, name.length() - ".log".length()));
+                if (month > 0) {
+                    months.add(month);
+                }
+            }
+        }
+        months.sort(newestFirst ? Collections.reverseOrder() : Comparator.naturalOrder());
+        return months;
+    }
+
+    /**
+     * Adds every complete line of a month file that belongs to the account, oldest first.
+     */
+    private static void readLedger(Path path, String key, UUID uuid, List<LedgerEntry> into) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        int start = 0;
+        int newline;
+        while ((newline = text.indexOf('\n', start)) >= 0) {
+            int tab = text.indexOf('\t', start);
+            if (tab > start && tab < newline && text.startsWith(key, tab + 1)) {
+                String[] fields = text.substring(start, newline).split("\t", -1);
+                if (fields.length == 8) {
+                    try {
+                        into.add(new LedgerEntry(
+                                Long.parseLong(fields[0]),
+                                uuid,
+                                LedgerEntry.Type.valueOf(fields[2]),
+                                Double.parseDouble(fields[3]),
+                                Double.parseDouble(fields[4]),
+                                fields[5].isEmpty() ? null : UUID.fromString(fields[5]),
+                                fields[6].isEmpty() ? null : fields[6],
+                                fields[7].isEmpty() ? null : fields[7]));
+                    } catch (IllegalArgumentException ignored) {
+                        // Skip malformed lines
+                    }
+                }
+            }
+            start = newline + 1;
+        }
+    }
+
+    @Override
+    public int pruneLedger(long before) throws SQLException {
+        int cutoff = LedgerTables.month(before);
+        int dropped = 0;
+        synchronized (ledgerLock) {
+            checkOpen();
+            try {
+                for (int month : ledgerMonths(false)) {
+                    if (month >= cutoff) {
+                        break;
+                    }
+                    Files.deleteIfExists(ledgerFile(month));
+                    ledgerChecked.remove(month);
+                    dropped++;
+                }
+            } catch (IOException ex) {
+                throw new SQLException("Unable to delete old ledger files", ex);
+            }
+        }
+        return dropped;
+    }
+
+    @Override
+    public double getTotalBalance() throws SQLException {
+        double[] total = new double[1];
+        forEachBalance((uuid, balance) -> total[0] += balance);
+        return total[0];
+    }
+
+    @Override
+    public int getPlayerCount() throws SQLException {
+        checkOpen();
+        return index.size();
+    }
+
+    @Override
+    public int getPlayerRank(UUID uuid) throws SQLException {
+        Double balance = loadBalance(uuid);
+        if (balance == null) {
+            return -1;
+        }
+        int[] above = new int[1];
+        forEachBalance((other, value) -> {
+            if (value > balance) {
+                above[0]++;
+            }
+        });
+        return above[0] + 1;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Balance log compaction failed; it will be retried", ex);
+        }
+    }
+
+    /**
+     * Copies the live records of all sealed segments into one compacted segment that takes the id of
+     * the newest of them, then deletes the rest. Runs alongside writes; only the final swap blocks them.
+     */
+    void compact() throws IOException {
+        List<Segment> sealed = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                if (segment.id < active.id) {
+                    sealed.add(segment);
+                }
+            }
+        }
+        sealed.sort(Comparator.comparingInt(segment -> segment.id));
+
+        long records = 0;
+        long live = 0;
+        for (Segment segment : sealed) {
+            records += segment.records();
+            live += segment.live.get();
+        }
+        if (sealed.isEmpty() || live * 2 > records) {
+            return;
+        }
+
+        int targetId = sealed.get(sealed.size() - 1).id;
+        Path temp = folder.resolve("segment-" + targetId + ".compact");
+        List<UUID> moved = new ArrayList<>();
+        List<Long> from = new ArrayList<>();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeHeader(out, true);
+            long position = HEADER_SIZE;
+            ByteBuffer in = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            ByteBuffer pending = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            for (Segment segment : sealed) {
+                for (long offset = HEADER_SIZE; offset < segment.size; ) {
+                    in.clear();
+                    readFully(segment.channel, in.limit((int) Math.min(SCAN_BUFFER_SIZE, segment.size - offset)), offset);
+                    for (int i = 0; i < in.limit(); i += RECORD_SIZE) {
+                        if (in.getInt(i) != TYPE_PUT) {
+                            continue;
+                        }
+                        UUID uuid = new UUID(in.getLong(i + 8), in.getLong(i + 16));
+                        long location = location(segment.id, offset + i);
+                        Long current = index.get(uuid);
+                        if (current == null || current != location) {
+                            continue;
+                        }
+                        pending.put(in.array(), i, RECORD_SIZE);
+                        moved.add(uuid);
+                        from.add(location);
+                        if (!pending.hasRemaining()) {
+                            position += flush(out, pending, position);
+                        }
+                    }
+                    offset += in.limit();
+                }
+            }
+            flush(out, pending, position);
+            out.force(true);
+        }
+
+        fileLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                Segment replaced = segments.get(targetId);
+                Files.move(temp, replaced.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                FileChannel channel = FileChannel.open(replaced.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                Segment compacted = new Segment(targetId, replaced.path, channel, channel.size());
+                segments.put(targetId, compacted);
+
+                for (int i = 0; i < moved.size(); i++) {
+                    long location = location(targetId, HEADER_SIZE + (long) i * RECORD_SIZE);
+                    // Accounts written or deleted since the copy already point into the active segment
+                    if (index.replace(moved.get(i), from.get(i), location)) {
+                        compacted.live.incrementAndGet();
+                    }
+                }
+
+                for (Segment segment : sealed) {
+                    segment.channel.close();
+                    if (segment.id != targetId) {
+                        segments.remove(segment.id);
+                        Files.deleteIfExists(segment.path);
+                    }
+                }
+            }
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        logger.info("Compacted " + sealed.size() + " balance log segments: kept " + moved.size() + " of " + records + " records.");
+    }
+
+    private static long flush(FileChannel out, ByteBuffer pending, long position) throws IOException {
+        pending.flip();
+        int length = pending.remaining();
+        writeFully(out, pending, position);
+        pending.clear();
+        return length;
+    }
+
+    private static void putRecord(ByteBuffer buffer, int offset, int type, UUID uuid, long value) {
+        buffer.putInt(offset, type);
+        buffer.putLong(offset + 8, uuid.getMostSignificantBits());
+        buffer.putLong(offset + 16, uuid.getLeastSignificantBits());
+        buffer.putLong(offset + 24, value);
+        buffer.putInt(offset + 4, checksum(buffer, offset));
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int offset) {
+        int type = buffer.getInt(offset);
+        return (type == TYPE_PUT || type == TYPE_DELETE) && buffer.getInt(offset + 4) == checksum(buffer, offset);
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), offset, 4);
+        crc.update(buffer.array(), offset + 8, RECORD_SIZE - 8);
+        return (int) crc.getValue();
+    }
+
+    private static long location(int segmentId, long offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static long offset(long location) {
+        return location & 0xFFFFFFFFL;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of balance log");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - start);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Log";
+    }
+}
@@ -2,15 +2,66 @@ package dev.improve.simpleeconomy.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import dev.improve.simpleeconomy.metrics.Metrics;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
 
-public class MySQLProvider implements DatabaseProvider {
+/**
+ * MySQL backend. Accounts are keyed by {@code BINARY(16)} UUIDs; rows from the old VARCHAR-keyed table
+ * are moved over in small transactions by {@link #migrateLegacyRows(int)}. Until that finishes every row
+ * lives in exactly one of the two tables, and queries read both in a single statement.
+ * <p>
+ * The ledger is kept in one table per month, see {@link LedgerTables}. Other servers sharing the database
+ * may add months, so the list of ledger tables is read from the schema whenever the ledger is queried.
+ * <p>
+ * When shared, every account row carries a version that each write increments, and every write appends the
+ * new balance and version to a change log in the same transaction. Servers follow the log by its
+ * auto-increment sequence to refresh the accounts they cache, and save by adding what changed locally
+ * rather than overwriting balances another server may have changed since. Log entries name the server that
+ * wrote them, so after a crash a server can tell whether its last save went through.
+ */
+public class MySQLProvider implements SharedDatabaseProvider {
 
-    private static final String TABLE_NAME = "simpleeconomy_balances";
+    private static final String TABLE_NAME = "simpleeconomy_accounts";
+    private static final String LEGACY_TABLE_NAME = "simpleeconomy_balances";
+    private static final String NAMES_TABLE_NAME = "simpleeconomy_names";
+    private static final String LEDGER_PREFIX = "simpleeconomy_ledger_";
+    private static final String UPDATES_TABLE_NAME = "simpleeconomy_balance_updates";
+    private static final String LEGACY_KEY = "UPPER(REPLACE(uuid, '-', ''))";
+
+    private static final String UPSERT_BALANCE = "INSERT INTO " + TABLE_NAME + " (uuid, balance) VALUES (?, ?) "
+            + "ON DUPLICATE KEY UPDATE balance = VALUES(balance)";
+    private static final String UPSERT_VERSIONED = "INSERT INTO " + TABLE_NAME + " (uuid, balance, version) VALUES (?, ?, 1) "
+            + "ON DUPLICATE KEY UPDATE balance = VALUES(balance), version = version + 1";
+    private static final String ADD_BALANCE = "INSERT INTO " + TABLE_NAME + " (uuid, balance, version) VALUES (?, ?, 1) "
+            + "ON DUPLICATE KEY UPDATE balance = balance + ?, version = version + 1";
+    private static final String UPSERT_NAME = "INSERT INTO " + NAMES_TABLE_NAME + " (uuid, name, updated) VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE name = VALUES(name), updated = VALUES(updated)";
+    private static final String DELETE_LEGACY = "DELETE FROM " + LEGACY_TABLE_NAME + " WHERE uuid = ?";
+    private static final String SELECT_BALANCE = "SELECT balance FROM " + TABLE_NAME + " WHERE uuid = ?";
+    private static final String SELECT_BALANCE_MIGRATING = SELECT_BALANCE
+            + " UNION ALL SELECT balance FROM " + LEGACY_TABLE_NAME + " WHERE uuid = ?";
+    private static final String SELECT_STORED = "SELECT balance, version FROM " + TABLE_NAME + " WHERE uuid = ?";
+    private static final String SELECT_STORED_MIGRATING = SELECT_STORED
+            + " UNION ALL SELECT balance, 0 FROM " + LEGACY_TABLE_NAME + " WHERE uuid = ?";
+    // Keys per IN list when a batch of written rows is logged or read back
+    private static final int KEYS_PER_QUERY = 500;
+    private static final int DUPLICATE_COLUMN = 1060;
 
     private final String host;
     private final int port;
@@ -18,16 +69,30 @@ public class MySQLProvider implements DatabaseProvider {
     private final String username;
     private final String password;
     private final int poolSize;
+    private final boolean shared;
+    private final long serverId;
 
     private HikariDataSource dataSource;
+    // Held for reading by queries that touch the legacy table, and for writing while it is dropped
+    private final ReentrantReadWriteLock schemaLock = new ReentrantReadWriteLock();
+    private volatile boolean migrating;
+    private String migrationCursor = "";
+    // Months whose ledger table this server has created or seen, so writes skip the CREATE TABLE
+    private final Set<Integer> ledgerMonths = ConcurrentHashMap.newKeySet();
 
-    public MySQLProvider(String host, int port, String database, String username, String password, int poolSize) {
+    /**
+     * @param serverId identifies this server's writes in the change log; only used when {@code shared}
+     */
+    public MySQLProvider(String host, int port, String database, String username, String password, int poolSize,
+                         boolean shared, long serverId) {
         this.host = host;
         this.port = port;
         this.database = database;
         this.username = username;
         this.password = password;
         this.poolSize = poolSize;
+        this.shared = shared;
+        this.serverId = serverId;
     }
 
     @Override
@@ -51,11 +116,63 @@ public class MySQLProvider implements DatabaseProvider {
              Statement stmt = conn.createStatement()) {
             stmt.execute("""
                     CREATE TABLE IF NOT EXISTS %s (
-                        uuid VARCHAR(36) PRIMARY KEY,
+                        uuid BINARY(16) NOT NULL PRIMARY KEY,
                         balance DOUBLE NOT NULL,
                         INDEX idx_balance (balance DESC)
                     )
                     """.formatted(TABLE_NAME));
+
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS %s (
+                        uuid BINARY(16) NOT NULL PRIMARY KEY,
+                        name VARCHAR(32) NOT NULL,
+                        updated BIGINT NOT NULL
+                    )
+                    """.formatted(NAMES_TABLE_NAME));
+
+            try (ResultSet rs = conn.getMetaData().getTables(conn.getCatalog(), null, LEGACY_TABLE_NAME, new String[]{"TABLE"})) {
+                migrating = rs.next();
+            }
+
+            if (shared) {
+                createSharedTables(conn, stmt);
+            }
+        }
+    }
+
+    /**
+     * Adds the row version to the accounts table and creates the change log. Several servers may start at once,
+     * so a column added by another one in the meantime is not an error.
+     */
+    private static void createSharedTables(Connection conn, Statement stmt) throws SQLException {
+        addColumn(conn, stmt, TABLE_NAME, "version", "BIGINT NOT NULL DEFAULT 0");
+
+        stmt.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    seq BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                    uuid BINARY(16) NOT NULL,
+                    balance DOUBLE NOT NULL,
+                    version BIGINT NOT NULL,
+                    time BIGINT NOT NULL,
+                    server BIGINT NOT NULL DEFAULT 0,
+                    INDEX idx_time (time)
+                )
+                """.formatted(UPDATES_TABLE_NAME));
+        addColumn(conn, stmt, UPDATES_TABLE_NAME, "server", "BIGINT NOT NULL DEFAULT 0");
+    }
+
+    private static void addColumn(Connection conn, Statement stmt, String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        try {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        } catch (SQLException ex) {
+            if (ex.getErrorCode() != DUPLICATE_COLUMN) {
+                throw ex;
+            }
         }
     }
 
@@ -70,160 +187,752 @@ public class MySQLProvider implements DatabaseProvider {
         return dataSource.getConnection();
     }
 
+    /**
+     * Binds a UUID as the binary key and, while migrating, as the legacy text key in the next parameter.
+     */
+    private void bindKey(PreparedStatement stmt, UUID uuid) throws SQLException {
+        stmt.setBytes(1, UuidCodec.toBytes(uuid));
+        if (migrating) {
+            stmt.setString(2, uuid.toString());
+        }
+    }
+
     @Override
     public boolean hasBalance(UUID uuid) throws SQLException {
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT 1 FROM " + TABLE_NAME + " WHERE uuid = ?")) {
-            stmt.setString(1, uuid.toString());
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
-            }
-        }
+        return loadBalance(uuid) != null;
     }
 
     @Override
     public Double loadBalance(UUID uuid) throws SQLException {
+        schemaLock.readLock().lock();
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT balance FROM " + TABLE_NAME + " WHERE uuid = ?")) {
-            stmt.setString(1, uuid.toString());
+             PreparedStatement stmt = conn.prepareStatement(migrating ? SELECT_BALANCE_MIGRATING : SELECT_BALANCE)) {
+            bindKey(stmt, uuid);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return rs.getDouble("balance");
                 }
             }
+        } finally {
+            schemaLock.readLock().unlock();
         }
         return null;
     }
 
     @Override
     public void saveBalance(UUID uuid, double balance) throws SQLException {
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "INSERT INTO " + TABLE_NAME + " (uuid, balance) VALUES (?, ?) " +
-                             "ON DUPLICATE KEY UPDATE balance = VALUES(balance)")) {
-            stmt.setString(1, uuid.toString());
-            stmt.setDouble(2, balance);
-            stmt.executeUpdate();
-        }
+        saveBalances(Map.of(uuid, balance));
     }
 
     @Override
     public void saveBalances(Map<UUID, Double> balances) throws SQLException {
+        schemaLock.readLock().lock();
         try (Connection conn = getConnection()) {
             conn.setAutoCommit(false);
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO " + TABLE_NAME + " (uuid, balance) VALUES (?, ?) " +
-                            "ON DUPLICATE KEY UPDATE balance = VALUES(balance)")) {
-                for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
-                    stmt.setString(1, entry.getKey().toString());
-                    stmt.setDouble(2, entry.getValue());
+            boolean legacy = migrating;
+            List<UUID> keys = sortedKeys(balances.keySet());
+            try (PreparedStatement stmt = conn.prepareStatement(shared ? UPSERT_VERSIONED : UPSERT_BALANCE);
+                 PreparedStatement deleteLegacy = legacy ? conn.prepareStatement(DELETE_LEGACY) : null) {
+                for (UUID uuid : keys) {
+                    if (legacy) {
+                        // Keep each account in exactly one table while the old one is being emptied
+                        deleteLegacy.setString(1, uuid.toString());
+                        deleteLegacy.addBatch();
+                    }
+                    stmt.setBytes(1, UuidCodec.toBytes(uuid));
+                    stmt.setDouble(2, balances.get(uuid));
                     stmt.addBatch();
                 }
+                // Legacy rows first, in key order like the migration locks them, so the two never deadlock
+                if (legacy) {
+                    deleteLegacy.executeBatch();
+                }
                 stmt.executeBatch();
+                if (shared) {
+                    logUpdates(conn, keys, System.currentTimeMillis());
+                }
                 conn.commit();
             } catch (SQLException ex) {
                 conn.rollback();
                 throw ex;
             }
+        } finally {
+            schemaLock.readLock().unlock();
         }
     }
 
     @Override
     public void deleteBalance(UUID uuid) throws SQLException {
+        schemaLock.readLock().lock();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM " + TABLE_NAME + " WHERE uuid = ?")) {
+                if (migrating) {
+                    try (PreparedStatement deleteLegacy = conn.prepareStatement(DELETE_LEGACY)) {
+                        deleteLegacy.setString(1, uuid.toString());
+                        deleteLegacy.executeUpdate();
+                    }
+                }
+                stmt.setBytes(1, UuidCodec.toBytes(uuid));
+                stmt.executeUpdate();
+                if (shared) {
+                    logDeletion(conn, uuid);
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } finally {
+            schemaLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isShared() {
+        return shared;
+    }
+
+    // The version column and the change log only exist when sharing is on
+    private void requireShared() {
+        if (!shared) {
+            throw new IllegalStateException("database.mysql.sync is not enabled");
+        }
+    }
+
+    @Override
+    public StoredBalance loadStoredBalance(UUID uuid) throws SQLException {
+        requireShared();
+        schemaLock.readLock().lock();
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "DELETE FROM " + TABLE_NAME + " WHERE uuid = ?")) {
-            stmt.setString(1, uuid.toString());
+             PreparedStatement stmt = conn.prepareStatement(migrating ? SELECT_STORED_MIGRATING : SELECT_STORED)) {
+            bindKey(stmt, uuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new StoredBalance(rs.getDouble(1), rs.getLong(2));
+                }
+            }
+        } finally {
+            schemaLock.readLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * Each row is changed with {@code balance = balance + ?} under its row lock, so amounts added by servers
+     * at the same time all count. The rows stay locked until the commit, so reading them back afterwards
+     * in the same transaction sees exactly the result of this write.
+     */
+    @Override
+    public Map<UUID, StoredBalance> addToBalances(Map<UUID, BalanceAddition> additions) throws SQLException {
+        requireShared();
+        List<UUID> keys = sortedKeys(additions.keySet());
+        Map<UUID, StoredBalance> stored = new HashMap<>(keys.size() * 4 / 3 + 1);
+        schemaLock.readLock().lock();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            boolean legacy = migrating;
+            try (PreparedStatement stmt = conn.prepareStatement(ADD_BALANCE)) {
+                if (legacy) {
+                    // An account still in the old table is moved first, so the amount is added to its balance
+                    moveLegacyRows(conn, keys);
+                }
+                for (UUID uuid : keys) {
+                    BalanceAddition addition = additions.get(uuid);
+                    stmt.setBytes(1, UuidCodec.toBytes(uuid));
+                    stmt.setDouble(2, addition.balance());
+                    stmt.setDouble(3, addition.amount());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                logUpdates(conn, keys, System.currentTimeMillis());
+                readStored(conn, keys, stored);
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } finally {
+            schemaLock.readLock().unlock();
+        }
+        return stored;
+    }
+
+    /**
+     * Sorts accounts by their string form, which is the order of both the legacy VARCHAR keys and the binary keys.
+     * Writes that lock rows in the order the migration does cannot deadlock with it.
+     */
+    private static List<UUID> sortedKeys(Set<UUID> uuids) {
+        List<UUID> keys = new ArrayList<>(uuids);
+        keys.sort(Comparator.comparing(UUID::toString));
+        return keys;
+    }
+
+    /**
+     * Moves the given accounts that are still in the legacy table into the current one.
+     * The legacy rows are locked for update as they are read, in key order, rather than read with shared locks
+     * that the delete would then have to upgrade, which deadlocks against the migration locking the same rows.
+     */
+    private static void moveLegacyRows(Connection conn, List<UUID> keys) throws SQLException {
+        Map<String, Double> found = new LinkedHashMap<>();
+        String sql = "SELECT uuid, balance FROM " + LEGACY_TABLE_NAME + " WHERE uuid IN ";
+        for (int from = 0; from < keys.size(); from += KEYS_PER_QUERY) {
+            int count = Math.min(KEYS_PER_QUERY, keys.size() - from);
+            try (PreparedStatement stmt = conn.prepareStatement(sql + placeholders(count) + " ORDER BY uuid FOR UPDATE")) {
+                for (int i = 0; i < count; i++) {
+                    stmt.setString(i + 1, keys.get(from + i).toString());
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        found.put(rs.getString(1), rs.getDouble(2));
+                    }
+                }
+            }
+        }
+        if (found.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT IGNORE INTO " + TABLE_NAME + " (uuid, balance) VALUES (?, ?)");
+             PreparedStatement delete = conn.prepareStatement(DELETE_LEGACY)) {
+            for (Map.Entry<String, Double> row : found.entrySet()) {
+                insert.setBytes(1, UuidCodec.toBytes(UUID.fromString(row.getKey())));
+                insert.setDouble(2, row.getValue());
+                insert.addBatch();
+                delete.setString(1, row.getKey());
+                delete.addBatch();
+            }
+            insert.executeBatch();
+            delete.executeBatch();
+        }
+    }
+
+    /**
+     * Appends the current balance and version of each written row to the change log.
+     */
+    private void logUpdates(Connection conn, List<UUID> keys, long time) throws SQLException {
+        String sql = "INSERT INTO " + UPDATES_TABLE_NAME + " (uuid, balance, version, time, server) SELECT uuid, balance, version, ?, ? FROM "
+                + TABLE_NAME + " WHERE uuid IN ";
+        for (int from = 0; from < keys.size(); from += KEYS_PER_QUERY) {
+            int count = Math.min(KEYS_PER_QUERY, keys.size() - from);
+            try (PreparedStatement stmt = conn.prepareStatement(sql + placeholders(count))) {
+                stmt.setLong(1, time);
+                stmt.setLong(2, serverId);
+                bindKeys(stmt, 3, keys, from, count);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    private void logDeletion(Connection conn, UUID uuid) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO " + UPDATES_TABLE_NAME + " (uuid, balance, version, time, server) VALUES (?, 0, 0, ?, ?)")) {
+            stmt.setBytes(1, UuidCodec.toBytes(uuid));
+            stmt.setLong(2, System.currentTimeMillis());
+            stmt.setLong(3, serverId);
             stmt.executeUpdate();
         }
     }
 
+    private static void readStored(Connection conn, List<UUID> keys, Map<UUID, StoredBalance> into) throws SQLException {
+        String sql = "SELECT uuid, balance, version FROM " + TABLE_NAME + " WHERE uuid IN ";
+        for (int from = 0; from < keys.size(); from += KEYS_PER_QUERY) {
+            int count = Math.min(KEYS_PER_QUERY, keys.size() - from);
+            try (PreparedStatement stmt = conn.prepareStatement(sql + placeholders(count))) {
+                bindKeys(stmt, 1, keys, from, count);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        into.put(UuidCodec.fromBytes(rs.getBytes(1)), new StoredBalance(rs.getDouble(2), rs.getLong(3)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder(count * 3 + 2).append('(');
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    private static void bindKeys(PreparedStatement stmt, int first, List<UUID> keys, int from, int count) throws SQLException {
+        for (int i = 0; i < count; i++) {
+            stmt.setBytes(first + i, UuidCodec.toBytes(keys.get(from + i)));
+        }
+    }
+
+    @Override
+    public List<BalanceUpdate> getBalanceUpdates(long after, int limit) throws SQLException {
+        requireShared();
+        List<BalanceUpdate> updates = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT seq, uuid, balance, version FROM " + UPDATES_TABLE_NAME
+                     + " WHERE seq > ? ORDER BY seq LIMIT ?")) {
+            stmt.setLong(1, after);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    try {
+                        updates.add(new BalanceUpdate(rs.getLong(1), UuidCodec.fromBytes(rs.getBytes(2)), rs.getDouble(3), rs.getLong(4)));
+                    } catch (IllegalArgumentException ignored) {
+                        // Skip malformed UUIDs
+                    }
+                }
+            }
+        }
+        return updates;
+    }
+
+    @Override
+    public long getLatestBalanceUpdate() throws SQLException {
+        requireShared();
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(seq), 0) FROM " + UPDATES_TABLE_NAME);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Override
+    public Map<UUID, Long> getOwnVersions(Set<UUID> uuids) throws SQLException {
+        requireShared();
+        List<UUID> keys = new ArrayList<>(uuids);
+        Map<UUID, Long> versions = new HashMap<>(keys.size() * 4 / 3 + 1);
+        String sql = "SELECT uuid, MAX(version) FROM " + UPDATES_TABLE_NAME + " WHERE server = ? AND uuid IN ";
+        try (Connection conn = getConnection()) {
+            for (int from = 0; from < keys.size(); from += KEYS_PER_QUERY) {
+                int count = Math.min(KEYS_PER_QUERY, keys.size() - from);
+                try (PreparedStatement stmt = conn.prepareStatement(sql + placeholders(count) + " GROUP BY uuid")) {
+                    stmt.setLong(1, serverId);
+                    bindKeys(stmt, 2, keys, from, count);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            versions.put(UuidCodec.fromBytes(rs.getBytes(1)), rs.getLong(2));
+                        }
+                    }
+                }
+            }
+        }
+        return versions;
+    }
+
+    @Override
+    public int pruneBalanceUpdates(long before) throws SQLException {
+        requireShared();
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + UPDATES_TABLE_NAME + " WHERE time < ?")) {
+            stmt.setLong(1, before);
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * The balance index holds the primary key after the balance, so (balance DESC, uuid) is read straight from it.
+     * During a migration equal balances from both tables are ordered by the hex form of their key, which sorts like the bytes.
+     */
     @Override
     public Map<UUID, Double> getTopBalances(int limit) throws SQLException {
+        String sql = "SELECT uuid, NULL AS legacy_uuid, balance, HEX(uuid) AS tie FROM " + TABLE_NAME
+                + " ORDER BY balance DESC, uuid LIMIT ?";
+        schemaLock.readLock().lock();
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(migrating
+                     ? "(" + sql + ") UNION ALL (SELECT NULL, uuid, balance, " + LEGACY_KEY + " FROM " + LEGACY_TABLE_NAME
+                     + " ORDER BY balance DESC, " + LEGACY_KEY + " LIMIT ?) ORDER BY balance DESC, tie LIMIT ?"
+                     : sql)) {
+            stmt.setInt(1, limit);
+            if (migrating) {
+                stmt.setInt(2, limit);
+                stmt.setInt(3, limit);
+            }
+            return readTop(stmt);
+        } finally {
+            schemaLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<UUID, Double> getTopBalancesAfter(double balance, UUID uuid, int limit) throws SQLException {
+        String sql = "SELECT uuid, NULL AS legacy_uuid, balance, HEX(uuid) AS tie FROM " + TABLE_NAME
+                + " WHERE balance <= ? AND (balance < ? OR uuid > ?) ORDER BY balance DESC, uuid LIMIT ?";
+        schemaLock.readLock().lock();
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(migrating
+                     ? "(" + sql + ") UNION ALL (SELECT NULL, uuid, balance, " + LEGACY_KEY + " FROM " + LEGACY_TABLE_NAME
+                     + " WHERE balance <= ? AND (balance < ? OR " + LEGACY_KEY + " > ?) ORDER BY balance DESC, "
+                     + LEGACY_KEY + " LIMIT ?) ORDER BY balance DESC, tie LIMIT ?"
+                     : sql)) {
+            stmt.setDouble(1, balance);
+            stmt.setDouble(2, balance);
+            stmt.setBytes(3, UuidCodec.toBytes(uuid));
+            stmt.setInt(4, limit);
+            if (migrating) {
+                stmt.setDouble(5, balance);
+                stmt.setDouble(6, balance);
+                stmt.setString(7, UuidCodec.toHex(uuid));
+                stmt.setInt(8, limit);
+                stmt.setInt(9, limit);
+            }
+            return readTop(stmt);
+        } finally {
+            schemaLock.readLock().unlock();
+        }
+    }
+
+    private static Map<UUID, Double> readTop(PreparedStatement stmt) throws SQLException {
         Map<UUID, Double> top = new LinkedHashMap<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                try {
+                    byte[] key = rs.getBytes(1);
+                    UUID uuid = key != null ? UuidCodec.fromBytes(key) : UUID.fromString(rs.getString(2));
+                    top.put(uuid, rs.getDouble("balance"));
+                } catch (IllegalArgumentException ignored) {
+                    // Skip malformed UUIDs
+                }
+            }
+        }
+        return top;
+    }
+
+    /**
+     * During a migration the old table is streamed first: a row moved in the meantime is then
+     * delivered again from the new table rather than missed.
+     */
+    @Override
+    public void forEachBalance(BiConsumer<UUID, Double> consumer) throws SQLException {
+        if (migrating) {
+            schemaLock.readLock().lock();
+            try {
+                if (migrating) {
+                    stream("SELECT uuid, balance FROM " + LEGACY_TABLE_NAME, rs -> UUID.fromString(rs.getString("uuid")), consumer);
+                }
+            } finally {
+                schemaLock.readLock().unlock();
+            }
+        }
+        stream("SELECT uuid, balance FROM " + TABLE_NAME, rs -> UuidCodec.fromBytes(rs.getBytes("uuid")), consumer);
+    }
+
+    private interface KeyReader {
+        UUID read(ResultSet rs) throws SQLException;
+    }
+
+    private void stream(String sql, KeyReader keyReader, BiConsumer<UUID, Double> consumer) throws SQLException {
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT uuid, balance FROM " + TABLE_NAME + " ORDER BY balance DESC LIMIT ?")) {
-            stmt.setInt(1, limit);
+                     sql,
+                     ResultSet.TYPE_FORWARD_ONLY,
+                     ResultSet.CONCUR_READ_ONLY)) {
+            // Makes Connector/J stream rows instead of buffering the whole result
+            stmt.setFetchSize(Integer.MIN_VALUE);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     try {
-                        UUID uuid = UUID.fromString(rs.getString("uuid"));
-                        top.put(uuid, rs.getDouble("balance"));
+                        consumer.accept(keyReader.read(rs), rs.getDouble("balance"));
                     } catch (IllegalArgumentException ignored) {
                         // Skip malformed UUIDs
                     }
                 }
             }
         }
-        return top;
+    }
+
+    @Override
+    public void saveNames(Map<UUID, String> names) throws SQLException {
+        long updated = System.currentTimeMillis();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(UPSERT_NAME)) {
+                for (Map.Entry<UUID, String> entry : names.entrySet()) {
+                    stmt.setBytes(1, UuidCodec.toBytes(entry.getKey()));
+                    stmt.setString(2, entry.getValue());
+                    stmt.setLong(3, updated);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    public void forEachName(BiConsumer<UUID, String> consumer) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT uuid, name FROM " + NAMES_TABLE_NAME + " ORDER BY updated");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                try {
+                    consumer.accept(UuidCodec.fromBytes(rs.getBytes(1)), rs.getString(2));
+                } catch (IllegalArgumentException ignored) {
+                    // Skip malformed UUIDs
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all entries in one transaction. Tables are created beforehand, since DDL would commit it early.
+     */
+    @Override
+    public void saveLedger(List<LedgerEntry> entries) throws SQLException {
+        Map<Integer, List<LedgerEntry>> months = LedgerTables.byMonth(entries);
+        try (Connection conn = getConnection()) {
+            for (int month : months.keySet()) {
+                if (!ledgerMonths.contains(month)) {
+                    createLedgerTable(conn, LedgerTables.table(LEDGER_PREFIX, month));
+                    ledgerMonths.add(month);
+                }
+            }
+
+            conn.setAutoCommit(false);
+            try {
+                for (Map.Entry<Integer, List<LedgerEntry>> month : months.entrySet()) {
+                    LedgerTables.insertAll(conn, LedgerTables.table(LEDGER_PREFIX, month.getKey()), month.getValue());
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    private static void createLedgerTable(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS %s (
+                        id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                        time BIGINT NOT NULL,
+                        uuid BINARY(16) NOT NULL,
+                        type VARCHAR(8) NOT NULL,
+                        delta DOUBLE NOT NULL,
+                        balance DOUBLE NOT NULL,
+                        counterparty BINARY(16) NULL,
+                        actor VARCHAR(64) NULL,
+                        source VARCHAR(64) NULL,
+                        INDEX idx_uuid (uuid, id)
+                    )
+                    """.formatted(table));
+        }
+    }
+
+    /**
+     * The months that have a ledger table, newest first.
+     */
+    private static NavigableSet<Integer> ledgerMonths(Connection conn) throws SQLException {
+        NavigableSet<Integer> months = new TreeSet<>();
+        try (ResultSet rs = conn.getMetaData().getTables(conn.getCatalog(), null, LEDGER_PREFIX + "%", new String[]{"TABLE"})) {
+            while (rs.next()) {
+                int month = LedgerTables.monthOf(LEDGER_PREFIX, rs.getString("TABLE_NAME"));
+                if (month > 0) {
+                    months.add(month);
+                }
+            }
+        }
+        return months.descendingSet();
+    }
+
+    /**
+     * Reads month tables from the newest down until enough entries are found; each is an index range scan.
+     */
+    @Override
+    public List<LedgerEntry> getLedger(UUID uuid, int limit) throws SQLException {
+        List<LedgerEntry> entries = new ArrayList<>();
+        try (Connection conn = getConnection()) {
+            byte[] key = UuidCodec.toBytes(uuid);
+            for (int month : ledgerMonths(conn)) {
+                if (entries.size() >= limit) {
+                    break;
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(LedgerTables.history(LedgerTables.table(LEDGER_PREFIX, month)))) {
+                    stmt.setBytes(1, key);
+                    stmt.setInt(2, limit - entries.size());
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        LedgerTables.read(rs, uuid, entries);
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public int pruneLedger(long before) throws SQLException {
+        int cutoff = LedgerTables.month(before);
+        int dropped = 0;
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement()) {
+            // The set is newest first, so its tail holds the months before the cutoff
+            for (int month : ledgerMonths(conn).tailSet(cutoff, false)) {
+                stmt.execute("DROP TABLE IF EXISTS " + LedgerTables.table(LEDGER_PREFIX, month));
+                ledgerMonths.remove(month);
+                dropped++;
+            }
+        }
+        return dropped;
     }
 
     @Override
     public double getTotalBalance() throws SQLException {
+        String sql = "SELECT COALESCE(SUM(balance), 0) FROM " + TABLE_NAME;
+        schemaLock.readLock().lock();
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT SUM(balance) as total FROM " + TABLE_NAME);
+             PreparedStatement stmt = conn.prepareStatement(migrating
+                     ? "SELECT (" + sql + ") + (SELECT COALESCE(SUM(balance), 0) FROM " + LEGACY_TABLE_NAME + ") AS total"
+                     : sql + " AS total");
              ResultSet rs = stmt.executeQuery()) {
             if (rs.next()) {
                 return rs.getDouble("total");
             }
+        } finally {
+            schemaLock.readLock().unlock();
         }
         return 0.0;
     }
 
     @Override
     public int getPlayerCount() throws SQLException {
+        String sql = "SELECT COUNT(*) FROM " + TABLE_NAME;
+        schemaLock.readLock().lock();
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT COUNT(*) as count FROM " + TABLE_NAME);
+             PreparedStatement stmt = conn.prepareStatement(migrating
+                     ? "SELECT (" + sql + ") + (SELECT COUNT(*) FROM " + LEGACY_TABLE_NAME + ") AS count"
+                     : sql + " AS count");
              ResultSet rs = stmt.executeQuery()) {
             if (rs.next()) {
                 return rs.getInt("count");
             }
+        } finally {
+            schemaLock.readLock().unlock();
         }
         return 0;
     }
 
     @Override
     public int getPlayerRank(UUID uuid) throws SQLException {
+        String above = "(SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE balance > t.balance)";
+        schemaLock.readLock().lock();
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT COUNT(*) + 1 as rank FROM " + TABLE_NAME + " WHERE balance > (SELECT balance FROM " + TABLE_NAME + " WHERE uuid = ?)")) {
-            stmt.setString(1, uuid.toString());
+             PreparedStatement stmt = conn.prepareStatement(migrating
+                     ? "SELECT " + above + " + (SELECT COUNT(*) FROM " + LEGACY_TABLE_NAME + " WHERE balance > t.balance)"
+                     + " + 1 AS player_rank FROM (" + SELECT_BALANCE_MIGRATING + ") t"
+                     : "SELECT " + above + " + 1 AS player_rank FROM (" + SELECT_BALANCE + ") t")) {
+            bindKey(stmt, uuid);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getInt("rank");
+                    return rs.getInt("player_rank");
                 }
             }
+        } finally {
+            schemaLock.readLock().unlock();
         }
         return -1;
     }
 
+    /**
+     * Moves the next rows from the VARCHAR-keyed table. The rows are locked with {@code FOR UPDATE}
+     * for the length of one short transaction, so concurrent saves only wait on the chunk in flight.
+     * Once it is empty the old table is dropped; rows whose key is not a UUID are kept in a renamed copy.
+     */
     @Override
-    public void executeTransfer(UUID from, double fromBalance, UUID to, double toBalance) throws SQLException {
+    public synchronized int migrateLegacyRows(int limit) throws SQLException {
+        if (!migrating) {
+            return 0;
+        }
+
+        String last = null;
+        int moved = 0;
         try (Connection conn = getConnection()) {
             conn.setAutoCommit(false);
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO " + TABLE_NAME + " (uuid, balance) VALUES (?, ?) " +
-                            "ON DUPLICATE KEY UPDATE balance = VALUES(balance)")) {
-                stmt.setString(1, from.toString());
-                stmt.setDouble(2, fromBalance);
-                stmt.addBatch();
-
-                stmt.setString(1, to.toString());
-                stmt.setDouble(2, toBalance);
-                stmt.addBatch();
-
-                stmt.executeBatch();
+            try (PreparedStatement select = conn.prepareStatement(
+                    "SELECT uuid, balance FROM " + LEGACY_TABLE_NAME + " WHERE uuid > ? ORDER BY uuid LIMIT ? FOR UPDATE");
+                 PreparedStatement insert = conn.prepareStatement(
+                         "INSERT IGNORE INTO " + TABLE_NAME + " (uuid, balance) VALUES (?, ?)");
+                 PreparedStatement delete = conn.prepareStatement(DELETE_LEGACY)) {
+                select.setString(1, migrationCursor);
+                select.setInt(2, limit);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        last = rs.getString("uuid");
+                        UUID uuid;
+                        try {
+                            uuid = UUID.fromString(last);
+                        } catch (IllegalArgumentException ex) {
+                            continue;
+                        }
+                        insert.setBytes(1, UuidCodec.toBytes(uuid));
+                        insert.setDouble(2, rs.getDouble("balance"));
+                        insert.addBatch();
+                        delete.setString(1, last);
+                        delete.addBatch();
+                        moved++;
+                    }
+                }
+                if (moved > 0) {
+                    insert.executeBatch();
+                    delete.executeBatch();
+                }
                 conn.commit();
             } catch (SQLException ex) {
                 conn.rollback();
                 throw ex;
             }
         }
+
+        if (last == null) {
+            finishMigration();
+            return 0;
+        }
+        migrationCursor = last;
+        // Only malformed keys in this chunk still counts as progress
+        return Math.max(moved, 1);
+    }
+
+    private void finishMigration() throws SQLException {
+        schemaLock.writeLock().lock();
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement()) {
+            int remaining;
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + LEGACY_TABLE_NAME)) {
+                remaining = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (remaining == 0) {
+                stmt.execute("DROP TABLE " + LEGACY_TABLE_NAME);
+            } else {
+                stmt.execute("RENAME TABLE " + LEGACY_TABLE_NAME + " TO " + LEGACY_TABLE_NAME + "_unmigrated");
+            }
+            migrating = false;
+        } finally {
+            schemaLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int maxConnections() {
+        return poolSize;
+    }
+
+    @Override
+    public void registerMetrics(Metrics metrics) {
+        metrics.gauge("pool.active", () -> poolStat(HikariPoolMXBean::getActiveConnections));
+        metrics.gauge("pool.idle", () -> poolStat(HikariPoolMXBean::getIdleConnections));
+        metrics.gauge("pool.total", () -> poolStat(HikariPoolMXBean::getTotalConnections));
+        metrics.gauge("pool.waiting", () -> poolStat(HikariPoolMXBean::getThreadsAwaitingConnection));
+        metrics.gauge("pool.max", () -> poolSize);
+    }
+
+    private long poolStat(ToIntFunction<HikariPoolMXBean> stat) {
+        HikariDataSource source = dataSource;
+        HikariPoolMXBean pool = source == null || source.isClosed() ? null : source.getHikariPoolMXBean();
+        return pool == null ? 0 : stat.applyAsInt(pool);
     }
 
     @Override
@@ -2,26 +2,126 @@ package dev.improve.simpleeconomy.database;
 
 import java.io.File;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
+/**
+ * SQLite backend. In WAL mode readers do not block the writer, so queries use a small pool of
+ * query-only connections while one writer connection handles saves and deletes.
+ * Each connection has its own prepared statements and is used by one thread at a time.
+ * <p>
+ * Accounts are keyed by 16-byte BLOB UUIDs. Rows from the old TEXT-keyed table are moved over in
+ * small transactions by {@link #migrateLegacyRows(int)}. Until that finishes every row lives in
+ * exactly one of the two tables, and queries read both in a single statement.
+ * <p>
+ * The ledger is kept in one table per month, see {@link LedgerTables}.
+ */
 public class SQLiteProvider implements DatabaseProvider {
 
-    private static final String TABLE_NAME = "balances";
+    private static final String TABLE_NAME = "accounts";
+    private static final String LEGACY_TABLE_NAME = "balances";
+    private static final String NAMES_TABLE_NAME = "names";
+    private static final String LEDGER_PREFIX = "ledger_";
+    private static final int STREAM_CHUNK_SIZE = 5000;
+
+    private static final String SELECT_BALANCE = "SELECT balance FROM " + TABLE_NAME + " WHERE uuid = ?";
+    private static final String SELECT_BALANCE_MIGRATING = SELECT_BALANCE
+            + " UNION ALL SELECT balance FROM " + LEGACY_TABLE_NAME + " WHERE uuid = ?";
+    // The balance index also holds the key, so both orders are read straight from it. During a migration
+    // equal balances from both tables are ordered by the hex form of their key, which sorts like the bytes
+    private static final String LEGACY_KEY = "upper(replace(uuid, '-', ''))";
+    private static final String TOP_BALANCES =
+            "SELECT uuid, NULL AS legacy_uuid, balance FROM " + TABLE_NAME + " ORDER BY balance DESC, uuid LIMIT ?";
+    private static final String TOP_BALANCES_MIGRATING = "SELECT * FROM ("
+            + "SELECT uuid, NULL AS legacy_uuid, balance, hex(uuid) AS tie FROM " + TABLE_NAME
+            + " ORDER BY balance DESC, uuid LIMIT ?) UNION ALL SELECT * FROM ("
+            + "SELECT NULL, uuid, balance, " + LEGACY_KEY + " AS tie FROM " + LEGACY_TABLE_NAME
+            + " ORDER BY balance DESC, tie LIMIT ?) ORDER BY balance DESC, tie LIMIT ?";
+    private static final String TOP_BALANCES_AFTER = "SELECT uuid, NULL AS legacy_uuid, balance FROM " + TABLE_NAME
+            + " WHERE balance <= ? AND (balance < ? OR uuid > ?) ORDER BY balance DESC, uuid LIMIT ?";
+    private static final String TOP_BALANCES_AFTER_MIGRATING = "SELECT * FROM ("
+            + "SELECT uuid, NULL AS legacy_uuid, balance, hex(uuid) AS tie FROM " + TABLE_NAME
+            + " WHERE balance <= ? AND (balance < ? OR uuid > ?) ORDER BY balance DESC, uuid LIMIT ?) UNION ALL SELECT * FROM ("
+            + "SELECT NULL, uuid, balance, " + LEGACY_KEY + " AS tie FROM " + LEGACY_TABLE_NAME
+            + " WHERE balance <= ? AND (balance < ? OR " + LEGACY_KEY + " > ?) ORDER BY balance DESC, tie LIMIT ?)"
+            + " ORDER BY balance DESC, tie LIMIT ?";
+    private static final String TOTAL_BALANCE = "SELECT COALESCE(SUM(balance), 0) FROM " + TABLE_NAME;
+    private static final String TOTAL_BALANCE_MIGRATING = "SELECT (" + TOTAL_BALANCE + ") + ("
+            + "SELECT COALESCE(SUM(balance), 0) FROM " + LEGACY_TABLE_NAME + ")";
+    private static final String PLAYER_COUNT = "SELECT COUNT(*) FROM " + TABLE_NAME;
+    private static final String PLAYER_COUNT_MIGRATING = "SELECT (" + PLAYER_COUNT + ") + ("
+            + "SELECT COUNT(*) FROM " + LEGACY_TABLE_NAME + ")";
+    private static final String PLAYER_RANK = "SELECT (SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE balance > t.balance) + 1"
+            + " FROM (" + SELECT_BALANCE + ") t";
+    private static final String PLAYER_RANK_MIGRATING = "SELECT (SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE balance > t.balance)"
+            + " + (SELECT COUNT(*) FROM " + LEGACY_TABLE_NAME + " WHERE balance > t.balance) + 1"
+            + " FROM (" + SELECT_BALANCE_MIGRATING + ") t";
+    private static final String STREAM_BALANCES =
+            "SELECT uuid, balance FROM " + TABLE_NAME + " WHERE uuid > ? ORDER BY uuid LIMIT ?";
+    private static final String UPSERT_NAME = "INSERT INTO " + NAMES_TABLE_NAME + " (uuid, name, updated) VALUES (?, ?, ?) "
+            + "ON CONFLICT(uuid) DO UPDATE SET name = excluded.name, updated = excluded.updated";
+    private static final String SELECT_NAMES = "SELECT uuid, name FROM " + NAMES_TABLE_NAME + " ORDER BY updated";
+    private static final String STREAM_LEGACY_BALANCES =
+            "SELECT uuid, balance FROM " + LEGACY_TABLE_NAME + " WHERE uuid > ? ORDER BY uuid LIMIT ?";
 
     private final File dataFolder;
+    private final int readConnections;
+    private final List<Reader> allReaders = new ArrayList<>();
+    // Held for reading by queries, and for writing while the legacy table or a ledger month is dropped
+    private final ReentrantReadWriteLock schemaLock = new ReentrantReadWriteLock();
+    private final byte[] writerKey = new byte[UuidCodec.SIZE];
+    private final NavigableSet<Integer> ledgerMonths = new ConcurrentSkipListSet<>();
     private Connection connection;
-    private PreparedStatement selectBalanceStatement;
-    private PreparedStatement hasBalanceStatement;
     private PreparedStatement upsertBalanceStatement;
     private PreparedStatement deleteBalanceStatement;
-    private PreparedStatement topBalancesStatement;
-    private PreparedStatement totalEconomyStatement;
-    private PreparedStatement playerCountStatement;
+    private PreparedStatement deleteLegacyStatement;
+    private BlockingQueue<Reader> readers;
+    private volatile boolean migrating;
+    private String migrationCursor = "";
+
+    /**
+     * A read-only connection with the statements prepared on it so far.
+     */
+    private static final class Reader {
+        final Connection connection;
+        final Map<String, PreparedStatement> statements = new HashMap<>();
+        final byte[] key = new byte[UuidCodec.SIZE];
+
+        Reader(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        void close() {
+            statements.values().forEach(SQLiteProvider::closeStatement);
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
 
-    public SQLiteProvider(File dataFolder) {
+    public SQLiteProvider(File dataFolder, int readConnections) {
         this.dataFolder = dataFolder;
+        this.readConnections = Math.max(1, readConnections);
     }
 
     @Override
@@ -38,48 +138,105 @@ public class SQLiteProvider implements DatabaseProvider {
             // Enable WAL mode for better concurrent read/write performance
             stmt.execute("PRAGMA journal_mode=WAL");
             stmt.execute("PRAGMA synchronous=NORMAL");
+            stmt.execute("PRAGMA busy_timeout=5000");
 
+            // The key is the row, so there is no separate rowid b-tree
             stmt.execute("""
                     CREATE TABLE IF NOT EXISTS %s (
-                        uuid TEXT PRIMARY KEY,
+                        uuid BLOB PRIMARY KEY,
                         balance REAL NOT NULL
-                    )
+                    ) WITHOUT ROWID
                     """.formatted(TABLE_NAME));
 
             // Index for faster baltop queries
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_balance ON " + TABLE_NAME + " (balance DESC)");
-        }
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_accounts_balance ON " + TABLE_NAME + " (balance DESC)");
 
-        prepareStatements();
-    }
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS %s (
+                        uuid BLOB PRIMARY KEY,
+                        name TEXT NOT NULL,
+                        updated INTEGER NOT NULL
+                    ) WITHOUT ROWID
+                    """.formatted(NAMES_TABLE_NAME));
+
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = '" + LEGACY_TABLE_NAME + "'")) {
+                migrating = rs.next();
+            }
+
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT name FROM sqlite_master WHERE type = 'table' AND name LIKE '" + LEDGER_PREFIX + "%'")) {
+                while (rs.next()) {
+                    int month = LedgerTables.monthOf(LEDGER_PREFIX, rs.getString(1));
+                    if (month > 0) {
+                        ledgerMonths.add(month);
+                    }
+                }
+            }
+        }
 
-    private void prepareStatements() throws SQLException {
-        selectBalanceStatement = connection.prepareStatement(
-                "SELECT balance FROM " + TABLE_NAME + " WHERE uuid = ?");
-        hasBalanceStatement = connection.prepareStatement(
-                "SELECT 1 FROM " + TABLE_NAME + " WHERE uuid = ?");
         upsertBalanceStatement = connection.prepareStatement(
                 "INSERT INTO " + TABLE_NAME + " (uuid, balance) VALUES (?, ?) " +
                         "ON CONFLICT(uuid) DO UPDATE SET balance = excluded.balance");
         deleteBalanceStatement = connection.prepareStatement(
                 "DELETE FROM " + TABLE_NAME + " WHERE uuid = ?");
-        topBalancesStatement = connection.prepareStatement(
-                "SELECT uuid, balance FROM " + TABLE_NAME + " ORDER BY balance DESC LIMIT ?");
-        totalEconomyStatement = connection.prepareStatement(
-                "SELECT SUM(balance) as total FROM " + TABLE_NAME);
-        playerCountStatement = connection.prepareStatement(
-                "SELECT COUNT(*) as count FROM " + TABLE_NAME);
+        if (migrating) {
+            deleteLegacyStatement = connection.prepareStatement(
+                    "DELETE FROM " + LEGACY_TABLE_NAME + " WHERE uuid = ?");
+        }
+
+        readers = new ArrayBlockingQueue<>(readConnections);
+        for (int i = 0; i < readConnections; i++) {
+            Connection readConnection = DriverManager.getConnection(url);
+            try (Statement stmt = readConnection.createStatement()) {
+                stmt.execute("PRAGMA query_only=ON");
+                stmt.execute("PRAGMA busy_timeout=5000");
+            }
+            Reader reader = new Reader(readConnection);
+            allReaders.add(reader);
+            readers.add(reader);
+        }
+    }
+
+    /**
+     * Takes a reader together with the schema read lock, so the legacy table cannot be dropped while it is queried.
+     * The lock is always taken before the reader, so a pending drop cannot leave the pool exhausted.
+     */
+    private Reader acquireReader() throws SQLException {
+        schemaLock.readLock().lock();
+        try {
+            return readers.take();
+        } catch (InterruptedException ex) {
+            schemaLock.readLock().unlock();
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        }
+    }
+
+    private void releaseReader(Reader reader) {
+        readers.offer(reader);
+        schemaLock.readLock().unlock();
+    }
+
+    /**
+     * Prepares the normal or the migrating form of a query on a reader, binding the UUID to both tables if needed.
+     */
+    private PreparedStatement prepareKeyed(Reader reader, String sql, String migratingSql, UUID uuid) throws SQLException {
+        PreparedStatement statement = reader.prepare(migrating ? migratingSql : sql);
+        statement.setBytes(1, UuidCodec.write(uuid, reader.key));
+        if (migrating) {
+            statement.setString(2, uuid.toString());
+        }
+        return statement;
     }
 
     @Override
-    public void shutdown() {
-        closeStatement(selectBalanceStatement);
-        closeStatement(hasBalanceStatement);
+    public synchronized void shutdown() {
+        allReaders.forEach(Reader::close);
+        allReaders.clear();
         closeStatement(upsertBalanceStatement);
         closeStatement(deleteBalanceStatement);
-        closeStatement(topBalancesStatement);
-        closeStatement(totalEconomyStatement);
-        closeStatement(playerCountStatement);
+        closeStatement(deleteLegacyStatement);
 
         if (connection != null) {
             try {
@@ -89,7 +246,7 @@ public class SQLiteProvider implements DatabaseProvider {
         }
     }
 
-    private void closeStatement(PreparedStatement statement) {
+    private static void closeStatement(PreparedStatement statement) {
         if (statement != null) {
             try {
                 statement.close();
@@ -100,41 +257,81 @@ public class SQLiteProvider implements DatabaseProvider {
 
     @Override
     public boolean hasBalance(UUID uuid) throws SQLException {
-        hasBalanceStatement.setString(1, uuid.toString());
-        try (ResultSet rs = hasBalanceStatement.executeQuery()) {
-            return rs.next();
-        }
+        return loadBalance(uuid) != null;
     }
 
     @Override
     public Double loadBalance(UUID uuid) throws SQLException {
-        selectBalanceStatement.setString(1, uuid.toString());
-        try (ResultSet rs = selectBalanceStatement.executeQuery()) {
-            if (rs.next()) {
-                return rs.getDouble("balance");
+        Reader reader = acquireReader();
+        try {
+            PreparedStatement statement = prepareKeyed(reader, SELECT_BALANCE, SELECT_BALANCE_MIGRATING, uuid);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getDouble(1);
+                }
             }
+            return null;
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    @Override
+    public synchronized void saveBalance(UUID uuid, double balance) throws SQLException {
+        if (migrating) {
+            inTransaction(() -> writeBalance(uuid, balance));
+        } else {
+            writeBalance(uuid, balance);
         }
-        return null;
     }
 
     @Override
-    public void saveBalance(UUID uuid, double balance) throws SQLException {
-        upsertBalanceStatement.setString(1, uuid.toString());
+    public synchronized void saveBalances(Map<UUID, Double> balances) throws SQLException {
+        inTransaction(() -> {
+            for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
+                writeBalance(entry.getKey(), entry.getValue());
+            }
+        });
+    }
+
+    private void writeBalance(UUID uuid, double balance) throws SQLException {
+        if (migrating) {
+            // Keep each account in exactly one table while the old one is being emptied
+            deleteLegacyStatement.setString(1, uuid.toString());
+            deleteLegacyStatement.executeUpdate();
+        }
+        upsertBalanceStatement.setBytes(1, UuidCodec.write(uuid, writerKey));
         upsertBalanceStatement.setDouble(2, balance);
         upsertBalanceStatement.executeUpdate();
     }
 
     @Override
-    public void saveBalances(Map<UUID, Double> balances) throws SQLException {
+    public synchronized void deleteBalance(UUID uuid) throws SQLException {
+        inTransaction(() -> {
+            if (migrating) {
+                deleteLegacyStatement.setString(1, uuid.toString());
+                deleteLegacyStatement.executeUpdate();
+            }
+            deleteBalanceStatement.setBytes(1, UuidCodec.write(uuid, writerKey));
+            deleteBalanceStatement.executeUpdate();
+        });
+    }
+
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Runs work on the writer connection in one transaction. Must be called while synchronized on the provider.
+     */
+    private void inTransaction(SqlWork work) throws SQLException {
         boolean previousAutoCommit = connection.getAutoCommit();
         if (previousAutoCommit) {
             connection.setAutoCommit(false);
         }
 
         try {
-            for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
-                saveBalance(entry.getKey(), entry.getValue());
-            }
+            work.run();
             connection.commit();
         } catch (SQLException ex) {
             connection.rollback();
@@ -147,20 +344,55 @@ public class SQLiteProvider implements DatabaseProvider {
     }
 
     @Override
-    public void deleteBalance(UUID uuid) throws SQLException {
-        deleteBalanceStatement.setString(1, uuid.toString());
-        deleteBalanceStatement.executeUpdate();
+    public Map<UUID, Double> getTopBalances(int limit) throws SQLException {
+        Reader reader = acquireReader();
+        try {
+            PreparedStatement statement;
+            if (migrating) {
+                statement = reader.prepare(TOP_BALANCES_MIGRATING);
+                statement.setInt(1, limit);
+                statement.setInt(2, limit);
+                statement.setInt(3, limit);
+            } else {
+                statement = reader.prepare(TOP_BALANCES);
+                statement.setInt(1, limit);
+            }
+            return readTop(statement);
+        } finally {
+            releaseReader(reader);
+        }
     }
 
     @Override
-    public Map<UUID, Double> getTopBalances(int limit) throws SQLException {
+    public Map<UUID, Double> getTopBalancesAfter(double balance, UUID uuid, int limit) throws SQLException {
+        Reader reader = acquireReader();
+        try {
+            PreparedStatement statement = reader.prepare(migrating ? TOP_BALANCES_AFTER_MIGRATING : TOP_BALANCES_AFTER);
+            statement.setDouble(1, balance);
+            statement.setDouble(2, balance);
+            statement.setBytes(3, UuidCodec.write(uuid, reader.key));
+            statement.setInt(4, limit);
+            if (migrating) {
+                statement.setDouble(5, balance);
+                statement.setDouble(6, balance);
+                statement.setString(7, UuidCodec.toHex(uuid));
+                statement.setInt(8, limit);
+                statement.setInt(9, limit);
+            }
+            return readTop(statement);
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    private static Map<UUID, Double> readTop(PreparedStatement statement) throws SQLException {
         Map<UUID, Double> top = new LinkedHashMap<>();
-        topBalancesStatement.setInt(1, limit);
-        try (ResultSet rs = topBalancesStatement.executeQuery()) {
+        try (ResultSet rs = statement.executeQuery()) {
             while (rs.next()) {
                 try {
-                    UUID uuid = UUID.fromString(rs.getString("uuid"));
-                    top.put(uuid, rs.getDouble("balance"));
+                    byte[] key = rs.getBytes(1);
+                    UUID uuid = key != null ? UuidCodec.fromBytes(key) : UUID.fromString(rs.getString(2));
+                    top.put(uuid, rs.getDouble(3));
                 } catch (IllegalArgumentException ignored) {
                     // Skip malformed UUIDs
                 }
@@ -169,59 +401,327 @@ public class SQLiteProvider implements DatabaseProvider {
         return top;
     }
 
+    /**
+     * Reads the table in UUID-ordered chunks and only holds a read connection while fetching a chunk,
+     * so a large table does not keep it from other queries. During a migration the old table is read first:
+     * a row moved in the meantime is then delivered again from the new table rather than missed.
+     */
     @Override
-    public double getTotalBalance() throws SQLException {
-        try (ResultSet rs = totalEconomyStatement.executeQuery()) {
-            if (rs.next()) {
-                return rs.getDouble("total");
+    public void forEachBalance(BiConsumer<UUID, Double> consumer) throws SQLException {
+        if (migrating) {
+            // Hold the schema lock across all chunks so the old table is not dropped halfway through
+            schemaLock.readLock().lock();
+            try {
+                if (migrating) {
+                    streamLegacy(consumer);
+                }
+            } finally {
+                schemaLock.readLock().unlock();
+            }
+        }
+
+        byte[][] uuids = new byte[STREAM_CHUNK_SIZE][];
+        double[] balances = new double[STREAM_CHUNK_SIZE];
+        byte[] after = new byte[0];
+
+        while (true) {
+            int count = 0;
+            Reader reader = acquireReader();
+            try {
+                PreparedStatement statement = reader.prepare(STREAM_BALANCES);
+                statement.setBytes(1, after);
+                statement.setInt(2, STREAM_CHUNK_SIZE);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        uuids[count] = rs.getBytes(1);
+                        balances[count] = rs.getDouble(2);
+                        count++;
+                    }
+                }
+            } finally {
+                releaseReader(reader);
+            }
+
+            for (int i = 0; i < count; i++) {
+                try {
+                    consumer.accept(UuidCodec.fromBytes(uuids[i]), balances[i]);
+                } catch (IllegalArgumentException ignored) {
+                    // Skip malformed UUIDs
+                }
+            }
+
+            if (count < STREAM_CHUNK_SIZE) {
+                return;
+            }
+            after = uuids[count - 1];
+        }
+    }
+
+    private void streamLegacy(BiConsumer<UUID, Double> consumer) throws SQLException {
+        String[] uuids = new String[STREAM_CHUNK_SIZE];
+        double[] balances = new double[STREAM_CHUNK_SIZE];
+        String after = "";
+
+        while (true) {
+            int count = 0;
+            Reader reader = acquireReader();
+            try {
+                PreparedStatement statement = reader.prepare(STREAM_LEGACY_BALANCES);
+                statement.setString(1, after);
+                statement.setInt(2, STREAM_CHUNK_SIZE);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        uuids[count] = rs.getString(1);
+                        balances[count] = rs.getDouble(2);
+                        count++;
+                    }
+                }
+            } finally {
+                releaseReader(reader);
+            }
+
+            for (int i = 0; i < count; i++) {
+                try {
+                    consumer.accept(UUID.fromString(uuids[i]), balances[i]);
+                } catch (IllegalArgumentException ignored) {
+                    // Skip malformed UUIDs
+                }
+            }
+
+            if (count < STREAM_CHUNK_SIZE) {
+                return;
             }
+            after = uuids[count - 1];
         }
-        return 0.0;
     }
 
     @Override
-    public int getPlayerCount() throws SQLException {
-        try (ResultSet rs = playerCountStatement.executeQuery()) {
-            if (rs.next()) {
-                return rs.getInt("count");
+    public synchronized void saveNames(Map<UUID, String> names) throws SQLException {
+        long updated = System.currentTimeMillis();
+        inTransaction(() -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPSERT_NAME)) {
+                for (Map.Entry<UUID, String> entry : names.entrySet()) {
+                    statement.setBytes(1, UuidCodec.write(entry.getKey(), writerKey));
+                    statement.setString(2, entry.getValue());
+                    statement.setLong(3, updated);
+                    statement.executeUpdate();
+                }
             }
+        });
+    }
+
+    @Override
+    public void forEachName(BiConsumer<UUID, String> consumer) throws SQLException {
+        Reader reader = acquireReader();
+        try (ResultSet rs = reader.prepare(SELECT_NAMES).executeQuery()) {
+            while (rs.next()) {
+                try {
+                    consumer.accept(UuidCodec.fromBytes(rs.getBytes(1)), rs.getString(2));
+                } catch (IllegalArgumentException ignored) {
+                    // Skip malformed UUIDs
+                }
+            }
+        } finally {
+            releaseReader(reader);
         }
-        return 0;
     }
 
+    /**
+     * Writes all entries in one transaction, creating the table of a month the first time it is written to.
+     */
     @Override
-    public int getPlayerRank(UUID uuid) throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT COUNT(*) + 1 as rank FROM " + TABLE_NAME + " WHERE balance > (SELECT balance FROM " + TABLE_NAME + " WHERE uuid = ?)")) {
-            stmt.setString(1, uuid.toString());
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("rank");
+    public synchronized void saveLedger(List<LedgerEntry> entries) throws SQLException {
+        Map<Integer, List<LedgerEntry>> months = LedgerTables.byMonth(entries);
+        inTransaction(() -> {
+            for (Map.Entry<Integer, List<LedgerEntry>> month : months.entrySet()) {
+                String table = LedgerTables.table(LEDGER_PREFIX, month.getKey());
+                if (!ledgerMonths.contains(month.getKey())) {
+                    createLedgerTable(table);
                 }
+                LedgerTables.insertAll(connection, table, month.getValue());
             }
+        });
+        // Only once the tables are committed, so a rolled back month is created again next time
+        ledgerMonths.addAll(months.keySet());
+    }
+
+    private void createLedgerTable(String table) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS %s (
+                        id INTEGER PRIMARY KEY,
+                        time INTEGER NOT NULL,
+                        uuid BLOB NOT NULL,
+                        type TEXT NOT NULL,
+                        delta REAL NOT NULL,
+                        balance REAL NOT NULL,
+                        counterparty BLOB,
+                        actor TEXT,
+                        source TEXT
+                    )
+                    """.formatted(table));
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_uuid ON " + table + " (uuid, id)");
         }
-        return -1;
     }
 
+    /**
+     * Reads month tables from the newest down until enough entries are found; each is an index range scan.
+     */
     @Override
-    public void executeTransfer(UUID from, double fromBalance, UUID to, double toBalance) throws SQLException {
-        boolean previousAutoCommit = connection.getAutoCommit();
-        if (previousAutoCommit) {
-            connection.setAutoCommit(false);
+    public List<LedgerEntry> getLedger(UUID uuid, int limit) throws SQLException {
+        List<LedgerEntry> entries = new ArrayList<>();
+        Reader reader = acquireReader();
+        try {
+            for (int month : ledgerMonths.descendingSet()) {
+                if (entries.size() >= limit) {
+                    break;
+                }
+                PreparedStatement statement = reader.prepare(LedgerTables.history(LedgerTables.table(LEDGER_PREFIX, month)));
+                statement.setBytes(1, UuidCodec.write(uuid, reader.key));
+                statement.setInt(2, limit - entries.size());
+                try (ResultSet rs = statement.executeQuery()) {
+                    LedgerTables.read(rs, uuid, entries);
+                }
+            }
+            return entries;
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    @Override
+    public synchronized int pruneLedger(long before) throws SQLException {
+        int cutoff = LedgerTables.month(before);
+        List<Integer> expired = new ArrayList<>(ledgerMonths.headSet(cutoff));
+        if (expired.isEmpty()) {
+            return 0;
         }
 
+        schemaLock.writeLock().lock();
+        try (Statement stmt = connection.createStatement()) {
+            for (int month : expired) {
+                stmt.execute("DROP TABLE IF EXISTS " + LedgerTables.table(LEDGER_PREFIX, month));
+                ledgerMonths.remove(month);
+            }
+        } finally {
+            schemaLock.writeLock().unlock();
+        }
+        return expired.size();
+    }
+
+    @Override
+    public double getTotalBalance() throws SQLException {
+        Reader reader = acquireReader();
+        try (ResultSet rs = reader.prepare(migrating ? TOTAL_BALANCE_MIGRATING : TOTAL_BALANCE).executeQuery()) {
+            return rs.next() ? rs.getDouble(1) : 0.0;
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    @Override
+    public int getPlayerCount() throws SQLException {
+        Reader reader = acquireReader();
+        try (ResultSet rs = reader.prepare(migrating ? PLAYER_COUNT_MIGRATING : PLAYER_COUNT).executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    @Override
+    public int getPlayerRank(UUID uuid) throws SQLException {
+        Reader reader = acquireReader();
         try {
-            saveBalance(from, fromBalance);
-            saveBalance(to, toBalance);
-            connection.commit();
-        } catch (SQLException ex) {
-            connection.rollback();
-            throw ex;
+            PreparedStatement statement = prepareKeyed(reader, PLAYER_RANK, PLAYER_RANK_MIGRATING, uuid);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+            return -1;
         } finally {
-            if (previousAutoCommit) {
-                connection.setAutoCommit(true);
+            releaseReader(reader);
+        }
+    }
+
+    /**
+     * Moves the next rows from the TEXT-keyed table in one short write transaction.
+     * Once it is empty the old table is dropped; rows whose key is not a UUID are kept in a renamed copy.
+     */
+    @Override
+    public synchronized int migrateLegacyRows(int limit) throws SQLException {
+        if (!migrating) {
+            return 0;
+        }
+
+        List<String> keys = new ArrayList<>(limit);
+        List<Double> values = new ArrayList<>(limit);
+        try (PreparedStatement select = connection.prepareStatement(STREAM_LEGACY_BALANCES)) {
+            select.setString(1, migrationCursor);
+            select.setInt(2, limit);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    keys.add(rs.getString(1));
+                    values.add(rs.getDouble(2));
+                }
             }
         }
+
+        if (keys.isEmpty()) {
+            finishMigration();
+            return 0;
+        }
+
+        int[] moved = new int[1];
+        inTransaction(() -> {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT OR IGNORE INTO " + TABLE_NAME + " (uuid, balance) VALUES (?, ?)")) {
+                for (int i = 0; i < keys.size(); i++) {
+                    UUID uuid;
+                    try {
+                        uuid = UUID.fromString(keys.get(i));
+                    } catch (IllegalArgumentException ex) {
+                        continue;
+                    }
+                    insert.setBytes(1, UuidCodec.write(uuid, writerKey));
+                    insert.setDouble(2, values.get(i));
+                    insert.executeUpdate();
+                    deleteLegacyStatement.setString(1, keys.get(i));
+                    deleteLegacyStatement.executeUpdate();
+                    moved[0]++;
+                }
+            }
+        });
+        migrationCursor = keys.get(keys.size() - 1);
+        // Only malformed keys in this chunk still counts as progress
+        return Math.max(moved[0], 1);
+    }
+
+    private void finishMigration() throws SQLException {
+        schemaLock.writeLock().lock();
+        try (Statement stmt = connection.createStatement()) {
+            int remaining;
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + LEGACY_TABLE_NAME)) {
+                remaining = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (remaining == 0) {
+                stmt.execute("DROP TABLE " + LEGACY_TABLE_NAME);
+            } else {
+                stmt.execute("ALTER TABLE " + LEGACY_TABLE_NAME + " RENAME TO " + LEGACY_TABLE_NAME + "_unmigrated");
+            }
+            closeStatement(deleteLegacyStatement);
+            deleteLegacyStatement = null;
+            migrating = false;
+        } finally {
+            schemaLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int maxConnections() {
+        // The reader pool plus the writer
+        return readConnections + 1;
     }
 
     @Override
@@ -0,0 +1,56 @@
+package dev.improve.simpleeconomy.database;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A backend other servers can write to at the same time. A shared backend versions every row and logs
+ * every write, so each server can follow {@link #getBalanceUpdates(long, int)} to keep its cache current
+ * and save with {@link #addToBalances(Map)} instead of overwriting what the others saved.
+ */
+public interface SharedDatabaseProvider extends DatabaseProvider {
+
+    /**
+     * Whether sharing is turned on for this database. The other methods of this interface may only be called if it is.
+     */
+    boolean isShared();
+
+    /**
+     * Load a player's balance together with its row version.
+     * @return the balance, or null if not found
+     */
+    StoredBalance loadStoredBalance(UUID uuid) throws SQLException;
+
+    /**
+     * Add signed amounts to balances in a single transaction. Accounts without a row are stored with
+     * the balance given instead.
+     * @return the balance and row version of each account right after the change
+     */
+    Map<UUID, StoredBalance> addToBalances(Map<UUID, BalanceAddition> additions) throws SQLException;
+
+    /**
+     * Get change log entries after the given sequence number, oldest first.
+     * Entries appear when their write commits, which need not be in sequence order.
+     */
+    List<BalanceUpdate> getBalanceUpdates(long after, int limit) throws SQLException;
+
+    /**
+     * Get the sequence number of the newest change log entry, or 0 if the log is empty.
+     */
+    long getLatestBalanceUpdate() throws SQLException;
+
+    /**
+     * Get the newest row version this server wrote for each of the given accounts, going by the change log
+     * entries not pruned yet. Accounts without such an entry are left out.
+     */
+    Map<UUID, Long> getOwnVersions(Set<UUID> uuids) throws SQLException;
+
+    /**
+     * Delete change log entries written before the given time.
+     * @return the number of entries deleted
+     */
+    int pruneBalanceUpdates(long before) throws SQLException;
+}
@@ -0,0 +1,8 @@
+package dev.improve.simpleeconomy.database;
+
+/**
+ * A balance as stored in a shared database, with the version of its row.
+ * The version goes up by one with every write, so a server can tell whether the row changed since it last looked.
+ */
+public record StoredBalance(double balance, long version) {
+}
@@ -0,0 +1,48 @@
+package dev.improve.simpleeconomy.database;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Encodes UUIDs as 16 big-endian bytes for the binary key columns.
+ * Big-endian keeps byte order equal to the order of the hex form, so range scans stay meaningful.
+ */
+final class UuidCodec {
+
+    static final int SIZE = 16;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private UuidCodec() {
+    }
+
+    static byte[] toBytes(UUID uuid) {
+        return write(uuid, new byte[SIZE]);
+    }
+
+    /**
+     * Writes into an existing buffer, for callers that reuse one per statement.
+     */
+    static byte[] write(UUID uuid, byte[] into) {
+        LONGS.set(into, 0, uuid.getMostSignificantBits());
+        LONGS.set(into, 8, uuid.getLeastSignificantBits());
+        return into;
+    }
+
+    /**
+     * The upper-case hex form without dashes, as SQL's HEX() prints a binary key.
+     */
+    static String toHex(UUID uuid) {
+        return uuid.toString().replace("-", "").toUpperCase(Locale.ROOT);
+    }
+
+    static UUID fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length != SIZE) {
+            throw new IllegalArgumentException("Expected a 16 byte UUID");
+        }
+        return new UUID((long) LONGS.get(bytes, 0), (long) LONGS.get(bytes, 8));
+    }
+}
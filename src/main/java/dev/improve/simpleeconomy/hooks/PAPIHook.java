@@ -1,17 +1,47 @@
 package dev.improve.simpleeconomy.hooks;
 
 import dev.improve.simpleeconomy.SimpleEconomy;
+import dev.improve.simpleeconomy.managers.DatabaseManager;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public class PAPIHook extends PlaceholderExpansion {
+import java.util.UUID;
+
+public class PAPIHook extends PlaceholderExpansion implements Listener {
 
     private final SimpleEconomy plugin;
+    private final PlaceholderCache cache;
 
     public PAPIHook(SimpleEconomy plugin) {
         this.plugin = plugin;
+        DatabaseManager db = plugin.getDatabaseManager();
+        this.cache = new PlaceholderCache(new PlaceholderCache.Loader() {
+            @Override
+            public double load(PlaceholderCache.Kind kind, UUID uuid) {
+                return switch (kind) {
+                    case BALANCE, BALANCE_FORMATTED -> db.getBalance(uuid);
+                    case RANK -> db.getPlayerRank(uuid);
+                    case TOTAL -> db.getTotalEconomy();
+                    case PLAYERS -> db.getPlayerCount();
+                };
+            }
+
+            @Override
+            public double peek(PlaceholderCache.Kind kind, UUID uuid) {
+                return switch (kind) {
+                    case BALANCE, BALANCE_FORMATTED -> db.getCachedBalance(uuid);
+                    case TOTAL -> db.isTotalsLoaded() ? db.getTotalEconomy() : Double.NaN;
+                    case PLAYERS -> db.isTotalsLoaded() ? db.getPlayerCount() : Double.NaN;
+                    case RANK -> Double.NaN;
+                };
+            }
+        }, this::render, db.getAsyncExecutor(), plugin.getLogger());
+        db.addBalanceListener(cache::invalidate);
     }
 
     @Override
@@ -31,28 +61,27 @@ public class PAPIHook extends PlaceholderExpansion {
 
     @Override
     public @Nullable String onRequest(OfflinePlayer player, @NotNull String params) {
-        return switch (params.toLowerCase()) {
-            case "balance" -> {
-                double balance = plugin.getDatabaseManager().getBalance(player.getUniqueId());
-                yield String.valueOf(balance);
-            }
-            case "balance_formatted" -> {
-                double balance = plugin.getDatabaseManager().getBalance(player.getUniqueId());
-                yield formatBalance(balance);
-            }
-            case "rank" -> {
-                int rank = plugin.getDatabaseManager().getPlayerRank(player.getUniqueId());
-                yield rank > 0 ? String.valueOf(rank) : "?";
-            }
-            case "total" -> {
-                double total = plugin.getDatabaseManager().getTotalEconomy();
-                yield formatBalance(total);
-            }
-            case "players" -> {
-                int count = plugin.getDatabaseManager().getPlayerCount();
-                yield String.valueOf(count);
-            }
-            default -> null;
+        PlaceholderCache.Kind kind = PlaceholderCache.Kind.parse(params);
+        if (kind == null) {
+            return null;
+        }
+        if (kind.perPlayer && player == null) {
+            return "";
+        }
+        return cache.get(kind, kind.perPlayer ? player.getUniqueId() : null);
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        cache.evict(event.getPlayer().getUniqueId());
+    }
+
+    private String render(PlaceholderCache.Kind kind, double value) {
+        return switch (kind) {
+            case BALANCE -> String.valueOf(value);
+            case BALANCE_FORMATTED, TOTAL -> formatBalance(value);
+            case RANK -> value > 0 ? String.valueOf((int) value) : "?";
+            case PLAYERS -> String.valueOf((long) value);
         };
     }
 
@@ -69,4 +98,3 @@ public class PAPIHook extends PlaceholderExpansion {
     }
 
 }
-
@@ -0,0 +1,218 @@
+package dev.improve.simpleeconomy.hooks;
+
+import dev.improve.simpleeconomy.utils.Config;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches rendered placeholder values so PlaceholderAPI requests never wait on the database.
+ * A value is reused until its TTL passes. After that the stale string is still returned while a
+ * refresh runs on the database executor. Per-player entries go stale as soon as that player's balance changes.
+ * <p>
+ * Placeholders are also requested for offline players, by holograms and other plugins, so once there are more than
+ * {@link #MAX_PLAYER_ENTRIES} players cached, those not requested for a while are dropped.
+ */
+final class PlaceholderCache {
+
+    private static final int MAX_PLAYER_ENTRIES = 1024;
+    private static final long PLAYER_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    enum Kind {
+        BALANCE(true),
+        BALANCE_FORMATTED(true),
+        RANK(true),
+        TOTAL(false),
+        PLAYERS(false);
+
+        private static final Map<String, Kind> BY_KEY = new HashMap<>();
+
+        static {
+            for (Kind kind : values()) {
+                BY_KEY.put(kind.name().toLowerCase(Locale.ROOT), kind);
+            }
+        }
+
+        final boolean perPlayer;
+
+        Kind(boolean perPlayer) {
+            this.perPlayer = perPlayer;
+        }
+
+        static Kind parse(String params) {
+            return BY_KEY.get(params.toLowerCase(Locale.ROOT));
+        }
+
+        long ttlMillis() {
+            return switch (this) {
+                case BALANCE, BALANCE_FORMATTED -> Config.PLACEHOLDER_BALANCE_TTL;
+                case RANK -> Config.PLACEHOLDER_RANK_TTL;
+                case TOTAL, PLAYERS -> Config.PLACEHOLDER_TOTALS_TTL;
+            };
+        }
+    }
+
+    interface Loader {
+        /**
+         * Computes the raw value. Runs on the database executor and may block.
+         */
+        double load(Kind kind, UUID uuid);
+
+        /**
+         * Returns the raw value if it is available without blocking, otherwise NaN.
+         */
+        double peek(Kind kind, UUID uuid);
+    }
+
+    interface Renderer {
+        String render(Kind kind, double value);
+    }
+
+    private record Rendered(double value, String text) {
+    }
+
+    private static final class Entry {
+        final AtomicInteger version = new AtomicInteger();
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        volatile Rendered rendered;
+        volatile long expiresAt;
+    }
+
+    private static final class PlayerEntries {
+        final Entry[] entries = newEntries();
+        volatile long lastAccess;
+    }
+
+    private final Map<UUID, PlayerEntries> playerEntries = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private final Entry[] globalEntries = newEntries();
+    private final Loader loader;
+    private final Renderer renderer;
+    private final Executor executor;
+    private final Logger logger;
+
+    PlaceholderCache(Loader loader, Renderer renderer, Executor executor, Logger logger) {
+        this.loader = loader;
+        this.renderer = renderer;
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    private static Entry[] newEntries() {
+        Entry[] entries = new Entry[Kind.values().length];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new Entry();
+        }
+        return entries;
+    }
+
+    /**
+     * @return the cached text, or the loading text if nothing has been computed yet
+     */
+    String get(Kind kind, UUID uuid) {
+        long now = System.currentTimeMillis();
+        Entry entry = kind.perPlayer ? playerEntry(kind, uuid, now) : globalEntries[kind.ordinal()];
+
+        Rendered rendered = entry.rendered;
+        if (rendered != null && now < entry.expiresAt) {
+            return rendered.text();
+        }
+
+        int version = entry.version.get();
+        double peeked = loader.peek(kind, uuid);
+        if (!Double.isNaN(peeked)) {
+            return store(entry, kind, version, peeked, now).text();
+        }
+
+        refresh(entry, kind, uuid);
+        return rendered != null ? rendered.text() : Config.PLACEHOLDER_LOADING;
+    }
+
+    private Entry playerEntry(Kind kind, UUID uuid, long now) {
+        PlayerEntries player = playerEntries.computeIfAbsent(uuid, ignored -> new PlayerEntries());
+        player.lastAccess = now;
+        if (playerEntries.size() > MAX_PLAYER_ENTRIES) {
+            sweep(now);
+        }
+        return player.entries[kind.ordinal()];
+    }
+
+    /**
+     * Drops players not requested for a while. Runs at most once per idle period, so a cache full of
+     * recently requested players is not scanned on every request.
+     */
+    private void sweep(long now) {
+        long next = nextSweep.get();
+        if (now < next || !nextSweep.compareAndSet(next, now + PLAYER_IDLE_MILLIS)) {
+            return;
+        }
+        playerEntries.values().removeIf(player -> now - player.lastAccess > PLAYER_IDLE_MILLIS);
+    }
+
+    /**
+     * Marks a player's entries stale, so the next request recomputes them.
+     */
+    void invalidate(UUID uuid) {
+        PlayerEntries player = playerEntries.get(uuid);
+        if (player == null) {
+            return;
+        }
+        for (Entry entry : player.entries) {
+            entry.version.incrementAndGet();
+            entry.expiresAt = 0L;
+        }
+    }
+
+    void evict(UUID uuid) {
+        playerEntries.remove(uuid);
+    }
+
+    private void refresh(Entry entry, Kind kind, UUID uuid) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    int version = entry.version.get();
+                    double value = loader.load(kind, uuid);
+                    store(entry, kind, version, value, System.currentTimeMillis());
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Failed to refresh placeholder " + kind, ex);
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Stores a computed value, re-rendering only when it changed.
+     * A value computed before an invalidation is kept as stale text but not marked fresh.
+     */
+    private Rendered store(Entry entry, Kind kind, int version, double value, long now) {
+        Rendered rendered = entry.rendered;
+        if (rendered == null || Double.compare(rendered.value(), value) != 0) {
+            rendered = new Rendered(value, renderer.render(kind, value));
+            entry.rendered = rendered;
+        }
+        if (entry.version.get() == version) {
+            entry.expiresAt = now + kind.ttlMillis();
+        }
+        return rendered;
+    }
+}
@@ -4,12 +4,13 @@ import dev.improve.simpleeconomy.SimpleEconomy;
 import dev.improve.simpleeconomy.managers.DatabaseManager;
 import dev.improve.simpleeconomy.managers.EconomyResult;
 import dev.improve.simpleeconomy.managers.EconomyStatus;
+import dev.improve.simpleeconomy.utils.Config;
 import net.milkbowl.vault.economy.Economy;
 import net.milkbowl.vault.economy.EconomyResponse;
 import net.milkbowl.vault.economy.EconomyResponse.ResponseType;
-import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -18,10 +19,20 @@ public class VaultEconomyHook implements Economy {
 
     private final SimpleEconomy plugin;
     private final DatabaseManager databaseManager;
+    private final String amountFormat;
 
     public VaultEconomyHook(SimpleEconomy plugin) {
+        this(plugin, plugin.getDatabaseManager());
+    }
+
+    /**
+     * Creates a hook around a given manager. The plugin may be null when the hook is driven
+     * without a running server, as the load test does; only the account and balance calls work then.
+     */
+    public VaultEconomyHook(SimpleEconomy plugin, DatabaseManager databaseManager) {
         this.plugin = plugin;
-        this.databaseManager = plugin.getDatabaseManager();
+        this.databaseManager = databaseManager;
+        this.amountFormat = "%." + databaseManager.getFractionalDigits() + "f";
     }
 
     @Override
@@ -41,12 +52,12 @@ public class VaultEconomyHook implements Economy {
 
     @Override
     public int fractionalDigits() {
-        return 2;
+        return databaseManager.getFractionalDigits();
     }
 
     @Override
     public String format(double amount) {
-        return String.format("%.2f", amount);
+        return String.format(amountFormat, amount);
     }
 
     @Override
@@ -59,10 +70,12 @@ public class VaultEconomyHook implements Economy {
         return plugin.getConfig().getString("settings.currency-singular", "Dollar");
     }
 
+    /**
+     * Names are resolved from SimpleEconomy's own index, so unknown names never cause a lookup.
+     */
     @Override
     public boolean hasAccount(String playerName) {
-        OfflinePlayer player = Bukkit.getOfflinePlayer(playerName);
-        return player.hasPlayedBefore() || player.isOnline();
+        return databaseManager.resolveName(playerName) != null;
     }
 
     @Override
@@ -82,13 +95,19 @@ public class VaultEconomyHook implements Economy {
 
     @Override
     public double getBalance(String playerName) {
-        OfflinePlayer player = Bukkit.getOfflinePlayer(playerName);
-        return databaseManager.getBalance(player.getUniqueId());
+        return readBalance(accountFor(playerName));
     }
 
     @Override
     public double getBalance(OfflinePlayer player) {
-        return databaseManager.getBalance(player.getUniqueId());
+        return readBalance(player.getUniqueId());
+    }
+
+    private double readBalance(UUID uuid) {
+        if (Config.VAULT_STRICT_READS && plugin != null && plugin.getServer().isPrimaryThread()) {
+            return databaseManager.getBalance(uuid, Config.VAULT_READ_TIMEOUT_MS, Config.VAULT_FALLBACK_BALANCE);
+        }
+        return databaseManager.getBalance(uuid);
     }
 
     @Override
@@ -123,11 +142,10 @@ public class VaultEconomyHook implements Economy {
 
     @Override
     public EconomyResponse withdrawPlayer(String playerName, double amount) {
-        OfflinePlayer player = Bukkit.getOfflinePlayer(playerName);
-        UUID uuid = player.getUniqueId();
+        UUID uuid = accountFor(playerName);
         EconomyResult result = databaseManager.withdraw(uuid, amount);
         if (!result.success()) {
-            return failureFromStatus(result.status(), getBalance(playerName));
+            return failureFromStatus(result.status(), readBalance(uuid));
         }
 
         return new EconomyResponse(amount, result.resultingBalance(), ResponseType.SUCCESS, null);
@@ -156,12 +174,11 @@ public class VaultEconomyHook implements Economy {
 
     @Override
     public EconomyResponse depositPlayer(String playerName, double amount) {
-        OfflinePlayer player = Bukkit.getOfflinePlayer(playerName);
-        UUID uuid = player.getUniqueId();
+        UUID uuid = accountFor(playerName);
 
         EconomyResult result = databaseManager.deposit(uuid, amount);
         if (!result.success()) {
-            return failureFromStatus(result.status(), getBalance(playerName));
+            return failureFromStatus(result.status(), readBalance(uuid));
         }
 
         return new EconomyResponse(amount, result.resultingBalance(), ResponseType.SUCCESS, null);
@@ -251,8 +268,7 @@ public class VaultEconomyHook implements Economy {
 
     @Override
     public boolean createPlayerAccount(String playerName) {
-        OfflinePlayer player = Bukkit.getOfflinePlayer(playerName);
-        databaseManager.getBalance(player.getUniqueId());
+        databaseManager.getBalance(accountFor(playerName));
         return true;
     }
 
@@ -272,6 +288,19 @@ public class VaultEconomyHook implements Economy {
         return createPlayerAccount(player);
     }
 
+    /**
+     * The account behind a name: the player last seen with it, or for a name no player has used, such as a town or
+     * faction bank, the offline UUID the server derives from it. Such names are indexed, so later lookups stay in memory.
+     */
+    private UUID accountFor(String name) {
+        UUID uuid = databaseManager.resolveName(name);
+        if (uuid == null) {
+            uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+            databaseManager.updateName(uuid, name);
+        }
+        return uuid;
+    }
+
     private EconomyResponse failureFromStatus(EconomyStatus status, double balance) {
         return switch (status) {
             case INSUFFICIENT_FUNDS -> new EconomyResponse(0, balance, ResponseType.FAILURE, "Insufficient funds");
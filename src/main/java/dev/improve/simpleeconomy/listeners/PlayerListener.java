@@ -19,6 +19,7 @@ public class PlayerListener implements Listener {
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        databaseManager.updateName(player.getUniqueId(), player.getName());
         // Preload balance asynchronously to avoid main thread DB access
         databaseManager.loadBalanceAsync(player.getUniqueId());
     }
@@ -0,0 +1,74 @@
+package dev.improve.simpleeconomy.listeners;
+
+import com.destroystokyo.paper.event.server.AsyncTabCompleteEvent;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Answers tab completion for SimpleEconomy's commands from Paper's async tab complete event,
+ * so looking up player names never runs on the main thread. The registered completers are called
+ * off the main thread and must only read thread-safe state, such as the name index.
+ */
+public class TabCompleteListener implements Listener {
+
+    private static final String NAMESPACE = "simpleeconomy:";
+
+    private final Map<String, Registration> commands = new HashMap<>();
+
+    private record Registration(PluginCommand command, TabCompleter completer) {
+    }
+
+    /**
+     * Completes the command under its name and aliases, with and without the plugin prefix.
+     * Must be called before the listener is registered.
+     */
+    public void register(PluginCommand command, TabCompleter completer) {
+        Registration registration = new Registration(command, completer);
+        add(command.getName(), registration);
+        for (String alias : command.getAliases()) {
+            add(alias, registration);
+        }
+    }
+
+    private void add(String label, Registration registration) {
+        String key = label.toLowerCase(Locale.ROOT);
+        commands.put(key, registration);
+        commands.put(NAMESPACE + key, registration);
+    }
+
+    @EventHandler(ignoreCancelled = true)
+    public void onAsyncTabComplete(AsyncTabCompleteEvent event) {
+        if (!event.isCommand() || event.isHandled()) {
+            return;
+        }
+
+        String buffer = event.getBuffer();
+        int start = buffer.startsWith("/") ? 1 : 0;
+        int space = buffer.indexOf(' ', start);
+        if (space < 0) {
+            return;
+        }
+
+        String label = buffer.substring(start, space);
+        Registration registration = commands.get(label.toLowerCase(Locale.ROOT));
+        if (registration == null) {
+            return;
+        }
+
+        event.setHandled(true);
+        if (!registration.command().testPermissionSilent(event.getSender())) {
+            event.setCompletions(List.of());
+            return;
+        }
+        String[] args = buffer.substring(space + 1).split(" ", -1);
+        List<String> completions = registration.completer().onTabComplete(event.getSender(), registration.command(), label, args);
+        event.setCompletions(completions == null ? List.of() : completions);
+    }
+}
@@ -0,0 +1,124 @@
+package dev.improve.simpleeconomy.managers;
+
+import dev.improve.simpleeconomy.metrics.LatencyHistogram;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks guarding per-account balance updates.
+ * Accounts hash onto a fixed set of stripes, so unrelated accounts rarely share a lock.
+ * Multi-account operations always take their stripes in index order, which keeps them deadlock-free.
+ * Each stripe also carries an eviction epoch so loads done outside the lock can detect a racing eviction.
+ * Only contended acquisitions are timed, so an uncontended lock costs one extra counter increment.
+ */
+final class AccountLocks {
+
+    private final ReentrantLock[] stripes;
+    private final AtomicIntegerArray epochs;
+    private final int mask;
+    private final LatencyHistogram waits;
+    private final LongAdder acquisitions;
+
+    AccountLocks(int minimumStripes, LatencyHistogram waits, LongAdder acquisitions) {
+        this.waits = waits;
+        this.acquisitions = acquisitions;
+        int size = Integer.highestOneBit(Math.max(1, minimumStripes - 1)) << 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        epochs = new AtomicIntegerArray(size);
+        mask = size - 1;
+    }
+
+    private int indexFor(UUID uuid) {
+        long bits = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+        int hash = (int) (bits ^ (bits >>> 32));
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    int epoch(UUID uuid) {
+        return epochs.get(indexFor(uuid));
+    }
+
+    /**
+     * Marks that an account on this stripe left the cache. Must be called while holding the stripe.
+     */
+    void advanceEpoch(UUID uuid) {
+        epochs.incrementAndGet(indexFor(uuid));
+    }
+
+    void lock(UUID uuid) {
+        acquire(stripes[indexFor(uuid)]);
+    }
+
+    private void acquire(ReentrantLock lock) {
+        acquisitions.increment();
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            waits.recordSince(start);
+        }
+    }
+
+    void unlock(UUID uuid) {
+        stripes[indexFor(uuid)].unlock();
+    }
+
+    void lockBoth(UUID first, UUID second) {
+        int a = indexFor(first);
+        int b = indexFor(second);
+        if (a == b) {
+            acquire(stripes[a]);
+            return;
+        }
+        acquire(stripes[Math.min(a, b)]);
+        acquire(stripes[Math.max(a, b)]);
+    }
+
+    void unlockBoth(UUID first, UUID second) {
+        int a = indexFor(first);
+        int b = indexFor(second);
+        if (a == b) {
+            stripes[a].unlock();
+            return;
+        }
+        stripes[Math.max(a, b)].unlock();
+        stripes[Math.min(a, b)].unlock();
+    }
+
+    /**
+     * Locks every stripe the accounts map to, each once and in index order.
+     *
+     * @return the stripes taken, to hand to {@link #unlockAll(int[])}
+     */
+    int[] lockAll(UUID[] uuids) {
+        int[] indices = new int[uuids.length];
+        for (int i = 0; i < uuids.length; i++) {
+            indices[i] = indexFor(uuids[i]);
+        }
+        Arrays.sort(indices);
+
+        int distinct = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (i == 0 || indices[i] != indices[i - 1]) {
+                indices[distinct++] = indices[i];
+            }
+        }
+        int[] taken = Arrays.copyOf(indices, distinct);
+        for (int index : taken) {
+            acquire(stripes[index]);
+        }
+        return taken;
+    }
+
+    void unlockAll(int[] taken) {
+        for (int i = taken.length - 1; i >= 0; i--) {
+            stripes[taken[i]].unlock();
+        }
+    }
+}
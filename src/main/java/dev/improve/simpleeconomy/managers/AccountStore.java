@@ -0,0 +1,113 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe cache of account balances in minor units.
+ * Split into segments that each hold a {@link BalanceMap} behind a {@link StampedLock}.
+ * Reads are optimistic and only take the read lock if a write to the same segment overlapped them.
+ */
+final class AccountStore {
+
+    private static final int SEGMENT_BITS = 6;
+
+    private final StampedLock[] locks = new StampedLock[1 << SEGMENT_BITS];
+    private final BalanceMap[] maps = new BalanceMap[1 << SEGMENT_BITS];
+
+    AccountStore() {
+        for (int i = 0; i < maps.length; i++) {
+            locks[i] = new StampedLock();
+            maps[i] = new BalanceMap();
+        }
+    }
+
+    private static int segment(long most, long least) {
+        // The maps index with the low bits of the same hash, so segments use the high bits
+        return BalanceMap.hash(most, least) >>> (Integer.SIZE - SEGMENT_BITS);
+    }
+
+    /**
+     * @return the cached balance, or {@link BalanceMap#MISSING}
+     */
+    long get(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        int segment = segment(most, least);
+        StampedLock lock = locks[segment];
+        BalanceMap map = maps[segment];
+
+        long stamp = lock.tryOptimisticRead();
+        long balance = map.get(most, least);
+        if (lock.validate(stamp)) {
+            return balance;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return map.get(most, least);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    boolean contains(UUID uuid) {
+        return get(uuid) != BalanceMap.MISSING;
+    }
+
+    void put(UUID uuid, long balance) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        int segment = segment(most, least);
+        StampedLock lock = locks[segment];
+        long stamp = lock.writeLock();
+        try {
+            maps[segment].put(most, least, balance);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the removed balance, or {@link BalanceMap#MISSING}
+     */
+    long remove(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        int segment = segment(most, least);
+        StampedLock lock = locks[segment];
+        long stamp = lock.writeLock();
+        try {
+            return maps[segment].remove(most, least);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Visits every cached account, one segment at a time under its read lock, so the visitor must not modify the store.
+     */
+    void forEach(BalanceVisitor visitor) {
+        for (int i = 0; i < maps.length; i++) {
+            long stamp = locks[i].readLock();
+            try {
+                maps[i].forEach(visitor);
+            } finally {
+                locks[i].unlockRead(stamp);
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (int i = 0; i < maps.length; i++) {
+            long stamp = locks[i].readLock();
+            try {
+                size += maps[i].size();
+            } finally {
+                locks[i].unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,9 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.UUID;
+
+/**
+ * One entry of a batch for {@link DatabaseManager#applyChanges}: a positive amount deposits, a negative one withdraws.
+ */
+public record BalanceChange(UUID uuid, double amount) {
+}
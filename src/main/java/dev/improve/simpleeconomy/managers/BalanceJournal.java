@@ -0,0 +1,348 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Write-ahead journal for balance changes that have not reached the database yet.
+ * Every change is appended to a memory-mapped file before the mutation returns. The OS writes
+ * mapped pages out even if the JVM dies, so a crash between auto-saves loses nothing.
+ * <p>
+ * Two segment files take turns. A flush {@link #rotate() rotates} to the empty segment, and once the
+ * flushed batch is saved the old segment is {@link #retire() retired}. Each activation gets a new
+ * sequence number that is mixed into every record's checksum, so clearing a segment only rewrites its header.
+ * Sequences keep increasing across restarts, so records from an earlier activation never check out.
+ * <p>
+ * On a shared database a balance is journaled together with its base, the stored balance its save is added to,
+ * and every save is preceded by a record of the amount it is about to add. These groups span several records
+ * and only count once their last record is written.
+ * <p>
+ * Not thread-safe; {@link DatabaseManager} calls it under its pending write lock.
+ */
+final class BalanceJournal {
+
+    private static final int MAGIC = 0x53454A31;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int TYPE_BALANCE = 1;
+    private static final int TYPE_DELETE = 2;
+    private static final int TYPE_BASE = 3;
+    private static final int TYPE_BASE_VERSION = 4;
+    private static final int TYPE_SAVING = 5;
+    private static final int TYPE_SAVING_VERSION = 6;
+
+    private final Segment[] segments = new Segment[2];
+    private final int digits;
+    private int active;
+    private int retired = -1;
+    private long lastSequence;
+
+    interface Replay {
+        void balance(UUID uuid, long balance);
+
+        /**
+         * A balance that is saved as the difference to {@code baseBalance}, the stored balance at row version {@code baseVersion}.
+         */
+        void balance(UUID uuid, long balance, long baseBalance, long baseVersion);
+
+        /**
+         * A save of {@code amount} on top of row version {@code baseVersion} was about to start. It may or may not have committed.
+         */
+        void saving(UUID uuid, long amount, long baseVersion);
+
+        void delete(UUID uuid);
+    }
+
+    private static final class Segment {
+        final FileChannel channel;
+        MappedByteBuffer buffer;
+        long sequence;
+        boolean live;
+        int digits;
+        int position = HEADER_SIZE;
+
+        Segment(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private BalanceJournal(int digits) {
+        this.digits = digits;
+    }
+
+    /**
+     * Opens or creates the two segment files in {@code folder}. Nothing is replayed or cleared yet.
+     *
+     * @param digits the fractional digits balances are currently stored with
+     */
+    static BalanceJournal open(Path folder, int digits, int segmentBytes) throws IOException {
+        Files.createDirectories(folder);
+        BalanceJournal journal = new BalanceJournal(digits);
+        try {
+            for (int i = 0; i < journal.segments.length; i++) {
+                FileChannel channel = FileChannel.open(folder.resolve("journal-" + i + ".bin"),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                long size = Math.max(channel.size(), Math.max(segmentBytes, HEADER_SIZE + RECORD_SIZE));
+                Segment segment = new Segment(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+                if (segment.buffer.getInt(0) == MAGIC) {
+                    segment.digits = segment.buffer.getInt(4);
+                    segment.sequence = segment.buffer.getLong(8);
+                    segment.live = segment.buffer.getInt(16) == 1;
+                }
+                journal.segments[i] = segment;
+                journal.lastSequence = Math.max(journal.lastSequence, segment.sequence);
+            }
+        } catch (IOException ex) {
+            journal.close();
+            throw ex;
+        }
+        return journal;
+    }
+
+    /**
+     * Reads every record left by the previous run, oldest segment first, and picks where appends go next.
+     * Callers re-append whatever they still need to keep with {@link #append(UUID, long)}, force the journal,
+     * and then {@link #retire()} the segment that is no longer needed.
+     *
+     * @return the number of records read
+     */
+    int replay(Replay replay) {
+        int older = segments[0].sequence <= segments[1].sequence ? 0 : 1;
+        int newer = 1 - older;
+        int records = read(segments[older], replay) + read(segments[newer], replay);
+
+        if (segments[older].live && segments[newer].live) {
+            // Both hold records, so neither can be cleared yet. Appends carry on after the last record of the newer one,
+            // which keeps its own records readable, and the older one is retired once the caller has re-appended
+            active = newer;
+            retired = older;
+            return records;
+        }
+        // Otherwise start over in a segment with nothing left in it
+        active = segments[older].live ? newer : older;
+        retired = 1 - active;
+        activate(segments[active]);
+        return records;
+    }
+
+    private int read(Segment segment, Replay replay) {
+        if (!segment.live) {
+            return 0;
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int records = 0;
+        int end = HEADER_SIZE;
+        // The group being read: its account, first record type and values
+        UUID group = null;
+        int groupType = 0;
+        long first = 0;
+        long second = 0;
+        int offset = HEADER_SIZE;
+        for (; offset + RECORD_SIZE <= buffer.capacity(); offset += RECORD_SIZE) {
+            int type = buffer.getInt(offset);
+            int checksum = buffer.getInt(offset + 4);
+            long most = buffer.getLong(offset + 8);
+            long least = buffer.getLong(offset + 16);
+            long value = buffer.getLong(offset + 24);
+            // The first record that does not check out is where the last run stopped writing
+            if (type < TYPE_BALANCE || type > TYPE_SAVING_VERSION
+                    || checksum != checksum(segment.sequence, type, most, least, value)) {
+                break;
+            }
+            records++;
+
+            UUID uuid = new UUID(most, least);
+            boolean inGroup = uuid.equals(group);
+            switch (type) {
+                case TYPE_BASE, TYPE_SAVING -> {
+                    group = uuid;
+                    groupType = type;
+                    first = value;
+                    continue;
+                }
+                case TYPE_BASE_VERSION -> {
+                    if (inGroup && groupType == TYPE_BASE) {
+                        groupType = TYPE_BASE_VERSION;
+                        second = value;
+                        continue;
+                    }
+                }
+                case TYPE_SAVING_VERSION -> {
+                    if (inGroup && groupType == TYPE_SAVING) {
+                        replay.saving(uuid, rescale(first, segment.digits, digits), value);
+                    }
+                }
+                case TYPE_BALANCE -> {
+                    if (inGroup && groupType == TYPE_BASE_VERSION) {
+                        replay.balance(uuid, rescale(value, segment.digits, digits), rescale(first, segment.digits, digits), second);
+                    } else {
+                        replay.balance(uuid, rescale(value, segment.digits, digits));
+                    }
+                }
+                default -> replay.delete(uuid);
+            }
+            // Anything else ends the group, and a group cut short counts as never written
+            group = null;
+            end = offset + RECORD_SIZE;
+        }
+
+        // Appends may carry on in this segment, so records of a group cut short must not be read as part of theirs
+        segment.position = end;
+        for (int stale = end; stale < offset; stale += RECORD_SIZE) {
+            buffer.putInt(stale, 0);
+        }
+        return records;
+    }
+
+    void append(UUID uuid, long balance) {
+        write(TYPE_BALANCE, uuid, scaled(balance));
+    }
+
+    /**
+     * Appends a balance that is saved as the difference to a base, see {@link Replay#balance(UUID, long, long, long)}.
+     */
+    void append(UUID uuid, long balance, long baseBalance, long baseVersion) {
+        write(TYPE_BASE, uuid, scaled(baseBalance));
+        write(TYPE_BASE_VERSION, uuid, baseVersion);
+        write(TYPE_BALANCE, uuid, scaled(balance));
+    }
+
+    /**
+     * Appends the amount a save is about to add, see {@link Replay#saving(UUID, long, long)}.
+     */
+    void appendSaving(UUID uuid, long amount, long baseVersion) {
+        write(TYPE_SAVING, uuid, scaled(amount));
+        write(TYPE_SAVING_VERSION, uuid, baseVersion);
+    }
+
+    void appendDelete(UUID uuid) {
+        write(TYPE_DELETE, uuid, 0L);
+    }
+
+    // Only differs when appends carry on in a segment left by a run with another setting, until the next rotation
+    private long scaled(long value) {
+        int segmentDigits = segments[active].digits;
+        return segmentDigits == digits ? value : rescale(value, digits, segmentDigits);
+    }
+
+    private void write(int type, UUID uuid, long value) {
+        Segment segment = segments[active];
+        if (segment.position + RECORD_SIZE > segment.buffer.capacity()) {
+            grow(segment);
+        }
+
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = segment.position;
+        buffer.putLong(offset + 8, most);
+        buffer.putLong(offset + 16, least);
+        buffer.putLong(offset + 24, value);
+        buffer.putInt(offset + 4, checksum(segment.sequence, type, most, least, value));
+        buffer.putInt(offset, type);
+        segment.position = offset + RECORD_SIZE;
+    }
+
+    /**
+     * Switches appends to the other segment. The current one holds exactly the batch being flushed
+     * and must be {@link #retire() retired} before the next rotation.
+     */
+    void rotate() {
+        if (retired >= 0) {
+            // The last flushed batch was never retired, so keep appending where its records are
+            return;
+        }
+        retired = active;
+        active = 1 - active;
+        activate(segments[active]);
+    }
+
+    /**
+     * Clears the segment left behind by the last rotation or replay, once its entries are saved
+     * or have been re-appended to the active segment.
+     */
+    void retire() {
+        if (retired < 0) {
+            return;
+        }
+        Segment segment = segments[retired];
+        segment.live = false;
+        segment.position = HEADER_SIZE;
+        segment.buffer.putInt(16, 0);
+        retired = -1;
+    }
+
+    /**
+     * Forces mapped pages to disk. Only needed to survive an OS crash; a JVM crash keeps them anyway.
+     */
+    void force() {
+        for (Segment segment : segments) {
+            if (segment != null) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    void close() {
+        for (Segment segment : segments) {
+            if (segment == null) {
+                continue;
+            }
+            try {
+                segment.buffer.force();
+                segment.channel.close();
+            } catch (IOException ignored) {
+                // The mapping stays valid until collected, and its pages are already written
+            }
+        }
+    }
+
+    private void activate(Segment segment) {
+        segment.sequence = ++lastSequence;
+        segment.live = true;
+        segment.digits = digits;
+        segment.position = HEADER_SIZE;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, digits);
+        buffer.putLong(8, segment.sequence);
+        buffer.putInt(16, 1);
+    }
+
+    private static void grow(Segment segment) {
+        try {
+            segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segment.buffer.capacity() << 1);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to grow balance journal", ex);
+        }
+    }
+
+    /**
+     * Converts a balance between fractional-digits settings.
+     */
+    private static long rescale(long value, int fromDigits, int toDigits) {
+        long result = value;
+        for (int i = fromDigits; i < toDigits; i++) {
+            result = result > Long.MAX_VALUE / 10L ? Long.MAX_VALUE : result * 10L;
+        }
+        for (int i = toDigits; i < fromDigits; i++) {
+            result = Math.floorDiv(result + 5L, 10L);
+        }
+        return result;
+    }
+
+    private static int checksum(long sequence, int type, long most, long least, long value) {
+        long hash = sequence * 0x9E3779B97F4A7C15L + type;
+        hash = (hash ^ most) * 0xC2B2AE3D27D4EB4FL;
+        hash = (hash ^ least) * 0xC2B2AE3D27D4EB4FL;
+        hash = (hash ^ value) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,230 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.UUID;
+
+/**
+ * Open-addressing hash map from an account UUID to a balance in minor units.
+ * Keys are stored as their two halves in parallel {@code long} arrays, so an entry costs three
+ * array slots and no objects. Linear probing with backward-shift deletion keeps the table free of tombstones.
+ * Not thread-safe; owners guard it with their own lock.
+ */
+final class BalanceMap {
+
+    /**
+     * Returned for absent keys. Balances are never this low.
+     */
+    static final long MISSING = Long.MIN_VALUE;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private Table table;
+    private int size;
+    private int resizeAt;
+
+    // A zero key marks an empty slot, so the nil UUID lives outside the table
+    private boolean hasNilKey;
+    private long nilValue;
+
+    private static final class Table {
+        final long[] most;
+        final long[] least;
+        final long[] values;
+
+        Table(int capacity) {
+            most = new long[capacity];
+            least = new long[capacity];
+            values = new long[capacity];
+        }
+    }
+
+    BalanceMap() {
+        table = new Table(MIN_CAPACITY);
+        resizeAt = MIN_CAPACITY * 3 / 4;
+    }
+
+    static int hash(long most, long least) {
+        return (int) (((most ^ least) * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long get(UUID uuid) {
+        return get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Looks up a key. Safe to call while another thread writes, as long as the caller validates
+     * the result afterwards: it reads the table once and never probes more than its length.
+     *
+     * @return the balance, or {@link #MISSING}
+     */
+    long get(long most, long least) {
+        if (most == 0L && least == 0L) {
+            return hasNilKey ? nilValue : MISSING;
+        }
+
+        Table t = table;
+        int mask = t.values.length - 1;
+        int index = hash(most, least) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long m = t.most[index];
+            long l = t.least[index];
+            if (m == most && l == least) {
+                return t.values[index];
+            }
+            if (m == 0L && l == 0L) {
+                return MISSING;
+            }
+            index = (index + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    long put(UUID uuid, long value) {
+        return put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), value);
+    }
+
+    /**
+     * @return the previous balance, or {@link #MISSING}
+     */
+    long put(long most, long least, long value) {
+        if (most == 0L && least == 0L) {
+            long previous = hasNilKey ? nilValue : MISSING;
+            if (!hasNilKey) {
+                hasNilKey = true;
+                size++;
+            }
+            nilValue = value;
+            return previous;
+        }
+
+        Table t = table;
+        int mask = t.values.length - 1;
+        int index = hash(most, least) & mask;
+        while (true) {
+            long m = t.most[index];
+            long l = t.least[index];
+            if (m == most && l == least) {
+                long previous = t.values[index];
+                t.values[index] = value;
+                return previous;
+            }
+            if (m == 0L && l == 0L) {
+                break;
+            }
+            index = (index + 1) & mask;
+        }
+
+        t.values[index] = value;
+        t.least[index] = least;
+        t.most[index] = most;
+        if (++size > resizeAt) {
+            resize();
+        }
+        return MISSING;
+    }
+
+    void putIfAbsent(UUID uuid, long value) {
+        if (get(uuid) == MISSING) {
+            put(uuid, value);
+        }
+    }
+
+    long remove(UUID uuid) {
+        return remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * @return the removed balance, or {@link #MISSING}
+     */
+    long remove(long most, long least) {
+        if (most == 0L && least == 0L) {
+            if (!hasNilKey) {
+                return MISSING;
+            }
+            hasNilKey = false;
+            size--;
+            return nilValue;
+        }
+
+        Table t = table;
+        int mask = t.values.length - 1;
+        int hole = hash(most, least) & mask;
+        while (true) {
+            long m = t.most[hole];
+            long l = t.least[hole];
+            if (m == most && l == least) {
+                break;
+            }
+            if (m == 0L && l == 0L) {
+                return MISSING;
+            }
+            hole = (hole + 1) & mask;
+        }
+
+        long previous = t.values[hole];
+        // Pull later entries of the probe run back into the hole when their home slot allows it
+        int next = (hole + 1) & mask;
+        while (true) {
+            long m = t.most[next];
+            long l = t.least[next];
+            if (m == 0L && l == 0L) {
+                break;
+            }
+            int home = hash(m, l) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                t.most[hole] = m;
+                t.least[hole] = l;
+                t.values[hole] = t.values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        t.most[hole] = 0L;
+        t.least[hole] = 0L;
+        t.values[hole] = 0L;
+        size--;
+        return previous;
+    }
+
+    void forEach(BalanceVisitor visitor) {
+        if (hasNilKey) {
+            visitor.visit(new UUID(0L, 0L), nilValue);
+        }
+        Table t = table;
+        for (int i = 0; i < t.values.length; i++) {
+            if (t.most[i] != 0L || t.least[i] != 0L) {
+                visitor.visit(new UUID(t.most[i], t.least[i]), t.values[i]);
+            }
+        }
+    }
+
+    private void resize() {
+        Table old = table;
+        Table grown = new Table(old.values.length << 1);
+        int mask = grown.values.length - 1;
+        for (int i = 0; i < old.values.length; i++) {
+            long m = old.most[i];
+            long l = old.least[i];
+            if (m == 0L && l == 0L) {
+                continue;
+            }
+            int index = hash(m, l) & mask;
+            while (grown.most[index] != 0L || grown.least[index] != 0L) {
+                index = (index + 1) & mask;
+            }
+            grown.most[index] = m;
+            grown.least[index] = l;
+            grown.values[index] = old.values[i];
+        }
+        table = grown;
+        resizeAt = grown.values.length * 3 / 4;
+    }
+}
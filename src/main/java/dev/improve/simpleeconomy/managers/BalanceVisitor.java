@@ -0,0 +1,12 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.UUID;
+
+/**
+ * Receives accounts with their balance in minor units, without boxing.
+ */
+@FunctionalInterface
+interface BalanceVisitor {
+
+    void visit(UUID uuid, long balance);
+}
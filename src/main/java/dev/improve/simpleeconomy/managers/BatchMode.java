@@ -0,0 +1,8 @@
+package dev.improve.simpleeconomy.managers;
+
+public enum BatchMode {
+    // Either every change is applied or none is
+    ALL_OR_NOTHING,
+    // Changes that pass their checks are applied, the rest are reported as failed
+    BEST_EFFORT
+}
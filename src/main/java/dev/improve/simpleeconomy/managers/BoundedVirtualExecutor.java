@@ -0,0 +1,78 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every task on its own virtual thread, but lets at most {@code limit} of them run at once.
+ * The limit matches the number of connections the backend has, so waiting tasks park on the
+ * semaphore, which costs nothing, instead of inside the connection pool with a timeout.
+ * The semaphore is fair, so tasks start roughly in submission order.
+ */
+final class BoundedVirtualExecutor extends AbstractExecutorService {
+
+    private final ExecutorService threads;
+    private final Semaphore permits;
+    private final int limit;
+
+    BoundedVirtualExecutor(String name, int limit) {
+        this.limit = Math.max(1, limit);
+        this.permits = new Semaphore(this.limit, true);
+        this.threads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        threads.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Tasks waiting for a permit.
+     */
+    int queued() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Tasks holding a permit.
+     */
+    int active() {
+        return limit - permits.availablePermits();
+    }
+
+    @Override
+    public void shutdown() {
+        threads.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return threads.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return threads.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return threads.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threads.awaitTermination(timeout, unit);
+    }
+}
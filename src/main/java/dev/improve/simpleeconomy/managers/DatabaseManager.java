@@ -1,381 +1,2458 @@
 package dev.improve.simpleeconomy.managers;
 
 import dev.improve.simpleeconomy.SimpleEconomy;
+import dev.improve.simpleeconomy.api.AsyncEconomy;
+import dev.improve.simpleeconomy.database.BalanceAddition;
+import dev.improve.simpleeconomy.database.BalanceUpdate;
 import dev.improve.simpleeconomy.database.DatabaseProvider;
+import dev.improve.simpleeconomy.database.LedgerEntry;
+import dev.improve.simpleeconomy.database.LogFileProvider;
 import dev.improve.simpleeconomy.database.MySQLProvider;
 import dev.improve.simpleeconomy.database.SQLiteProvider;
+import dev.improve.simpleeconomy.database.SharedDatabaseProvider;
+import dev.improve.simpleeconomy.database.StoredBalance;
+import dev.improve.simpleeconomy.metrics.LatencyHistogram;
+import dev.improve.simpleeconomy.metrics.MainThreadDetector;
+import dev.improve.simpleeconomy.metrics.Metrics;
+import dev.improve.simpleeconomy.metrics.TimedProvider;
 import dev.improve.simpleeconomy.utils.Config;
+import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
 import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-public class DatabaseManager {
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+public class DatabaseManager implements AsyncEconomy {
+
+    private static final int LOCK_STRIPES = 256;
+    private static final int MAX_CACHED_PAGES = 64;
+    // Versions of a Versioned balance that did not come from a row of a shared database
+    private static final long UNVERSIONED = Long.MIN_VALUE;
+    private static final long NOT_STORED = -1;
+    // How long a skipped change log sequence number is read again before its write is taken to have rolled back
+    private static final long UPDATE_GAP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long UPDATE_PRUNE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static final int MYSQL_DEADLOCK = 1213;
+    private static final String IMPORT_MARKER = "import-in-progress";
+    private static final String SERVER_ID = "server-id";
+    // How deep the ledger looks for the plugin behind a call. A calling plugin sits a few frames above the Vault hook
+    // or API method, so calls from the server itself, which no plugin made, stop here instead of walking the whole stack
+    private static final int MAX_CALLER_FRAMES = 32;
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    // The plugin that loaded each class, or "" for server and library classes. Cached because asking Bukkit
+    // about a class that is not from a plugin throws, and the ledger asks about every frame of every call
+    private static final ClassValue<String> PLUGIN_NAMES = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            String name = pluginName(type);
+            return name != null ? name : "";
+        }
+    };
 
     private final SimpleEconomy plugin;
-    private final Map<UUID, Double> balanceCache = new ConcurrentHashMap<>();
-    private final Object dbLock = new Object();
+    private final Logger logger;
+    private final Money money;
+    private final Metrics metrics = new Metrics();
+    private final AccountStore balanceCache = new AccountStore();
+    private final AccountLocks accountLocks = new AccountLocks(LOCK_STRIPES, metrics.timer("lock.wait"), metrics.counter("lock.acquired"));
+    private final LatencyHistogram depositTimer = metrics.timer("deposit");
+    private final LatencyHistogram withdrawTimer = metrics.timer("withdraw");
+    private final LatencyHistogram transferTimer = metrics.timer("transfer");
+    private final LatencyHistogram setBalanceTimer = metrics.timer("setBalance");
+    private final LatencyHistogram batchTimer = metrics.timer("applyChanges");
+    private final LatencyHistogram loadTimer = metrics.timer("loadBalance");
+    private final LatencyHistogram flushTimer = metrics.timer("flush");
+    private final LatencyHistogram flushSizes = metrics.distribution("flush.size");
+    private final LongAdder cacheHits = metrics.counter("cache.hits");
+    private final LongAdder cacheMisses = metrics.counter("cache.misses");
+    private final LongAdder readFallbacks = metrics.counter("read.fallbacks");
+    private final LongAdder ledgerOverflow = metrics.counter("ledger.overflow");
+    private final LongAdder remoteUpdates = metrics.counter("sync.updates");
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final NameIndex names = new NameIndex();
+    private final Map<Integer, CachedPage> pageCache = new ConcurrentHashMap<>();
+    private final EconomyTotals totals = new EconomyTotals();
+    private final List<Consumer<UUID>> balanceListeners = new CopyOnWriteArrayList<>();
     private final Object pendingLock = new Object();
-    private final Map<UUID, Double> pendingWrites = new HashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private PendingWrites pendingWrites = new PendingWrites();
+    private PendingWrites flushingWrites;
+    // When the oldest change in pendingWrites and in flushingWrites was queued, as System.nanoTime(), or 0 if none
+    private long pendingSince;
+    private long flushingSince;
+    private BalanceJournal journal;
+    private long flushGeneration;
+
+    // Last value written to the database per account, guarded by flushLock
+    private final BalanceMap persisted = new BalanceMap();
+    private final ConcurrentLinkedQueue<UUID> evictedSinceFlush = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean earlyFlushQueued = new AtomicBoolean();
+    private volatile long lastBacklogWarning;
+
+    // Set once in setup if the ledger is enabled. Only one thread writes it out at a time
+    private volatile Ledger ledger;
+    private final ReentrantLock ledgerLock = new ReentrantLock();
+    private final AtomicBoolean ledgerWriteQueued = new AtomicBoolean();
+
+    // Set once in setup if other servers share the database. For each account that is cached or has queued changes,
+    // the balance and row version last seen in the database, which saves subtract to find what changed here
+    private volatile boolean shared;
+    private SharedDatabaseProvider sharedProvider;
+    private final Map<UUID, Versioned> bases = new ConcurrentHashMap<>();
+    // Guarded by flushLock
+    private UpdateCursor updateCursor;
+    private long lastUpdatePoll;
+    private long lastUpdatePrune;
+    private final AtomicBoolean updatePollQueued = new AtomicBoolean();
+
+    /**
+     * A balance in minor units with the version of the database row it was read from, or {@link #UNVERSIONED}.
+     * An account without a row has the default balance at version {@link #NOT_STORED}.
+     */
+    private record Versioned(long balance, long version) {
+    }
+
+    /**
+     * An amount a save to a shared database was about to add to the row at {@code baseVersion}, read back from the journal.
+     */
+    private record Saving(long amount, long baseVersion) {
+    }
+
+    private record CachedPage(CompletableFuture<LeaderboardPage> page, long expires) {
+
+        boolean isFresh(long now) {
+            return now - expires < 0;
+        }
+    }
 
     private DatabaseProvider provider;
     private BukkitTask autoSaveTask;
+    private BukkitTask reconcileTask;
+    private BukkitTask ledgerTask;
+    private BukkitTask syncTask;
     private ExecutorService asyncExecutor;
+    private MainThreadDetector mainThreadDetector;
+    private Thread migrationThread;
 
     public DatabaseManager(SimpleEconomy plugin) {
         this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.money = new Money(Config.FRACTIONAL_DIGITS);
+        registerGauges();
+    }
+
+    /**
+     * Creates a manager around an existing provider without a running server.
+     * Auto-save is not scheduled, so callers flush explicitly. Used by the benchmarks.
+     */
+    public DatabaseManager(Logger logger, DatabaseProvider provider) {
+        this.plugin = null;
+        this.logger = logger;
+        this.provider = provider;
+        this.money = new Money(Config.FRACTIONAL_DIGITS);
+        registerGauges();
+    }
+
+    private void registerGauges() {
+        metrics.gauge("cache.size", balanceCache::size);
+        metrics.gauge("pending.writes", () -> {
+            synchronized (pendingLock) {
+                return pendingWrites.size();
+            }
+        });
+        metrics.gauge("pending.flushing", () -> {
+            synchronized (pendingLock) {
+                return flushingWrites == null ? 0 : flushingWrites.size();
+            }
+        });
+        metrics.gauge("flush.lag.seconds", () -> {
+            long oldest;
+            synchronized (pendingLock) {
+                oldest = flushingSince != 0 ? flushingSince : pendingSince;
+            }
+            return oldest == 0 ? 0.0 : (System.nanoTime() - oldest) / 1e9;
+        });
+        metrics.gauge("executor.queue", () -> switch (asyncExecutor) {
+            case ThreadPoolExecutor pool -> pool.getQueue().size();
+            case BoundedVirtualExecutor virtual -> virtual.queued();
+            case null, default -> 0;
+        });
+        metrics.gauge("executor.active", () -> switch (asyncExecutor) {
+            case ThreadPoolExecutor pool -> pool.getActiveCount();
+            case BoundedVirtualExecutor virtual -> virtual.active();
+            case null, default -> 0;
+        });
+        // Unknown until the first reconcile, rather than a number that only counts changes since startup
+        metrics.gauge("economy.supply", () -> totals.isReady() ? money.toMajor(totals.total()) : Double.NaN);
+        metrics.gauge("economy.accounts", () -> totals.isReady() ? totals.accounts() : Double.NaN);
+        metrics.gauge("names.known", names::size);
+        metrics.gauge("ledger.buffered", () -> {
+            Ledger current = ledger;
+            return current == null ? 0 : current.size();
+        });
+    }
+
+    /**
+     * Counters, latency histograms and gauges for this manager and its provider.
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     public void setup() {
         try {
-            asyncExecutor = Executors.newFixedThreadPool(2, r -> {
-                Thread t = new Thread(r, "SimpleEconomy-DB");
-                t.setDaemon(true);
-                return t;
-            });
-            provider = createProvider();
+            DatabaseProvider backend = provider != null ? provider : createProvider(Config.DATABASE_TYPE);
+            if (plugin != null) {
+                mainThreadDetector = MainThreadDetector.wrap(backend, plugin.getServer()::isPrimaryThread,
+                        DatabaseManager::pluginName, plugin.getName(), metrics, logger);
+                backend = mainThreadDetector;
+            }
+            provider = TimedProvider.wrap(backend, metrics);
+            asyncExecutor = createExecutor(Config.DATABASE_EXECUTOR);
             provider.initialize();
-            plugin.getLogger().info("Database connected using " + provider.getName() + ".");
+            provider.registerMetrics(metrics);
+            logger.info("Database connected using " + provider.getName() + ".");
+            openSync();
+            importBalances();
+            loadNames();
+            openJournal();
+            openLedger();
+            asyncExecutor.execute(this::seedLeaderboard);
+            asyncExecutor.execute(this::reconcileTotals);
             scheduleAutoSave();
+            scheduleReconcile();
+            startMigration();
+            configureDetector();
         } catch (SQLException ex) {
-            plugin.getLogger().severe("Failed to initialise database connection: " + ex.getMessage());
+            logger.severe("Failed to initialise database connection: " + ex.getMessage());
             ex.printStackTrace();
         }
     }
 
-    private DatabaseProvider createProvider() {
-        return switch (Config.DATABASE_TYPE) {
+    /**
+     * Creates the executor for database work. "virtual" runs each task on a virtual thread, limited to as many
+     * at once as the provider has connections; anything else is a small fixed pool of platform threads.
+     */
+    private ExecutorService createExecutor(String type) {
+        if ("virtual".equals(type)) {
+            return new BoundedVirtualExecutor("SimpleEconomy-DB", provider.maxConnections());
+        }
+        return Executors.newFixedThreadPool(Config.DATABASE_EXECUTOR_THREADS, r -> {
+            Thread t = new Thread(r, "SimpleEconomy-DB");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static String pluginName(Class<?> type) {
+        try {
+            return JavaPlugin.getProvidingPlugin(type).getName();
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            return null;
+        }
+    }
+
+    private void configureDetector() {
+        if (mainThreadDetector != null) {
+            mainThreadDetector.configure(Config.MAIN_THREAD_DETECTOR, Config.MAIN_THREAD_DETECTOR_INTERVAL_SECONDS);
+        }
+    }
+
+    private DatabaseProvider createProvider(String type) throws SQLException {
+        return switch (type) {
             case "mysql", "mariadb" -> new MySQLProvider(
                     Config.MYSQL_HOST,
                     Config.MYSQL_PORT,
                     Config.MYSQL_DATABASE,
                     Config.MYSQL_USERNAME,
                     Config.MYSQL_PASSWORD,
-                    Config.MYSQL_POOL_SIZE
+                    Config.MYSQL_POOL_SIZE,
+                    Config.MYSQL_SYNC_ENABLED,
+                    Config.MYSQL_SYNC_ENABLED ? readServerId() : 0
+            );
+            case "log" -> new LogFileProvider(
+                    plugin.getDataFolder().toPath().resolve("balances-log"),
+                    Config.LOG_SEGMENT_SIZE_MB * 1024L * 1024L,
+                    Config.LOG_COMPACTION_INTERVAL_SECONDS,
+                    logger
             );
-            default -> new SQLiteProvider(plugin.getDataFolder());
+            default -> new SQLiteProvider(plugin.getDataFolder(), Config.SQLITE_READ_CONNECTIONS);
         };
     }
 
-    public void reloadSettings() {
-        restartAutoSave();
+    /**
+     * Copies every balance from the configured import source into the provider if it has no accounts yet.
+     * This is how servers move between storage types; it runs before anything reads balances.
+     */
+    private void importBalances() throws SQLException {
+        if (plugin == null) {
+            return;
+        }
+        String source = Config.DATABASE_IMPORT_FROM;
+        // Present from before the first imported batch until after the last, so an import cut short by a crash
+        // is never mistaken for the whole economy
+        Path marker = plugin.getDataFolder().toPath().resolve(IMPORT_MARKER);
+        String unfinished = readImportMarker(marker);
+        if (unfinished != null && !unfinished.equals(source)) {
+            provider.shutdown();
+            throw new SQLException("An import from " + unfinished + " into " + provider.getName() + " did not finish. Set "
+                    + "database.import-from back to " + unfinished + " to restart it, or remove the imported balances and "
+                    + IMPORT_MARKER + " to start without them");
+        }
+        if (source.isEmpty() || source.equals(Config.DATABASE_TYPE)) {
+            return;
+        }
+        if (unfinished != null) {
+            logger.warning("The last import from " + source + " did not finish; importing everything again.");
+        } else if (provider.getPlayerCount() > 0) {
+            logger.info("Skipping import from " + source + ": " + provider.getName() + " already has balances.");
+            return;
+        }
+
+        DatabaseProvider from = createProvider(source);
+        from.initialize();
+        try {
+            writeImportMarker(marker, source);
+            long start = System.currentTimeMillis();
+            Map<UUID, Double> batch = new HashMap<>();
+            int[] imported = new int[1];
+            SQLException[] failure = new SQLException[1];
+            from.forEachBalance((uuid, balance) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                batch.put(uuid, balance);
+                if (batch.size() >= Config.WRITE_BATCH_SIZE) {
+                    try {
+                        provider.saveBalances(batch);
+                        imported[0] += batch.size();
+                    } catch (SQLException ex) {
+                        failure[0] = ex;
+                    }
+                    batch.clear();
+                }
+            });
+            if (failure[0] == null) {
+                try {
+                    provider.saveBalances(batch);
+                    imported[0] += batch.size();
+                } catch (SQLException ex) {
+                    failure[0] = ex;
+                }
+            }
+            if (failure[0] != null) {
+                // A partial import must not be mistaken for the whole economy; the marker restarts it on the next start
+                provider.shutdown();
+                throw new SQLException("Import from " + from.getName() + " failed after " + imported[0]
+                        + " balances. It starts over on the next start", failure[0]);
+            }
+            deleteImportMarker(marker);
+            logger.info("Imported " + imported[0] + " balances from " + from.getName() + " in "
+                    + (System.currentTimeMillis() - start) + "ms. The old data was left in place; clear database.import-from.");
+
+            try {
+                Map<UUID, String> importedNames = new LinkedHashMap<>();
+                from.forEachName(importedNames::put);
+                provider.saveNames(importedNames);
+            } catch (SQLException ex) {
+                logger.severe("Failed to import player names, they will be learnt again as players join: " + ex.getMessage());
+            }
+        } finally {
+            from.shutdown();
+        }
+    }
+
+    /**
+     * Reads the id this server marks its writes to a shared database with, creating one on first use.
+     * It has to outlive restarts, so the journal can be matched against the writes made before a crash.
+     */
+    private long readServerId() throws SQLException {
+        Path file = plugin.getDataFolder().toPath().resolve(SERVER_ID);
+        try {
+            if (Files.exists(file)) {
+                return Long.parseUnsignedLong(Files.readString(file, StandardCharsets.UTF_8).trim(), 16);
+            }
+            long id;
+            do {
+                id = new SecureRandom().nextLong();
+            } while (id == 0);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, Long.toHexString(id), StandardCharsets.UTF_8);
+            return id;
+        } catch (IOException | NumberFormatException ex) {
+            throw new SQLException("Unable to read or create " + file, ex);
+        }
+    }
+
+    /**
+     * @return the source of the import the marker records, or null if there is no marker
+     */
+    private static String readImportMarker(Path marker) throws SQLException {
+        try {
+            return Files.exists(marker) ? Files.readString(marker, StandardCharsets.UTF_8).trim() : null;
+        } catch (IOException ex) {
+            throw new SQLException("Unable to read " + marker, ex);
+        }
+    }
+
+    private static void writeImportMarker(Path marker, String source) throws SQLException {
+        try {
+            Files.createDirectories(marker.getParent());
+            Files.writeString(marker, source, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new SQLException("Unable to write " + marker, ex);
+        }
+    }
+
+    private static void deleteImportMarker(Path marker) throws SQLException {
+        try {
+            Files.deleteIfExists(marker);
+        } catch (IOException ex) {
+            throw new SQLException("Unable to delete " + marker, ex);
+        }
+    }
+
+    /**
+     * Reads every saved player name into memory, so commands never look names up on the main thread.
+     */
+    private void loadNames() throws SQLException {
+        long start = System.currentTimeMillis();
+        provider.forEachName(names::load);
+        logger.info("Loaded " + names.size() + " player names in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    /**
+     * Opens the write-ahead journal and re-queues whatever the previous run did not save.
+     * Recovered balances are written to the database before anything else reads it; on a shared database,
+     * as additions to the base journaled with them.
+     */
+    private void openJournal() throws SQLException {
+        if (plugin == null || !Config.JOURNAL_ENABLED) {
+            return;
+        }
+
+        try {
+            journal = BalanceJournal.open(plugin.getDataFolder().toPath().resolve("journal"),
+                    money.digits(), Config.JOURNAL_SEGMENT_SIZE_KB * 1024);
+        } catch (IOException ex) {
+            logger.severe("Failed to open balance journal, unsaved balances will not survive a crash: " + ex.getMessage());
+            return;
+        }
+
+        BalanceMap recovered = new BalanceMap();
+        Map<UUID, Versioned> recoveredBases = new HashMap<>();
+        Map<UUID, Saving> savings = new HashMap<>();
+        Set<UUID> deleted = new HashSet<>();
+        int records = journal.replay(new BalanceJournal.Replay() {
+            @Override
+            public void balance(UUID uuid, long balance) {
+                recovered.put(uuid, balance);
+                recoveredBases.remove(uuid);
+                deleted.remove(uuid);
+            }
+
+            @Override
+            public void balance(UUID uuid, long balance, long baseBalance, long baseVersion) {
+                recovered.put(uuid, balance);
+                recoveredBases.put(uuid, new Versioned(baseBalance, baseVersion));
+                deleted.remove(uuid);
+            }
+
+            @Override
+            public void saving(UUID uuid, long amount, long baseVersion) {
+                savings.put(uuid, new Saving(amount, baseVersion));
+            }
+
+            @Override
+            public void delete(UUID uuid) {
+                recovered.remove(uuid);
+                recoveredBases.remove(uuid);
+                savings.remove(uuid);
+                deleted.add(uuid);
+            }
+        });
+
+        if (shared) {
+            try {
+                restoreBases(recoveredBases, savings);
+            } catch (SQLException ex) {
+                // Saving without knowing the bases could count a change twice, so the journal is kept for the next start
+                journal.close();
+                journal = null;
+                throw ex;
+            }
+        }
+
+        synchronized (pendingLock) {
+            recovered.forEach((uuid, balance) -> {
+                pendingWrites.put(uuid, balance);
+                journalBalance(uuid, balance);
+            });
+            for (UUID uuid : deleted) {
+                pendingWrites.delete(uuid);
+                journal.appendDelete(uuid);
+            }
+            journal.force();
+            journal.retire();
+        }
+        if (records == 0) {
+            return;
+        }
+
+        logger.info("Recovered " + recovered.size() + " unsaved balances and " + deleted.size()
+                + " deletions from the journal.");
+        recovered.forEach(leaderboard::update);
+        flushPendingWrites();
+    }
+
+    /**
+     * Takes the bases journaled with recovered balances as theirs. A save that was under way when the last run stopped
+     * may have committed: if the change log holds a write of this server's newer than the base it was adding to,
+     * the amount it added is already stored and becomes part of the base.
+     */
+    private void restoreBases(Map<UUID, Versioned> recovered, Map<UUID, Saving> savings) throws SQLException {
+        Set<UUID> started = new HashSet<>();
+        savings.forEach((uuid, saving) -> {
+            Versioned base = recovered.get(uuid);
+            if (base != null && base.version() == saving.baseVersion()) {
+                started.add(uuid);
+            }
+        });
+        Map<UUID, Long> written = started.isEmpty() ? Map.of() : sharedProvider.getOwnVersions(started);
+
+        recovered.forEach((uuid, base) -> {
+            Long version = started.contains(uuid) ? written.get(uuid) : null;
+            if (version != null && version > base.version()) {
+                base = new Versioned(base.balance() + savings.get(uuid).amount(), version);
+            }
+            bases.put(uuid, base);
+        });
+    }
+
+    /**
+     * Starts recording balance changes if the ledger is enabled, and drops months older than the retention period.
+     */
+    private void openLedger() {
+        if (!Config.LEDGER_ENABLED) {
+            return;
+        }
+
+        ledger = new Ledger(Config.LEDGER_BUFFER_SIZE, ledgerOverflow);
+        scheduleLedgerWrites();
+        if (Config.LEDGER_RETENTION_MONTHS > 0) {
+            asyncExecutor.execute(this::pruneLedger);
+        }
+    }
+
+    private void pruneLedger() {
+        long cutoff = ZonedDateTime.now(ZoneOffset.UTC)
+                .minusMonths(Config.LEDGER_RETENTION_MONTHS).toInstant().toEpochMilli();
+        try {
+            int dropped = provider.pruneLedger(cutoff);
+            if (dropped > 0) {
+                logger.info("Dropped " + dropped + " months of ledger older than " + Config.LEDGER_RETENTION_MONTHS + " months.");
+            }
+        } catch (SQLException ex) {
+            logger.severe("Failed to drop old ledger months: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Starts following the change log if other servers share the database. Everything this server caches
+     * is loaded after this point, so entries written before it never need to be read.
+     */
+    private void openSync() throws SQLException {
+        if (!(provider instanceof SharedDatabaseProvider backend) || !backend.isShared()) {
+            return;
+        }
+
+        sharedProvider = backend;
+        updateCursor = new UpdateCursor(backend.getLatestBalanceUpdate(), UPDATE_GAP_TIMEOUT_NANOS);
+        lastUpdatePoll = System.nanoTime();
+        shared = true;
+        scheduleSync();
+        logger.info("Sharing the database with other servers; reading their changes every "
+                + Config.MYSQL_SYNC_POLL_INTERVAL_TICKS + " ticks.");
+    }
+
+    /**
+     * Streams every stored balance into the in-memory leaderboard. Until this finishes,
+     * baltop and rank queries fall back to the database.
+     */
+    private void seedLeaderboard() {
+        long start = System.currentTimeMillis();
+        try {
+            provider.forEachBalance((uuid, balance) -> leaderboard.seed(uuid, money.toMinor(balance)));
+            leaderboard.finishSeeding();
+            logger.info("Leaderboard loaded in " + (System.currentTimeMillis() - start) + "ms.");
+        } catch (SQLException ex) {
+            logger.severe("Failed to load leaderboard, baltop will query the database: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Compares the in-memory totals with the database and corrects any drift.
+     * The totals are captured together with a flush, so both sides describe the same set of changes.
+     * If another write reaches the database while the aggregates are queried, this round is skipped.
+     */
+    private void reconcileTotals() {
+        EconomyTotals.Snapshot cut;
+        long generation;
+        flushLock.lock();
+        try {
+            cut = writePendingLocked();
+            generation = flushGeneration;
+        } finally {
+            flushLock.unlock();
+        }
+
+        if (cut == null) {
+            return;
+        }
+
+        long storedTotal;
+        long storedAccounts;
+        try {
+            storedTotal = money.toMinor(provider.getTotalBalance());
+            storedAccounts = provider.getPlayerCount();
+        } catch (SQLException ex) {
+            logger.warning("Failed to reconcile economy totals: " + ex.getMessage());
+            return;
+        }
+
+        flushLock.lock();
+        try {
+            if (generation != flushGeneration) {
+                return;
+            }
+            boolean firstRun = !totals.isReady();
+            totals.reconcile(cut, storedTotal, storedAccounts);
+            // The database sums doubles, so allow a minor unit of rounding before calling it drift
+            if (!firstRun && (Math.abs(storedTotal - cut.total()) > 1 || storedAccounts != cut.accounts())) {
+                logger.info("Corrected economy totals drift of " + money.toMajor(storedTotal - cut.total())
+                        + " and " + (storedAccounts - cut.accounts()) + " accounts.");
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public void reloadSettings() {
+        if (Config.FRACTIONAL_DIGITS != money.digits()) {
+            logger.warning("Changing fractional-digits requires a restart; still using " + money.digits() + ".");
+        }
+        restartAutoSave();
+        cancelReconcileTask();
+        scheduleReconcile();
+        configureDetector();
+        pageCache.clear();
+        if (ledger != null) {
+            cancelLedgerTask();
+            scheduleLedgerWrites();
+        }
+        if (shared) {
+            cancelSyncTask();
+            scheduleSync();
+        }
+    }
+
+    public boolean hasBalance(UUID uuid) {
+        if (balanceCache.contains(uuid)) {
+            return true;
+        }
+
+        try {
+            return provider.hasBalance(uuid);
+        } catch (SQLException ex) {
+            logger.severe("Failed to check balance for " + uuid + ": " + ex.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hasBalanceAsync(UUID uuid) {
+        if (balanceCache.contains(uuid)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return CompletableFuture.supplyAsync(() -> hasBalance(uuid), asyncExecutor);
+    }
+
+    public double getBalance(UUID uuid) {
+        long cached = balanceCache.get(uuid);
+        if (cached != BalanceMap.MISSING) {
+            cacheHits.increment();
+            return money.toMajor(cached);
+        }
+        cacheMisses.increment();
+        // Synchronous fallback for Vault compatibility
+        int epoch = accountLocks.epoch(uuid);
+        Versioned stored = loadBalance(uuid);
+        if (stored.balance() != BalanceMap.MISSING) {
+            return money.toMajor(stored.balance());
+        }
+
+        // New account: create it under the account lock so the default is only queued once.
+        // The load above is reused unless the account was evicted while it ran
+        accountLocks.lock(uuid);
+        if (!installLoaded(uuid, false, stored, epoch)) {
+            accountLocks.unlock(uuid);
+            lockAccount(uuid);
+        }
+        long balance = balanceCache.get(uuid);
+        accountLocks.unlock(uuid);
+        flushIfImmediate();
+        return money.toMajor(balance);
+    }
+
+    /**
+     * Like {@link #getBalance(UUID)}, but never waits more than {@code timeoutMillis} for an account that is not cached.
+     * If the load takes longer, it carries on in the background and {@code fallback} is returned,
+     * so callers on the main thread trade one stale answer for a tick that is never held up by the database.
+     */
+    public double getBalance(UUID uuid, long timeoutMillis, double fallback) {
+        CompletableFuture<Double> load = loadBalanceAsync(uuid);
+        try {
+            return load.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            readFallbacks.increment();
+            return fallback;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        } catch (ExecutionException ex) {
+            logger.severe("Failed to load balance for " + uuid + ": " + ex.getCause());
+            return fallback;
+        }
+    }
+
+    /**
+     * Number of decimal places balances are kept to, fixed until the next restart.
+     */
+    public int getFractionalDigits() {
+        return money.digits();
+    }
+
+    /**
+     * Returns the balance only if it is already cached, without touching the database.
+     *
+     * @return the cached balance, or NaN if the account is not cached
+     */
+    public double getCachedBalance(UUID uuid) {
+        long cached = balanceCache.get(uuid);
+        return cached != BalanceMap.MISSING ? money.toMajor(cached) : Double.NaN;
+    }
+
+    /**
+     * Registers a callback that runs whenever an account's balance changes or is deleted.
+     * Callbacks run on the mutating thread while the account is locked, so they must be cheap.
+     */
+    public void addBalanceListener(Consumer<UUID> listener) {
+        balanceListeners.add(listener);
+    }
+
+    private void notifyBalanceChanged(UUID uuid) {
+        for (Consumer<UUID> listener : balanceListeners) {
+            listener.accept(uuid);
+        }
+    }
+
+    /**
+     * Asynchronously loads and caches a player's balance.
+     * Use this for preloading on join to avoid main thread DB access.
+     */
+    @Override
+    public CompletableFuture<Double> loadBalanceAsync(UUID uuid) {
+        long cached = balanceCache.get(uuid);
+        if (cached != BalanceMap.MISSING) {
+            cacheHits.increment();
+            return CompletableFuture.completedFuture(money.toMajor(cached));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            long balance = lockAccount(uuid);
+            accountLocks.unlock(uuid);
+            flushIfImmediate();
+            return money.toMajor(balance);
+        }, asyncExecutor);
+    }
+
+    /**
+     * Reads the latest stored balance, checking unflushed writes before the provider.
+     *
+     * @return the balance in minor units, or {@link BalanceMap#MISSING} if the account does not exist yet,
+     * with the row version if it was read from a shared database
+     */
+    private Versioned loadBalance(UUID uuid) {
+        long start = System.nanoTime();
+        try {
+            return readBalance(uuid);
+        } finally {
+            loadTimer.recordSince(start);
+        }
+    }
+
+    private Versioned readBalance(UUID uuid) {
+        // An evicted account may still have an unflushed value that is newer than the database row,
+        // and a deleted account keeps its row until the deletion is flushed
+        synchronized (pendingLock) {
+            if (pendingWrites.contains(uuid)) {
+                return new Versioned(pendingWrites.get(uuid), UNVERSIONED);
+            }
+            if (flushingWrites != null && flushingWrites.contains(uuid)) {
+                return new Versioned(flushingWrites.get(uuid), UNVERSIONED);
+            }
+        }
+
+        try {
+            if (shared) {
+                StoredBalance stored = sharedProvider.loadStoredBalance(uuid);
+                return stored != null
+                        ? new Versioned(money.toMinor(stored.balance()), stored.version())
+                        : new Versioned(BalanceMap.MISSING, NOT_STORED);
+            }
+            Double stored = provider.loadBalance(uuid);
+            return new Versioned(stored != null ? money.toMinor(stored) : BalanceMap.MISSING, UNVERSIONED);
+        } catch (SQLException ex) {
+            logger.severe("Failed to load balance for " + uuid + ": " + ex.getMessage());
+            return new Versioned(BalanceMap.MISSING, UNVERSIONED);
+        }
+    }
+
+    /**
+     * Loads the account into the cache if needed and then locks its stripe.
+     * The load happens before locking so a cache miss never holds up other accounts.
+     * If the account was evicted while loading, the loaded value may be stale and the load is retried.
+     *
+     * @return the cached balance, read under the lock
+     */
+    private long lockAccount(UUID uuid) {
+        while (true) {
+            int epoch = accountLocks.epoch(uuid);
+            boolean cached = isCached(uuid);
+            Versioned stored = cached ? null : loadBalance(uuid);
+
+            accountLocks.lock(uuid);
+            if (installLoaded(uuid, cached, stored, epoch)) {
+                return balanceCache.get(uuid);
+            }
+            accountLocks.unlock(uuid);
+        }
+    }
+
+    private boolean isCached(UUID uuid) {
+        boolean cached = balanceCache.contains(uuid);
+        (cached ? cacheHits : cacheMisses).increment();
+        return cached;
+    }
+
+    /**
+     * Two-account variant of {@link #lockAccount(UUID)}. Both stripes are taken in a fixed order.
+     */
+    private void lockAccounts(UUID first, UUID second) {
+        while (true) {
+            int firstEpoch = accountLocks.epoch(first);
+            int secondEpoch = accountLocks.epoch(second);
+            boolean firstCached = isCached(first);
+            boolean secondCached = isCached(second);
+            Versioned firstStored = firstCached ? null : loadBalance(first);
+            Versioned secondStored = secondCached ? null : loadBalance(second);
+
+            accountLocks.lockBoth(first, second);
+            if (installLoaded(first, firstCached, firstStored, firstEpoch)
+                    && installLoaded(second, secondCached, secondStored, secondEpoch)) {
+                return;
+            }
+            accountLocks.unlockBoth(first, second);
+        }
+    }
+
+    /**
+     * Multi-account variant of {@link #lockAccount(UUID)} for batches. Every stripe is taken once, in a fixed order.
+     *
+     * @return the stripes taken, to release with {@link AccountLocks#unlockAll(int[])}
+     */
+    private int[] lockAccounts(UUID[] accounts) {
+        int[] epochs = new int[accounts.length];
+        boolean[] cached = new boolean[accounts.length];
+        Versioned[] stored = new Versioned[accounts.length];
+        while (true) {
+            for (int i = 0; i < accounts.length; i++) {
+                epochs[i] = accountLocks.epoch(accounts[i]);
+                cached[i] = isCached(accounts[i]);
+                stored[i] = cached[i] ? null : loadBalance(accounts[i]);
+            }
+
+            int[] stripes = accountLocks.lockAll(accounts);
+            boolean installed = true;
+            for (int i = 0; i < accounts.length && installed; i++) {
+                installed = installLoaded(accounts[i], cached[i], stored[i], epochs[i]);
+            }
+            if (installed) {
+                return stripes;
+            }
+            accountLocks.unlockAll(stripes);
+        }
+    }
+
+    /**
+     * Caches a balance loaded outside the lock, unless an eviction happened since it was read.
+     * Accounts that do not exist yet start at the default balance, which is queued for saving.
+     * A balance read from a shared database becomes the base its later changes are saved against.
+     * Must be called while holding the account's stripe.
+     *
+     * @return true if the account is now cached
+     */
+    private boolean installLoaded(UUID uuid, boolean wasCached, Versioned stored, int epoch) {
+        if (balanceCache.contains(uuid)) {
+            return true;
+        }
+        if (wasCached || accountLocks.epoch(uuid) != epoch) {
+            return false;
+        }
+
+        long balance = stored.balance();
+        boolean created = balance == BalanceMap.MISSING;
+        if (created) {
+            balance = money.toMinor(Config.DEFAULT_BALANCE);
+        }
+        if (stored.version() != UNVERSIONED) {
+            bases.put(uuid, new Versioned(balance, stored.version()));
+        }
+        if (created) {
+            queuePendingWrite(uuid, balance, balance, 1);
+        }
+        balanceCache.put(uuid, balance);
+        return true;
+    }
+
+    public EconomyResult deposit(UUID uuid, double amount) {
+        return deposit(uuid, amount, cause(null));
+    }
+
+    private EconomyResult deposit(UUID uuid, double amount, Ledger.Cause cause) {
+        long start = System.nanoTime();
+        EconomyResult result = applyDeposit(uuid, amount, cause);
+        depositTimer.recordSince(start);
+        return result;
+    }
+
+    private EconomyResult applyDeposit(UUID uuid, double amount, Ledger.Cause cause) {
+        long minor = toMinorAmount(amount);
+        if (minor <= 0) {
+            return EconomyResult.invalidAmount();
+        }
+
+        long newBalance;
+        long current = lockAccount(uuid);
+        try {
+            // Compared as a difference so the sum can never overflow
+            if (minor > money.toMinor(Config.MAX_BALANCE) - current) {
+                return new EconomyResult(EconomyStatus.EXCEEDS_MAX_BALANCE, money.toMajor(current));
+            }
+
+            newBalance = current + minor;
+            balanceCache.put(uuid, newBalance);
+            queuePendingWrite(uuid, newBalance, minor, 0);
+            record(cause, uuid, LedgerEntry.Type.DEPOSIT, minor, newBalance, null);
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+
+        flushIfImmediate();
+        return new EconomyResult(EconomyStatus.SUCCESS, money.toMajor(newBalance));
+    }
+
+    @Override
+    public CompletableFuture<EconomyResult> depositAsync(UUID uuid, double amount) {
+        return depositAsync(uuid, amount, null);
+    }
+
+    /**
+     * Like {@link #depositAsync(UUID, double)}, naming who made the deposit in the ledger, such as a command sender.
+     */
+    public CompletableFuture<EconomyResult> depositAsync(UUID uuid, double amount, String actor) {
+        // Taken here, while the calling plugin is still on the stack
+        Ledger.Cause cause = cause(actor);
+        return CompletableFuture.supplyAsync(() -> deposit(uuid, amount, cause), asyncExecutor);
+    }
+
+    public EconomyResult withdraw(UUID uuid, double amount) {
+        return withdraw(uuid, amount, cause(null));
+    }
+
+    private EconomyResult withdraw(UUID uuid, double amount, Ledger.Cause cause) {
+        long start = System.nanoTime();
+        EconomyResult result = applyWithdraw(uuid, amount, cause);
+        withdrawTimer.recordSince(start);
+        return result;
+    }
+
+    private EconomyResult applyWithdraw(UUID uuid, double amount, Ledger.Cause cause) {
+        long minor = toMinorAmount(amount);
+        if (minor <= 0) {
+            return EconomyResult.invalidAmount();
+        }
+
+        long newBalance;
+        long current = lockAccount(uuid);
+        try {
+            if (minor > current - money.toMinor(Config.MIN_BALANCE)) {
+                return new EconomyResult(EconomyStatus.INSUFFICIENT_FUNDS, money.toMajor(current));
+            }
+
+            newBalance = current - minor;
+            balanceCache.put(uuid, newBalance);
+            queuePendingWrite(uuid, newBalance, -minor, 0);
+            record(cause, uuid, LedgerEntry.Type.WITHDRAW, -minor, newBalance, null);
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+
+        flushIfImmediate();
+        return new EconomyResult(EconomyStatus.SUCCESS, money.toMajor(newBalance));
+    }
+
+    @Override
+    public CompletableFuture<EconomyResult> withdrawAsync(UUID uuid, double amount) {
+        return withdrawAsync(uuid, amount, null);
+    }
+
+    /**
+     * Like {@link #withdrawAsync(UUID, double)}, naming who made the withdrawal in the ledger.
+     */
+    public CompletableFuture<EconomyResult> withdrawAsync(UUID uuid, double amount, String actor) {
+        Ledger.Cause cause = cause(actor);
+        return CompletableFuture.supplyAsync(() -> withdraw(uuid, amount, cause), asyncExecutor);
+    }
+
+    public EconomyResult transfer(UUID from, UUID to, double amount) {
+        return transfer(from, to, amount, cause(null));
+    }
+
+    private EconomyResult transfer(UUID from, UUID to, double amount, Ledger.Cause cause) {
+        long start = System.nanoTime();
+        EconomyResult result = applyTransfer(from, to, amount, cause);
+        transferTimer.recordSince(start);
+        return result;
+    }
+
+    private EconomyResult applyTransfer(UUID from, UUID to, double amount, Ledger.Cause cause) {
+        if (from.equals(to)) {
+            return new EconomyResult(EconomyStatus.SAME_ACCOUNT, Double.NaN);
+        }
+
+        long minor = toMinorAmount(amount);
+        if (minor <= 0) {
+            return EconomyResult.invalidAmount();
+        }
+
+        lockAccounts(from, to);
+        try {
+            long senderBalance = balanceCache.get(from);
+            long receiverBalance = balanceCache.get(to);
+
+            if (minor > senderBalance - money.toMinor(Config.MIN_BALANCE)) {
+                return new EconomyResult(EconomyStatus.INSUFFICIENT_FUNDS, money.toMajor(senderBalance));
+            }
+
+            if (minor > money.toMinor(Config.MAX_BALANCE) - receiverBalance) {
+                return new EconomyResult(EconomyStatus.EXCEEDS_MAX_BALANCE, money.toMajor(receiverBalance));
+            }
+
+            long newSenderBalance = senderBalance - minor;
+            long newReceiverBalance = receiverBalance + minor;
+
+            balanceCache.put(from, newSenderBalance);
+            balanceCache.put(to, newReceiverBalance);
+
+            // Queued together so both sides always land in the same flush transaction
+            int backlog;
+            synchronized (pendingLock) {
+                markPending();
+                pendingWrites.put(from, newSenderBalance);
+                pendingWrites.put(to, newReceiverBalance);
+                pendingWrites.link(from, to);
+                if (journal != null) {
+                    journalBalance(from, newSenderBalance);
+                    journalBalance(to, newReceiverBalance);
+                }
+                backlog = pendingWrites.size();
+            }
+            checkBacklog(backlog);
+            leaderboard.update(from, newSenderBalance);
+            leaderboard.update(to, newReceiverBalance);
+            notifyBalanceChanged(from);
+            notifyBalanceChanged(to);
+            record(cause, from, LedgerEntry.Type.TRANSFER, -minor, newSenderBalance, to);
+            record(cause, to, LedgerEntry.Type.TRANSFER, minor, newReceiverBalance, from);
+        } finally {
+            accountLocks.unlockBoth(from, to);
+        }
+
+        flushIfImmediate();
+        return new EconomyResult(EconomyStatus.SUCCESS, Double.NaN);
+    }
+
+    /**
+     * Applies many deposits and withdrawals at once, such as job payouts or taxes. All accounts are locked
+     * together and every change is checked against the balance limits in list order, so several changes
+     * to one account see each other. The new balances are queued together and land in the same flush.
+     *
+     * @return one result per change, in the same order. In {@link BatchMode#ALL_OR_NOTHING} mode a single
+     * failure leaves every balance untouched; the failed change reports why and the others report
+     * {@link EconomyStatus#BATCH_ABORTED}
+     */
+    public EconomyResult[] applyChanges(List<BalanceChange> changes, BatchMode mode) {
+        return applyChanges(changes, mode, cause(null));
+    }
+
+    private EconomyResult[] applyChanges(List<BalanceChange> changes, BatchMode mode, Ledger.Cause cause) {
+        long start = System.nanoTime();
+        EconomyResult[] results = applyBatch(changes, mode, cause);
+        batchTimer.recordSince(start);
+        return results;
+    }
+
+    private EconomyResult[] applyBatch(List<BalanceChange> changes, BatchMode mode, Ledger.Cause cause) {
+        int size = changes.size();
+        EconomyResult[] results = new EconomyResult[size];
+        long[] deltas = new long[size];
+        // The balance right after each successful change, for the ledger
+        long[] after = new long[size];
+        Set<UUID> accounts = new LinkedHashSet<>();
+        boolean failed = false;
+        for (int i = 0; i < size; i++) {
+            BalanceChange change = changes.get(i);
+            long minor = toMinorAmount(Math.abs(change.amount()));
+            if (minor <= 0) {
+                results[i] = EconomyResult.invalidAmount();
+                failed = true;
+                continue;
+            }
+            deltas[i] = change.amount() < 0 ? -minor : minor;
+            accounts.add(change.uuid());
+        }
+        if (accounts.isEmpty() || (failed && mode == BatchMode.ALL_OR_NOTHING)) {
+            return abortRemaining(results);
+        }
+
+        long max = money.toMinor(Config.MAX_BALANCE);
+        long min = money.toMinor(Config.MIN_BALANCE);
+        Map<UUID, Long> balances = new HashMap<>(accounts.size() * 4 / 3 + 1);
+        int[] stripes = lockAccounts(accounts.toArray(new UUID[0]));
+        try {
+            for (int i = 0; i < size; i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                UUID uuid = changes.get(i).uuid();
+                long current = balances.computeIfAbsent(uuid, balanceCache::get);
+                long delta = deltas[i];
+                // Compared as differences so the sums can never overflow
+                if (delta > 0 && delta > max - current) {
+                    results[i] = new EconomyResult(EconomyStatus.EXCEEDS_MAX_BALANCE, money.toMajor(current));
+                } else if (delta < 0 && -delta > current - min) {
+                    results[i] = new EconomyResult(EconomyStatus.INSUFFICIENT_FUNDS, money.toMajor(current));
+                } else {
+                    balances.put(uuid, current + delta);
+                    after[i] = current + delta;
+                    results[i] = new EconomyResult(EconomyStatus.SUCCESS, money.toMajor(current + delta));
+                    continue;
+                }
+                if (mode == BatchMode.ALL_OR_NOTHING) {
+                    for (int j = 0; j < i; j++) {
+                        results[j] = null;
+                    }
+                    return abortRemaining(results);
+                }
+            }
+
+            long totalDelta = 0;
+            int backlog;
+            synchronized (pendingLock) {
+                markPending();
+                UUID first = null;
+                for (Map.Entry<UUID, Long> entry : balances.entrySet()) {
+                    UUID uuid = entry.getKey();
+                    long balance = entry.getValue();
+                    totalDelta += balance - balanceCache.get(uuid);
+                    balanceCache.put(uuid, balance);
+                    pendingWrites.put(uuid, balance);
+                    if (first == null) {
+                        first = uuid;
+                    } else {
+                        pendingWrites.link(first, uuid);
+                    }
+                    if (journal != null) {
+                        journalBalance(uuid, balance);
+                    }
+                }
+                totals.apply(totalDelta, 0);
+                backlog = pendingWrites.size();
+            }
+            checkBacklog(backlog);
+            balances.forEach((uuid, balance) -> {
+                leaderboard.update(uuid, balance);
+                notifyBalanceChanged(uuid);
+            });
+            for (int i = 0; i < size; i++) {
+                if (results[i].success()) {
+                    record(cause, changes.get(i).uuid(),
+                            deltas[i] > 0 ? LedgerEntry.Type.DEPOSIT : LedgerEntry.Type.WITHDRAW, deltas[i], after[i], null);
+                }
+            }
+        } finally {
+            accountLocks.unlockAll(stripes);
+        }
+
+        flushIfImmediate();
+        return results;
+    }
+
+    /**
+     * Marks every change without a result as not applied.
+     */
+    private static EconomyResult[] abortRemaining(EconomyResult[] results) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = new EconomyResult(EconomyStatus.BATCH_ABORTED, Double.NaN);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public CompletableFuture<EconomyResult[]> applyChangesAsync(List<BalanceChange> changes, BatchMode mode) {
+        Ledger.Cause cause = cause(null);
+        return CompletableFuture.supplyAsync(() -> applyChanges(changes, mode, cause), asyncExecutor);
+    }
+
+    /**
+     * Asynchronously transfers money between two accounts.
+     */
+    @Override
+    public CompletableFuture<EconomyResult> transferAsync(UUID from, UUID to, double amount) {
+        return transferAsync(from, to, amount, null);
+    }
+
+    /**
+     * Like {@link #transferAsync(UUID, UUID, double)}, naming who made the transfer in the ledger.
+     */
+    public CompletableFuture<EconomyResult> transferAsync(UUID from, UUID to, double amount, String actor) {
+        Ledger.Cause cause = cause(actor);
+        return CompletableFuture.supplyAsync(() -> transfer(from, to, amount, cause), asyncExecutor);
+    }
+
+    public EconomyResult setBalance(UUID uuid, double amount) {
+        return setBalance(uuid, amount, cause(null));
+    }
+
+    private EconomyResult setBalance(UUID uuid, double amount, Ledger.Cause cause) {
+        long start = System.nanoTime();
+        EconomyResult result = applySetBalance(uuid, amount, cause);
+        setBalanceTimer.recordSince(start);
+        return result;
+    }
+
+    private EconomyResult applySetBalance(UUID uuid, double amount, Ledger.Cause cause) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            return EconomyResult.invalidAmount();
+        }
+
+        long minor = money.toMinor(amount);
+        if (minor < money.toMinor(Config.MIN_BALANCE)) {
+            return new EconomyResult(EconomyStatus.BELOW_MIN_BALANCE, amount);
+        }
+
+        if (minor > money.toMinor(Config.MAX_BALANCE)) {
+            return new EconomyResult(EconomyStatus.EXCEEDS_MAX_BALANCE, amount);
+        }
+
+        long current = lockAccount(uuid);
+        try {
+            balanceCache.put(uuid, minor);
+            queuePendingWrite(uuid, minor, minor - current, 0);
+            record(cause, uuid, LedgerEntry.Type.SET, minor - current, minor, null);
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+
+        flushIfImmediate();
+        return new EconomyResult(EconomyStatus.SUCCESS, money.toMajor(minor));
+    }
+
+    @Override
+    public CompletableFuture<EconomyResult> setBalanceAsync(UUID uuid, double amount) {
+        return setBalanceAsync(uuid, amount, null);
+    }
+
+    /**
+     * Like {@link #setBalanceAsync(UUID, double)}, naming who set the balance in the ledger.
+     */
+    public CompletableFuture<EconomyResult> setBalanceAsync(UUID uuid, double amount, String actor) {
+        Ledger.Cause cause = cause(actor);
+        return CompletableFuture.supplyAsync(() -> setBalance(uuid, amount, cause), asyncExecutor);
+    }
+
+    /**
+     * Converts a deposit, withdrawal or transfer amount to minor units.
+     *
+     * @return the amount, or 0 if it is not a positive finite number of at least one minor unit
+     */
+    private long toMinorAmount(double amount) {
+        if (amount <= 0 || Double.isNaN(amount) || Double.isInfinite(amount)) {
+            return 0L;
+        }
+        return money.toMinor(amount);
+    }
+
+    /**
+     * Who is making a change, for the ledger, or null if the ledger is off. Without an actor the source is the
+     * first other plugin on the call stack, which is how calls through Vault and the API are told apart.
+     */
+    private Ledger.Cause cause(String actor) {
+        if (ledger == null) {
+            return null;
+        }
+        String own = plugin != null ? plugin.getName() : null;
+        if (actor != null || own == null) {
+            return new Ledger.Cause(actor, own);
+        }
+        String caller = WALKER.walk(frames -> frames
+                .limit(MAX_CALLER_FRAMES)
+                .map(frame -> PLUGIN_NAMES.get(frame.getDeclaringClass()))
+                .filter(name -> !name.isEmpty() && !name.equals(own))
+                .findFirst()
+                .orElse(own));
+        return new Ledger.Cause(null, caller);
+    }
+
+    /**
+     * Adds a change to the ledger. Called while holding the account's lock, so entries of one account
+     * are buffered in the order they were applied.
+     */
+    private void record(Ledger.Cause cause, UUID uuid, LedgerEntry.Type type, long delta, long balance, UUID counterparty) {
+        Ledger current = ledger;
+        if (current == null || cause == null) {
+            return;
+        }
+        current.offer(new LedgerEntry(System.currentTimeMillis(), uuid, type, money.toMajor(delta), money.toMajor(balance),
+                counterparty, cause.actor(), cause.source()));
+        if (current.isBacklogged()) {
+            requestLedgerWrite();
+        }
+    }
+
+    public Map<UUID, Double> getTopBalances(int limit) {
+        if (leaderboard.isReady()) {
+            Map<UUID, Double> top = new LinkedHashMap<>();
+            leaderboard.top(limit, (uuid, balance) -> top.put(uuid, money.toMajor(balance)));
+            return top;
+        }
+
+        flushPendingWrites();
+
+        try {
+            return provider.getTopBalances(limit);
+        } catch (SQLException ex) {
+            logger.severe("Failed to fetch top balances: " + ex.getMessage());
+            return Map.of();
+        }
+    }
+
+    /**
+     * Asynchronously fetches top balances.
+     */
+    @Override
+    public CompletableFuture<Map<UUID, Double>> getTopBalancesAsync(int limit) {
+        return CompletableFuture.supplyAsync(() -> getTopBalances(limit), asyncExecutor);
+    }
+
+    /**
+     * A page of {@link Config#BALTOP_PAGE_SIZE} accounts from the leaderboard. Each page is loaded once and shared
+     * for {@link Config#BALTOP_CACHE_TTL_MS}, so any number of viewers cost one load per page.
+     */
+    @Override
+    public CompletableFuture<LeaderboardPage> getTopPageAsync(int page) {
+        long now = System.nanoTime();
+        CachedPage cached = pageCache.compute(page, (number, current) -> current != null && current.isFresh(now)
+                ? current
+                : new CachedPage(CompletableFuture.supplyAsync(() -> loadPage(number), asyncExecutor), pageExpiry(now)));
+        if (pageCache.size() > MAX_CACHED_PAGES) {
+            pageCache.values().removeIf(entry -> !entry.isFresh(now));
+        }
+        return cached.page();
+    }
+
+    private static long pageExpiry(long now) {
+        return now + TimeUnit.MILLISECONDS.toNanos(Config.BALTOP_CACHE_TTL_MS);
+    }
+
+    private LeaderboardPage loadPage(int number) {
+        int size = Config.BALTOP_PAGE_SIZE;
+        if (leaderboard.isReady()) {
+            long offset = (long) (number - 1) * size;
+            List<LeaderboardPage.Entry> entries = new ArrayList<>(size + 1);
+            leaderboard.page(offset, size + 1, (uuid, balance) -> entries.add(
+                    new LeaderboardPage.Entry((int) (offset + entries.size() + 1), uuid, names.name(uuid), money.toMajor(balance))));
+            return toPage(number, entries, size);
+        }
+
+        // Until the leaderboard is ready, walk the database by keyset from the closest earlier page still cached
+        flushPendingWrites();
+        long now = System.nanoTime();
+        int current = 1;
+        LeaderboardPage.Entry cursor = null;
+        for (int previous = number - 1; previous >= 1; previous--) {
+            CachedPage cached = pageCache.get(previous);
+            if (cached != null && cached.isFresh(now) && cached.page().isDone() && !cached.page().isCompletedExceptionally()) {
+                LeaderboardPage page = cached.page().join();
+                if (!page.hasNext()) {
+                    return new LeaderboardPage(number, List.of(), false);
+                }
+                cursor = page.entries().get(page.entries().size() - 1);
+                current = previous + 1;
+                break;
+            }
+        }
+
+        try {
+            while (true) {
+                Map<UUID, Double> rows = cursor == null
+                        ? provider.getTopBalances(size + 1)
+                        : provider.getTopBalancesAfter(cursor.balance(), cursor.uuid(), size + 1);
+                int position = cursor == null ? 1 : cursor.position() + 1;
+                List<LeaderboardPage.Entry> entries = new ArrayList<>(rows.size());
+                for (Map.Entry<UUID, Double> row : rows.entrySet()) {
+                    entries.add(new LeaderboardPage.Entry(position++, row.getKey(), names.name(row.getKey()), row.getValue()));
+                }
+
+                LeaderboardPage page = toPage(current, entries, size);
+                if (current == number) {
+                    return page;
+                }
+                if (!page.hasNext()) {
+                    return new LeaderboardPage(number, List.of(), false);
+                }
+                pageCache.putIfAbsent(current, new CachedPage(CompletableFuture.completedFuture(page), pageExpiry(now)));
+                cursor = page.entries().get(size - 1);
+                current++;
+            }
+        } catch (SQLException ex) {
+            logger.severe("Failed to fetch leaderboard page " + number + ": " + ex.getMessage());
+            return new LeaderboardPage(number, List.of(), false);
+        }
+    }
+
+    /**
+     * Builds a page from up to one entry more than fits on it, which only shows whether another page follows.
+     */
+    private static LeaderboardPage toPage(int number, List<LeaderboardPage.Entry> entries, int size) {
+        boolean hasNext = entries.size() > size;
+        return new LeaderboardPage(number, List.copyOf(hasNext ? entries.subList(0, size) : entries), hasNext);
+    }
+
+    /**
+     * Deletes an account. The deletion is queued like any other write, so the row stays in the
+     * database until the next flush, but loads see the queued deletion and start a fresh account instead.
+     */
+    public void deleteBalance(UUID uuid) {
+        long removed;
+        while (true) {
+            // The stored balance is only needed for the totals, but is read before locking like any other load
+            int epoch = accountLocks.epoch(uuid);
+            boolean cached = balanceCache.contains(uuid);
+            Versioned stored = cached ? null : loadBalance(uuid);
+
+            accountLocks.lock(uuid);
+            removed = balanceCache.remove(uuid);
+            if (removed != BalanceMap.MISSING) {
+                break;
+            }
+            if (!cached && accountLocks.epoch(uuid) == epoch) {
+                removed = stored.balance();
+                break;
+            }
+            accountLocks.unlock(uuid);
+        }
+        try {
+
+            synchronized (pendingLock) {
+                markPending();
+                pendingWrites.delete(uuid);
+                if (journal != null) {
+                    journal.appendDelete(uuid);
+                }
+                if (removed != BalanceMap.MISSING) {
+                    totals.apply(-removed, -1);
+                }
+            }
+            // Only after the deletion is queued: loads that saw the old epoch may have read the old row,
+            // and loads that see the new one will find the deletion first
+            accountLocks.advanceEpoch(uuid);
+            leaderboard.remove(uuid);
+            notifyBalanceChanged(uuid);
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+
+        flushIfImmediate();
+    }
+
+    public void evictFromCache(UUID uuid) {
+        accountLocks.lock(uuid);
+        try {
+            balanceCache.remove(uuid);
+            accountLocks.advanceEpoch(uuid);
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+        evictedSinceFlush.offer(uuid);
+    }
+
+    /**
+     * Whether {@link #getTotalEconomy()} and {@link #getPlayerCount()} are served from memory.
+     */
+    public boolean isTotalsLoaded() {
+        return totals.isReady();
+    }
+
+    public double getTotalEconomy() {
+        if (totals.isReady()) {
+            return money.toMajor(totals.total());
+        }
+
+        flushPendingWrites();
+
+        try {
+            return provider.getTotalBalance();
+        } catch (SQLException ex) {
+            logger.severe("Failed to calculate total economy: " + ex.getMessage());
+            return 0.0;
+        }
+    }
+
+    /**
+     * Asynchronously fetches total economy.
+     */
+    @Override
+    public CompletableFuture<Double> getTotalEconomyAsync() {
+        return CompletableFuture.supplyAsync(this::getTotalEconomy, asyncExecutor);
+    }
+
+    public int getPlayerCount() {
+        if (totals.isReady()) {
+            return (int) totals.accounts();
+        }
+
+        flushPendingWrites();
+
+        try {
+            return provider.getPlayerCount();
+        } catch (SQLException ex) {
+            logger.severe("Failed to count players: " + ex.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Asynchronously fetches player count.
+     */
+    @Override
+    public CompletableFuture<Integer> getPlayerCountAsync() {
+        return CompletableFuture.supplyAsync(this::getPlayerCount, asyncExecutor);
+    }
+
+    public int getPlayerRank(UUID uuid) {
+        if (leaderboard.isReady()) {
+            return leaderboard.rank(uuid);
+        }
+
+        flushPendingWrites();
+
+        try {
+            return provider.getPlayerRank(uuid);
+        } catch (SQLException ex) {
+            logger.severe("Failed to get player rank: " + ex.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> getPlayerRankAsync(UUID uuid) {
+        if (leaderboard.isReady()) {
+            return CompletableFuture.completedFuture(leaderboard.rank(uuid));
+        }
+        return CompletableFuture.supplyAsync(() -> getPlayerRank(uuid), asyncExecutor);
+    }
+
+    /**
+     * The UUID of the player last seen with this name, ignoring case, or null if no player has used it.
+     * Only looks in memory, so it is safe on the main thread.
+     */
+    public UUID resolveName(String name) {
+        return names.resolve(name);
+    }
+
+    /**
+     * The name a player was last seen with, or null if they have never joined.
+     */
+    public String getName(UUID uuid) {
+        return names.name(uuid);
+    }
+
+    /**
+     * Records a player's current name. It is saved with the next flush.
+     */
+    public void updateName(UUID uuid, String name) {
+        names.update(uuid, name);
+    }
+
+    /**
+     * Known player names starting with the prefix, ignoring case, for tab completion. Safe on any thread.
+     */
+    public List<String> completeNames(String prefix, int limit) {
+        return names.complete(prefix, limit);
+    }
+
+    public int getKnownNameCount() {
+        return names.size();
+    }
+
+    public boolean isLedgerEnabled() {
+        return ledger != null;
+    }
+
+    /**
+     * An account's most recent ledger entries, newest first, including those not written yet.
+     */
+    public CompletableFuture<List<LedgerEntry>> getLedgerAsync(UUID uuid, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            writeLedger();
+            try {
+                return provider.getLedger(uuid, limit);
+            } catch (SQLException ex) {
+                logger.severe("Failed to read the ledger: " + ex.getMessage());
+                return List.of();
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * Writes buffered ledger entries in batches of {@link Config#LEDGER_BATCH_SIZE} rows until the buffer is empty.
+     * If a batch fails it is kept and written first next time.
+     */
+    private void writeLedger() {
+        Ledger current = ledger;
+        if (current == null) {
+            return;
+        }
+
+        ledgerLock.lock();
+        try {
+            List<LedgerEntry> batch = new ArrayList<>();
+            while (current.drainTo(batch, Config.LEDGER_BATCH_SIZE) > 0) {
+                try {
+                    provider.saveLedger(batch);
+                } catch (SQLException ex) {
+                    logger.severe("Failed to write " + batch.size() + " ledger entries, retrying later: " + ex.getMessage());
+                    current.requeue(batch);
+                    return;
+                }
+                batch.clear();
+            }
+        } finally {
+            ledgerLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a ledger write on the database threads unless one is already waiting. Never blocks.
+     */
+    private void requestLedgerWrite() {
+        if (asyncExecutor == null || !ledgerWriteQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            asyncExecutor.execute(() -> {
+                ledgerWriteQueued.set(false);
+                writeLedger();
+            });
+        } catch (RejectedExecutionException ex) {
+            ledgerWriteQueued.set(false);
+        }
+    }
+
+    private void scheduleLedgerWrites() {
+        if (plugin == null) {
+            return;
+        }
+
+        long interval = Config.LEDGER_WRITE_INTERVAL_TICKS;
+        ledgerTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::requestLedgerWrite, interval, interval);
+    }
+
+    private void cancelLedgerTask() {
+        if (ledgerTask != null) {
+            ledgerTask.cancel();
+            ledgerTask = null;
+        }
+    }
+
+    public void flushPendingWrites() {
+        // One flush at a time, so an older snapshot can never be written over a newer one
+        flushLock.lock();
+        try {
+            writePendingLocked();
+            writeNames();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void writeNames() {
+        Map<UUID, String> changed = names.takeUnsaved();
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            provider.saveNames(changed);
+        } catch (SQLException ex) {
+            logger.severe("Failed to save player names: " + ex.getMessage());
+            names.requeue(changed);
+        }
+    }
+
+    /**
+     * Writes everything queued so far. Must be called while holding the flush lock.
+     *
+     * @return the totals as of the written snapshot, or null if part of it could not be written
+     */
+    private EconomyTotals.Snapshot writePendingLocked() {
+        PendingWrites snapshot;
+        EconomyTotals.Snapshot cut;
+        synchronized (pendingLock) {
+            cut = totals.snapshot();
+            if (pendingWrites.isEmpty()) {
+                return cut;
+            }
+            snapshot = pendingWrites;
+            pendingWrites = new PendingWrites();
+            flushingWrites = snapshot;
+            flushingSince = pendingSince;
+            pendingSince = 0;
+            if (journal != null) {
+                journal.rotate();
+            }
+        }
+
+        flushGeneration++;
+        long start = System.nanoTime();
+        flushSizes.record(snapshot.size());
+        try {
+            boolean complete = writeSnapshot(snapshot);
+            synchronized (pendingLock) {
+                // Whatever was not written has been re-queued and re-journaled by now
+                if (journal != null) {
+                    journal.retire();
+                }
+            }
+            return complete ? cut : null;
+        } finally {
+            synchronized (pendingLock) {
+                flushingWrites = null;
+                flushingSince = 0;
+            }
+            if (shared) {
+                releaseBases(snapshot);
+            }
+            flushTimer.recordSince(start);
+        }
     }
 
-    public boolean hasBalance(UUID uuid) {
-        if (balanceCache.containsKey(uuid)) {
-            return true;
+    /**
+     * Writes a snapshot in batches of {@link Config#WRITE_BATCH_SIZE} rows, skipping rows whose value
+     * the database already holds. Nothing writes to a snapshot once it is swapped out, so it is read without locking.
+     * If a batch fails, it and everything after it go back into the queue, except for accounts that
+     * were changed again in the meantime.
+     *
+     * @return whether the whole snapshot was written
+     */
+    private boolean writeSnapshot(PendingWrites snapshot) {
+        UUID evicted;
+        while ((evicted = evictedSinceFlush.poll()) != null) {
+            persisted.remove(evicted);
+            if (shared) {
+                releaseBase(evicted);
+            }
         }
 
-        synchronized (dbLock) {
+        List<Map<UUID, Double>> batches = new ArrayList<>();
+        // Accounts changed together go in the same transaction even if that makes it larger than the batch size,
+        // so a crash without the journal can never save one side of a transfer
+        Map<UUID, Map<UUID, Double>> groups = new HashMap<>();
+        snapshot.forEachBalance((uuid, balance) -> {
+            Versioned base = bases.get(uuid);
+            if (base != null ? base.balance() == balance && base.version() != NOT_STORED : persisted.get(uuid) == balance) {
+                return;
+            }
+            if (snapshot.isLinked(uuid)) {
+                groups.computeIfAbsent(snapshot.group(uuid), ignored -> new HashMap<>()).put(uuid, money.toMajor(balance));
+            } else {
+                batchFor(batches, 1, snapshot.size()).put(uuid, money.toMajor(balance));
+            }
+        });
+        groups.values().forEach(group -> batchFor(batches, group.size(), snapshot.size()).putAll(group));
+
+        for (int i = 0; i < batches.size(); i++) {
+            Map<UUID, Double> batch = batches.get(i);
             try {
-                return provider.hasBalance(uuid);
+                if (shared) {
+                    writeShared(batch);
+                } else {
+                    provider.saveBalances(batch);
+                    batch.forEach((uuid, balance) -> persisted.put(uuid, money.toMinor(balance)));
+                }
             } catch (SQLException ex) {
-                plugin.getLogger().severe("Failed to check balance for " + uuid + ": " + ex.getMessage());
+                logger.severe("Failed to flush balances: " + ex.getMessage());
+                requeue(batches.subList(i, batches.size()), snapshot.deletes());
                 return false;
             }
         }
-    }
 
-    public double getBalance(UUID uuid) {
-        Double cached = balanceCache.get(uuid);
-        if (cached != null) {
-            return cached;
+        Iterator<UUID> deletes = snapshot.deletes().iterator();
+        while (deletes.hasNext()) {
+            UUID uuid = deletes.next();
+            try {
+                provider.deleteBalance(uuid);
+            } catch (SQLException ex) {
+                logger.severe("Failed to delete balance for " + uuid + ": " + ex.getMessage());
+                List<UUID> remaining = new ArrayList<>();
+                remaining.add(uuid);
+                deletes.forEachRemaining(remaining::add);
+                requeue(List.of(), remaining);
+                return false;
+            }
+            persisted.remove(uuid);
+            if (shared) {
+                forgetDeletedRow(uuid);
+            }
         }
-        // Synchronous fallback for Vault compatibility
-        return loadBalance(uuid);
+        return true;
     }
 
     /**
-     * Asynchronously loads and caches a player's balance.
-     * Use this for preloading on join to avoid main thread DB access.
+     * @return the last batch if it has room for {@code accounts} more, otherwise a new one. A new batch is returned
+     * even if it has no room, so a group larger than the batch size is written on its own
      */
-    public CompletableFuture<Double> loadBalanceAsync(UUID uuid) {
-        Double cached = balanceCache.get(uuid);
-        if (cached != null) {
-            return CompletableFuture.completedFuture(cached);
+    private static Map<UUID, Double> batchFor(List<Map<UUID, Double>> batches, int accounts, int total) {
+        int batchSize = Config.WRITE_BATCH_SIZE;
+        Map<UUID, Double> batch = batches.isEmpty() ? null : batches.get(batches.size() - 1);
+        if (batch == null || batch.size() + accounts > batchSize) {
+            batch = new HashMap<>(Math.min(Math.max(batchSize, accounts), total) * 4 / 3 + 1);
+            batches.add(batch);
         }
-        return CompletableFuture.supplyAsync(() -> {
-            double balance = loadBalance(uuid);
-            balanceCache.put(uuid, balance);
-            return balance;
-        }, asyncExecutor);
+        return batch;
     }
 
-    private double loadBalance(UUID uuid) {
-        synchronized (dbLock) {
-            try {
-                Double balance = provider.loadBalance(uuid);
-                if (balance != null) {
-                    return balance;
+    /**
+     * Writes a batch to a shared database. Accounts with a known base are saved as the amount they changed by here,
+     * which the database adds to whatever other servers saved meanwhile; the result is then folded back into this
+     * server's balance. The rest, such as balances journaled by a version without bases, overwrite the stored balance.
+     * Overwrites go first, so if the additions fail the whole batch can be queued again without adding anything twice.
+     * Each amount is journaled before it is added, so a restart after a crash can tell whether it was.
+     */
+    private void writeShared(Map<UUID, Double> batch) throws SQLException {
+        Map<UUID, BalanceAddition> additions = new HashMap<>(batch.size() * 4 / 3 + 1);
+        Map<UUID, Double> absolute = new HashMap<>();
+        synchronized (pendingLock) {
+            batch.forEach((uuid, balance) -> {
+                Versioned base = bases.get(uuid);
+                if (base == null) {
+                    absolute.put(uuid, balance);
+                    return;
                 }
-            } catch (SQLException ex) {
-                plugin.getLogger().severe("Failed to load balance for " + uuid + ": " + ex.getMessage());
-            }
+                long amount = money.toMinor(balance) - base.balance();
+                additions.put(uuid, new BalanceAddition(money.toMajor(amount), balance));
+                if (journal != null) {
+                    journal.appendSaving(uuid, amount, base.version());
+                }
+            });
         }
 
-        double defaultBalance = Config.DEFAULT_BALANCE;
-        queuePendingWrite(uuid, defaultBalance);
-        return defaultBalance;
+        if (!absolute.isEmpty()) {
+            provider.saveBalances(absolute);
+            absolute.forEach((uuid, balance) -> persisted.put(uuid, money.toMinor(balance)));
+        }
+        if (!additions.isEmpty()) {
+            Map<UUID, StoredBalance> stored = sharedProvider.addToBalances(additions);
+            stored.forEach((uuid, row) -> rebaseWritten(uuid, money.toMinor(batch.get(uuid)), row));
+        }
     }
 
-    public EconomyResult deposit(UUID uuid, double amount) {
-        if (amount <= 0 || Double.isNaN(amount) || Double.isInfinite(amount)) {
-            return EconomyResult.invalidAmount();
+    /**
+     * Takes the row an addition left behind as the account's new base. Anything in it beyond the balance
+     * that was written came from other servers, and moves this server's balance by the same amount.
+     */
+    private void rebaseWritten(UUID uuid, long written, StoredBalance row) {
+        long stored = money.toMinor(row.balance());
+        accountLocks.lock(uuid);
+        try {
+            bases.put(uuid, new Versioned(stored, row.version()));
+            applyRemoteChange(uuid, stored - written, stored);
+        } finally {
+            accountLocks.unlock(uuid);
         }
+    }
 
-        double newBalance;
-        synchronized (dbLock) {
-            double current = getBalance(uuid);
-            newBalance = current + amount;
+    /**
+     * Forgets the base of an account whose row was just deleted. If the account was created again since,
+     * it started from the default balance and its next save creates a new row.
+     */
+    private void forgetDeletedRow(UUID uuid) {
+        accountLocks.lock(uuid);
+        try {
+            bases.put(uuid, new Versioned(money.toMinor(Config.DEFAULT_BALANCE), NOT_STORED));
+            journalQueued(uuid);
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+    }
 
-            if (newBalance > Config.MAX_BALANCE) {
-                return new EconomyResult(EconomyStatus.EXCEEDS_MAX_BALANCE, current);
+    /**
+     * Releases the bases of a written snapshot's accounts that are no longer in use.
+     * Called once the snapshot is no longer readable as the flushing queue.
+     */
+    private void releaseBases(PendingWrites snapshot) {
+        snapshot.forEachBalance((uuid, balance) -> {
+            // Cached accounts keep their base; if they are evicted later, the next flush releases it
+            if (!balanceCache.contains(uuid)) {
+                releaseBase(uuid);
             }
-
-            balanceCache.put(uuid, newBalance);
+        });
+        for (UUID uuid : snapshot.deletes()) {
+            releaseBase(uuid);
         }
-
-        queuePendingWrite(uuid, newBalance);
-        return new EconomyResult(EconomyStatus.SUCCESS, newBalance);
     }
 
-    public EconomyResult withdraw(UUID uuid, double amount) {
-        if (amount <= 0 || Double.isNaN(amount) || Double.isInfinite(amount)) {
-            return EconomyResult.invalidAmount();
+    /**
+     * Drops the base of an account that is neither cached nor queued, so bases do not outlive the accounts in use.
+     * Loads in progress may have read a queued value without a base, so they start over and read the database.
+     */
+    private void releaseBase(UUID uuid) {
+        accountLocks.lock(uuid);
+        try {
+            if (balanceCache.contains(uuid)) {
+                return;
+            }
+            synchronized (pendingLock) {
+                if (pendingWrites.contains(uuid) || flushingWrites != null && flushingWrites.contains(uuid)) {
+                    return;
+                }
+            }
+            if (bases.remove(uuid) != null) {
+                accountLocks.advanceEpoch(uuid);
+            }
+        } finally {
+            accountLocks.unlock(uuid);
         }
+    }
 
-        double newBalance;
-        synchronized (dbLock) {
-            double current = getBalance(uuid);
-            newBalance = current - amount;
-
-            if (newBalance < Config.MIN_BALANCE) {
-                return new EconomyResult(EconomyStatus.INSUFFICIENT_FUNDS, current);
+    /**
+     * Reads the change log from where this server left off and applies what other servers changed.
+     * Runs under the flush lock, so no snapshot is being written while bases and balances move.
+     * If this server could not read the log for longer than it is kept, entries may be gone, so every cached
+     * account is reloaded instead.
+     */
+    private void pollUpdates() {
+        boolean prune = false;
+        flushLock.lock();
+        try {
+            long now = System.nanoTime();
+            if (now - lastUpdatePoll > TimeUnit.MINUTES.toNanos(Config.MYSQL_SYNC_RETENTION_MINUTES)) {
+                logger.warning("Fell behind on changes made by other servers; reloading every cached balance.");
+                reloadCache();
             }
 
-            balanceCache.put(uuid, newBalance);
-        }
-
-        queuePendingWrite(uuid, newBalance);
-        return new EconomyResult(EconomyStatus.SUCCESS, newBalance);
-    }
+            updateCursor.expire(now);
+            long after = updateCursor.position();
+            int limit = Config.MYSQL_SYNC_BATCH_SIZE;
+            List<BalanceUpdate> page;
+            do {
+                page = sharedProvider.getBalanceUpdates(after, limit);
+                for (BalanceUpdate update : page) {
+                    after = update.sequence();
+                    if (updateCursor.accept(after, now)) {
+                        applyUpdate(update);
+                    }
+                }
+            } while (page.size() >= limit);
 
-    public EconomyResult transfer(UUID from, UUID to, double amount) {
-        if (from.equals(to)) {
-            return new EconomyResult(EconomyStatus.SAME_ACCOUNT, Double.NaN);
+            lastUpdatePoll = now;
+            if (now - lastUpdatePrune >= UPDATE_PRUNE_INTERVAL_NANOS) {
+                lastUpdatePrune = now;
+                prune = true;
+            }
+        } catch (SQLException ex) {
+            logger.warning("Failed to read changes made by other servers: " + ex.getMessage());
+        } finally {
+            flushLock.unlock();
         }
 
-        if (amount <= 0 || Double.isNaN(amount) || Double.isInfinite(amount)) {
-            return EconomyResult.invalidAmount();
+        if (prune) {
+            try {
+                sharedProvider.pruneBalanceUpdates(System.currentTimeMillis()
+                        - TimeUnit.MINUTES.toMillis(Config.MYSQL_SYNC_RETENTION_MINUTES));
+            } catch (SQLException ex) {
+                logger.warning("Failed to prune the change log: " + ex.getMessage());
+            }
         }
+    }
 
-        synchronized (dbLock) {
-            double senderBalance = getBalance(from);
-            double receiverBalance = getBalance(to);
+    /**
+     * Applies one change log entry. Entries no newer than the account's base, such as this server's own saves,
+     * are skipped. Accounts that are not cached only have loads in progress restarted, so they read the new row.
+     * Must be called while holding the flush lock.
+     */
+    private void applyUpdate(BalanceUpdate update) {
+        UUID uuid = update.uuid();
+        accountLocks.lock(uuid);
+        try {
+            Versioned base = bases.get(uuid);
+            if (base != null && !update.isDeletion() && update.version() <= base.version()) {
+                return;
+            }
+            remoteUpdates.increment();
+            long cached = balanceCache.get(uuid);
+            if (cached == BalanceMap.MISSING) {
+                accountLocks.advanceEpoch(uuid);
+            }
+            boolean queued;
+            synchronized (pendingLock) {
+                queued = pendingWrites.contains(uuid);
+            }
 
-            if ((senderBalance - amount) < Config.MIN_BALANCE) {
-                return new EconomyResult(EconomyStatus.INSUFFICIENT_FUNDS, senderBalance);
+            if (update.isDeletion()) {
+                if (base != null && base.version() == NOT_STORED) {
+                    // Already known to have no row, for example after this server deleted it
+                    return;
+                }
+                if (!queued) {
+                    dropDeleted(uuid, cached);
+                } else if (base != null) {
+                    // Changes made here since are kept, on top of the default balance a new account starts with
+                    long initial = money.toMinor(Config.DEFAULT_BALANCE);
+                    bases.put(uuid, new Versioned(initial, NOT_STORED));
+                    applyRemoteChange(uuid, initial - base.balance(), initial);
+                }
+                return;
             }
 
-            if ((receiverBalance + amount) > Config.MAX_BALANCE) {
-                return new EconomyResult(EconomyStatus.EXCEEDS_MAX_BALANCE, receiverBalance);
+            long stored = money.toMinor(update.balance());
+            if (base != null) {
+                bases.put(uuid, new Versioned(stored, update.version()));
+                applyRemoteChange(uuid, stored - base.balance(), stored);
+            } else if (cached != BalanceMap.MISSING && !queued) {
+                // Cached without a base, such as after a balance recovered from the journal was saved: adopt the row
+                bases.put(uuid, new Versioned(stored, update.version()));
+                applyRemoteChange(uuid, stored - cached, stored);
+            } else if (!queued) {
+                leaderboard.update(uuid, stored);
+                notifyBalanceChanged(uuid);
             }
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+    }
 
-            double newSenderBalance = senderBalance - amount;
-            double newReceiverBalance = receiverBalance + amount;
+    /**
+     * Moves an account by an amount another server added: its cached and queued balances, the journal and the totals.
+     * Must be called while holding the account's stripe and the flush lock.
+     *
+     * @param stored the balance now in the database, shown on the leaderboard if this server holds no other
+     */
+    private void applyRemoteChange(UUID uuid, long delta, long stored) {
+        if (delta == 0) {
+            // The base still moved, and the journal has to show the one queued changes are now saved against
+            journalQueued(uuid);
+            return;
+        }
 
-            try {
-                provider.executeTransfer(from, newSenderBalance, to, newReceiverBalance);
-            } catch (SQLException ex) {
-                plugin.getLogger().severe("Failed to execute transactional transfer: " + ex.getMessage());
-                return new EconomyResult(EconomyStatus.DATABASE_ERROR, senderBalance);
+        long balance = balanceCache.get(uuid);
+        if (balance != BalanceMap.MISSING) {
+            balance += delta;
+            balanceCache.put(uuid, balance);
+        } else {
+            // A load in progress may have read the old balance
+            accountLocks.advanceEpoch(uuid);
+        }
+        synchronized (pendingLock) {
+            long queued = pendingWrites.get(uuid);
+            if (queued != BalanceMap.MISSING) {
+                queued += delta;
+            } else if (balance == BalanceMap.MISSING && !pendingWrites.contains(uuid)
+                    && flushingWrites != null && flushingWrites.contains(uuid)) {
+                // Loads read the balance being flushed until the flush ends, so queue the one actually stored
+                markPending();
+                queued = stored;
             }
-
-            balanceCache.put(from, newSenderBalance);
-            balanceCache.put(to, newReceiverBalance);
-            removePendingWrite(from);
-            removePendingWrite(to);
+            if (queued != BalanceMap.MISSING) {
+                pendingWrites.put(uuid, queued);
+                if (journal != null) {
+                    journalBalance(uuid, queued);
+                }
+                if (balance == BalanceMap.MISSING) {
+                    balance = queued;
+                }
+            }
+            totals.apply(delta, 0);
         }
+        leaderboard.update(uuid, balance != BalanceMap.MISSING ? balance : stored);
+        notifyBalanceChanged(uuid);
+    }
 
-        return new EconomyResult(EconomyStatus.SUCCESS, Double.NaN);
+    /**
+     * Journals the queued balance of an account again after its base changed. Must be called while holding the account's stripe.
+     */
+    private void journalQueued(UUID uuid) {
+        synchronized (pendingLock) {
+            long queued = pendingWrites.get(uuid);
+            if (queued != BalanceMap.MISSING && journal != null) {
+                journalBalance(uuid, queued);
+            }
+        }
     }
 
     /**
-     * Asynchronously transfers money between two accounts.
+     * Journals a queued balance, on a shared database together with the base it is saved against.
+     * Must be called while holding the pending lock, with the journal open.
      */
-    public CompletableFuture<EconomyResult> transferAsync(UUID from, UUID to, double amount) {
-        return CompletableFuture.supplyAsync(() -> transfer(from, to, amount), asyncExecutor);
+    private void journalBalance(UUID uuid, long balance) {
+        Versioned base = shared ? bases.get(uuid) : null;
+        if (base != null) {
+            journal.append(uuid, balance, base.balance(), base.version());
+        } else {
+            journal.append(uuid, balance);
+        }
     }
 
-    public EconomyResult setBalance(UUID uuid, double amount) {
-        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
-            return EconomyResult.invalidAmount();
+    /**
+     * Forgets an account another server deleted. Must be called while holding the account's stripe.
+     */
+    private void dropDeleted(UUID uuid, long cached) {
+        if (cached != BalanceMap.MISSING) {
+            balanceCache.remove(uuid);
+            synchronized (pendingLock) {
+                totals.apply(-cached, -1);
+            }
         }
+        bases.remove(uuid);
+        accountLocks.advanceEpoch(uuid);
+        leaderboard.remove(uuid);
+        notifyBalanceChanged(uuid);
+    }
 
-        if (amount < Config.MIN_BALANCE) {
-            return new EconomyResult(EconomyStatus.BELOW_MIN_BALANCE, amount);
+    /**
+     * Evicts every cached account, so each is read from the database again when next used.
+     * Queued changes keep their base and are still saved as additions.
+     */
+    private void reloadCache() {
+        List<UUID> cached = new ArrayList<>(balanceCache.size());
+        balanceCache.forEach((uuid, balance) -> cached.add(uuid));
+        for (UUID uuid : cached) {
+            evictFromCache(uuid);
         }
+    }
 
-        if (amount > Config.MAX_BALANCE) {
-            return new EconomyResult(EconomyStatus.EXCEEDS_MAX_BALANCE, amount);
+    /**
+     * Starts reading the change log on the database threads unless a read is already waiting. Never blocks.
+     */
+    private void requestUpdatePoll() {
+        if (asyncExecutor == null || !updatePollQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            asyncExecutor.execute(() -> {
+                updatePollQueued.set(false);
+                pollUpdates();
+            });
+        } catch (RejectedExecutionException ex) {
+            updatePollQueued.set(false);
         }
+    }
 
-        synchronized (dbLock) {
-            balanceCache.put(uuid, amount);
+    private void scheduleSync() {
+        if (plugin == null) {
+            return;
         }
 
-        queuePendingWrite(uuid, amount);
-        return new EconomyResult(EconomyStatus.SUCCESS, amount);
+        long interval = Config.MYSQL_SYNC_POLL_INTERVAL_TICKS;
+        syncTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::requestUpdatePoll, interval, interval);
     }
 
-    public Map<UUID, Double> getTopBalances(int limit) {
-        flushPendingWrites();
+    private void cancelSyncTask() {
+        if (syncTask != null) {
+            syncTask.cancel();
+            syncTask = null;
+        }
+    }
 
-        synchronized (dbLock) {
-            try {
-                return provider.getTopBalances(limit);
-            } catch (SQLException ex) {
-                plugin.getLogger().severe("Failed to fetch top balances: " + ex.getMessage());
-                return Map.of();
+    /**
+     * Puts unwritten changes from a failed flush back into the queue and the journal.
+     * Accounts with a newer queued change keep that change.
+     */
+    private void requeue(List<Map<UUID, Double>> batches, Iterable<UUID> deletes) {
+        synchronized (pendingLock) {
+            if (pendingSince == 0 || flushingSince - pendingSince < 0) {
+                pendingSince = flushingSince;
+            }
+            for (Map<UUID, Double> batch : batches) {
+                // Each batch held whole groups, so keeping it together keeps them together on the retry
+                UUID first = batch.isEmpty() ? null : batch.keySet().iterator().next();
+                batch.forEach((uuid, balance) -> {
+                    pendingWrites.link(first, uuid);
+                    if (!pendingWrites.contains(uuid)) {
+                        long minor = money.toMinor(balance);
+                        pendingWrites.put(uuid, minor);
+                        if (journal != null) {
+                            journalBalance(uuid, minor);
+                        }
+                    }
+                });
+            }
+            for (UUID uuid : deletes) {
+                if (!pendingWrites.contains(uuid)) {
+                    pendingWrites.delete(uuid);
+                    if (journal != null) {
+                        journal.appendDelete(uuid);
+                    }
+                }
             }
         }
     }
 
     /**
-     * Asynchronously fetches top balances.
+     * Starts the flush lag clock if the queue was empty. Must be called while holding the pending lock.
      */
-    public CompletableFuture<Map<UUID, Double>> getTopBalancesAsync(int limit) {
-        return CompletableFuture.supplyAsync(() -> getTopBalances(limit), asyncExecutor);
+    private void markPending() {
+        if (pendingSince == 0) {
+            pendingSince = System.nanoTime();
+        }
     }
 
-    public void deleteBalance(UUID uuid) {
-        balanceCache.remove(uuid);
-        removePendingWrite(uuid);
-
-        synchronized (dbLock) {
-            try {
-                provider.deleteBalance(uuid);
-            } catch (SQLException ex) {
-                plugin.getLogger().severe("Failed to delete balance for " + uuid + ": " + ex.getMessage());
+    /**
+     * Records a balance for the next flush, the journal and the leaderboard, and applies the change to the totals.
+     * Callers that mutate the cache do this while still holding the account lock,
+     * so queued values follow the same order as the cache.
+     */
+    private void queuePendingWrite(UUID uuid, long amount, long delta, int accountDelta) {
+        int backlog;
+        synchronized (pendingLock) {
+            markPending();
+            pendingWrites.put(uuid, amount);
+            if (journal != null) {
+                journalBalance(uuid, amount);
             }
+            totals.apply(delta, accountDelta);
+            backlog = pendingWrites.size();
         }
+        checkBacklog(backlog);
+        leaderboard.update(uuid, amount);
+        notifyBalanceChanged(uuid);
     }
 
-    public void evictFromCache(UUID uuid) {
-        balanceCache.remove(uuid);
-    }
-
-    public double getTotalEconomy() {
-        flushPendingWrites();
+    /**
+     * Starts an early flush once more than {@link Config#MAX_PENDING_WRITES} accounts are waiting,
+     * and warns if the queue stays that long while a flush is already running.
+     * Callers may hold account locks, so this never blocks.
+     */
+    private void checkBacklog(int backlog) {
+        if (backlog < Config.MAX_PENDING_WRITES || asyncExecutor == null) {
+            return;
+        }
 
-        synchronized (dbLock) {
+        if (earlyFlushQueued.compareAndSet(false, true)) {
             try {
-                return provider.getTotalBalance();
-            } catch (SQLException ex) {
-                plugin.getLogger().severe("Failed to calculate total economy: " + ex.getMessage());
-                return 0.0;
+                asyncExecutor.execute(() -> {
+                    try {
+                        flushPendingWrites();
+                    } finally {
+                        earlyFlushQueued.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                earlyFlushQueued.set(false);
+            }
+        } else {
+            long now = System.currentTimeMillis();
+            if (now - lastBacklogWarning >= 60_000L) {
+                lastBacklogWarning = now;
+                logger.warning("The database is falling behind: " + backlog + " accounts are waiting to be saved.");
             }
         }
     }
 
     /**
-     * Asynchronously fetches total economy.
+     * Flushes straight away when immediate writes are configured. Always called after the
+     * account locks are released so provider I/O never blocks other accounts.
      */
-    public CompletableFuture<Double> getTotalEconomyAsync() {
-        return CompletableFuture.supplyAsync(this::getTotalEconomy, asyncExecutor);
+    private void flushIfImmediate() {
+        if (Config.SAVE_INTERVAL_TICKS <= 0) {
+            flushPendingWrites();
+        }
     }
 
-    public int getPlayerCount() {
-        flushPendingWrites();
-
-        synchronized (dbLock) {
-            try {
-                return provider.getPlayerCount();
-            } catch (SQLException ex) {
-                plugin.getLogger().severe("Failed to count players: " + ex.getMessage());
-                return 0;
-            }
+    private void scheduleAutoSave() {
+        long interval = Config.SAVE_INTERVAL_TICKS;
+        if (interval <= 0 || plugin == null) {
+            return;
         }
+
+        autoSaveTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(
+                plugin,
+                this::flushPendingWrites,
+                interval,
+                interval
+        );
     }
 
     /**
-     * Asynchronously fetches player count.
+     * Moves rows from a legacy table layout in small chunks on a background thread.
+     * The provider serves reads from both layouts meanwhile, so the server does not wait for it.
      */
-    public CompletableFuture<Integer> getPlayerCountAsync() {
-        return CompletableFuture.supplyAsync(this::getPlayerCount, asyncExecutor);
-    }
-
-    public int getPlayerRank(UUID uuid) {
-        flushPendingWrites();
+    private void startMigration() {
+        if (plugin == null) {
+            return;
+        }
 
-        synchronized (dbLock) {
+        migrationThread = new Thread(() -> {
+            long moved = 0;
             try {
-                return provider.getPlayerRank(uuid);
+                int chunk;
+                while ((chunk = migrateChunk()) > 0) {
+                    if (moved == 0) {
+                        logger.info("Migrating balances to the new table layout in the background...");
+                    }
+                    moved += chunk;
+                    Thread.sleep(Config.MIGRATION_PAUSE_MS);
+                }
+                if (moved > 0) {
+                    logger.info("Migrated " + moved + " balances to the new table layout.");
+                }
+            } catch (InterruptedException ex) {
+                logger.info("Balance migration paused after " + moved + " rows; it resumes on the next start.");
             } catch (SQLException ex) {
-                plugin.getLogger().severe("Failed to get player rank: " + ex.getMessage());
-                return -1;
+                logger.severe("Balance migration stopped after " + moved + " rows, it resumes on the next start: " + ex.getMessage());
             }
-        }
+        }, "SimpleEconomy-Migration");
+        migrationThread.setDaemon(true);
+        migrationThread.start();
     }
 
-    public void flushPendingWrites() {
-        Map<UUID, Double> snapshot;
-        synchronized (pendingLock) {
-            if (pendingWrites.isEmpty()) {
-                return;
-            }
-            snapshot = new HashMap<>(pendingWrites);
-            pendingWrites.clear();
-        }
-
-        synchronized (dbLock) {
+    /**
+     * Moves the next chunk of legacy rows, trying again after a pause whenever the database picked the migration
+     * as the victim of a deadlock with a concurrent save. The chunk was rolled back, so nothing is moved twice.
+     */
+    private int migrateChunk() throws SQLException, InterruptedException {
+        while (true) {
             try {
-                provider.saveBalances(snapshot);
+                return provider.migrateLegacyRows(Config.MIGRATION_BATCH_SIZE);
             } catch (SQLException ex) {
-                plugin.getLogger().severe("Failed to flush balances: " + ex.getMessage());
-                synchronized (pendingLock) {
-                    snapshot.forEach((uuid, value) -> pendingWrites.putIfAbsent(uuid, value));
+                if (!(ex instanceof SQLTransactionRollbackException) && ex.getErrorCode() != MYSQL_DEADLOCK) {
+                    throw ex;
                 }
+                Thread.sleep(Config.MIGRATION_PAUSE_MS);
             }
         }
     }
 
-    private void queuePendingWrite(UUID uuid, double amount) {
-        synchronized (pendingLock) {
-            pendingWrites.put(uuid, amount);
+    /**
+     * Stops accepting tasks and waits a bounded time for those already submitted, interrupting any still running after it.
+     */
+    private void stopExecutor() {
+        if (asyncExecutor == null) {
+            return;
         }
-
-        if (Config.SAVE_INTERVAL_TICKS <= 0) {
-            flushPendingWrites();
+        asyncExecutor.shutdown();
+        try {
+            if (!asyncExecutor.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warning("Database tasks still running after " + EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS
+                        + " seconds; interrupting them. Changes they make after this may be lost.");
+                asyncExecutor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            asyncExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
         }
     }
 
-    private void removePendingWrite(UUID uuid) {
-        synchronized (pendingLock) {
-            pendingWrites.remove(uuid);
+    private void stopMigration() {
+        if (migrationThread == null) {
+            return;
+        }
+        migrationThread.interrupt();
+        try {
+            migrationThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
+        migrationThread = null;
     }
 
-    private void scheduleAutoSave() {
-        long interval = Config.SAVE_INTERVAL_TICKS;
-        if (interval <= 0) {
+    private void scheduleReconcile() {
+        long interval = Config.TOTALS_RECONCILE_INTERVAL_TICKS;
+        if (interval <= 0 || plugin == null) {
             return;
         }
 
-        autoSaveTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(
+        reconcileTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(
                 plugin,
-                this::flushPendingWrites,
+                this::reconcileTotals,
                 interval,
                 interval
         );
     }
 
+    private void cancelReconcileTask() {
+        if (reconcileTask != null) {
+            reconcileTask.cancel();
+            reconcileTask = null;
+        }
+    }
+
     private void restartAutoSave() {
         cancelAutoSaveTask();
         scheduleAutoSave();
@@ -389,17 +2466,28 @@ public class DatabaseManager {
     }
 
     public void shutdown() {
+        if (mainThreadDetector != null) {
+            mainThreadDetector.configure(false, 0);
+        }
         cancelAutoSaveTask();
+        cancelReconcileTask();
+        cancelLedgerTask();
+        cancelSyncTask();
+        stopMigration();
+        // Async deposits, withdrawals and transfers still running would otherwise change balances after the final flush
+        stopExecutor();
         flushPendingWrites();
+        writeLedger();
 
-        if (asyncExecutor != null) {
-            asyncExecutor.shutdown();
+        synchronized (pendingLock) {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
         }
 
-        synchronized (dbLock) {
-            if (provider != null) {
-                provider.shutdown();
-            }
+        if (provider != null) {
+            provider.shutdown();
         }
     }
 
@@ -8,6 +8,8 @@ public enum EconomyStatus {
     EXCEEDS_MAX_BALANCE,
     BELOW_MIN_BALANCE,
     SAME_ACCOUNT,
+    // Part of an all-or-nothing batch that was rolled back because another change in it failed
+    BATCH_ABORTED,
     DATABASE_ERROR
 }
 
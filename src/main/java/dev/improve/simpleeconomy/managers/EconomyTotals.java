@@ -0,0 +1,62 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals for the whole economy: the money supply in minor units and the number of accounts.
+ * Balance changes add their deltas without locking, and a periodic reconcile against the
+ * database corrects any drift. Reads are O(1) and never block.
+ */
+final class EconomyTotals {
+
+    private final LongAdder total = new LongAdder();
+    private final LongAdder accounts = new LongAdder();
+
+    private volatile long totalCorrection;
+    private volatile long accountCorrection;
+    private volatile boolean ready;
+
+    /**
+     * Totals captured at a point where every applied delta was also queued for saving.
+     */
+    record Snapshot(long total, long accounts) {
+    }
+
+    void apply(long delta, int accountDelta) {
+        if (delta != 0) {
+            total.add(delta);
+        }
+        if (accountDelta != 0) {
+            accounts.add(accountDelta);
+        }
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(total(), accounts());
+    }
+
+    /**
+     * Shifts the totals so that the state captured in {@code cut} matches what the database reports for it.
+     * Only one reconcile may run at a time.
+     */
+    void reconcile(Snapshot cut, long storedTotal, long storedAccounts) {
+        totalCorrection += storedTotal - cut.total();
+        accountCorrection += storedAccounts - cut.accounts();
+        ready = true;
+    }
+
+    /**
+     * Whether the totals have been reconciled at least once. Before that they only hold deltas since startup.
+     */
+    boolean isReady() {
+        return ready;
+    }
+
+    long total() {
+        return total.sum() + totalCorrection;
+    }
+
+    long accounts() {
+        return accounts.sum() + accountCorrection;
+    }
+}
@@ -0,0 +1,294 @@
+package dev.improve.simpleeconomy.managers;
+
+import dev.improve.simpleeconomy.database.DatabaseProvider;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory ranking of every account, in the providers' {@link DatabaseProvider#RANKING} order.
+ * Backed by an order-statistic treap, so top-N, page and rank queries cost O(log n) without touching the database.
+ * Balance changes are queued without locking and applied in batches by the next reader,
+ * or by the writer that fills the queue.
+ */
+final class Leaderboard {
+
+    private static final int DRAIN_THRESHOLD = 1024;
+
+    private final ConcurrentLinkedQueue<Update> updates = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<UUID, Node> nodes = new HashMap<>();
+
+    private Node root;
+    private Node splitLeft;
+    private Node splitRight;
+    private Set<UUID> touchedWhileSeeding = new HashSet<>();
+    private volatile boolean ready;
+
+    private record Update(UUID uuid, long balance, boolean removed) {
+    }
+
+    private static final class Node {
+        final UUID uuid;
+        final long balance;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(UUID uuid, long balance) {
+            this.uuid = uuid;
+            this.balance = balance;
+            this.priority = ThreadLocalRandom.current().nextInt();
+        }
+    }
+
+    /**
+     * Whether the initial load has finished. Until then queries should go to the database.
+     */
+    boolean isReady() {
+        return ready;
+    }
+
+    void update(UUID uuid, long balance) {
+        enqueue(new Update(uuid, balance, false));
+    }
+
+    void remove(UUID uuid) {
+        enqueue(new Update(uuid, 0L, true));
+    }
+
+    private void enqueue(Update update) {
+        updates.offer(update);
+        if (queued.incrementAndGet() >= DRAIN_THRESHOLD && lock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Adds a row read from the database during the initial load.
+     * Accounts that changed since the load started already hold a newer value and are skipped.
+     */
+    void seed(UUID uuid, long balance) {
+        lock.lock();
+        try {
+            drain();
+            if (!nodes.containsKey(uuid) && !touchedWhileSeeding.contains(uuid)) {
+                insert(new Node(uuid, balance));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void finishSeeding() {
+        lock.lock();
+        try {
+            drain();
+            touchedWhileSeeding = null;
+            ready = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Visits up to {@code limit} accounts, highest balance first.
+     */
+    void top(int limit, BalanceVisitor visitor) {
+        page(0, limit, visitor);
+    }
+
+    /**
+     * Visits up to {@code limit} accounts after skipping the {@code offset} highest, highest balance first.
+     */
+    void page(long offset, int limit, BalanceVisitor visitor) {
+        lock.lock();
+        try {
+            drain();
+            // Descends to the first account to visit, keeping the ancestors that come after it on the path
+            ArrayDeque<Node> path = new ArrayDeque<>();
+            Node current = root;
+            long skip = offset;
+            while (current != null) {
+                int left = size(current.left);
+                if (skip < left) {
+                    path.push(current);
+                    current = current.left;
+                } else if (skip == left) {
+                    path.push(current);
+                    current = null;
+                } else {
+                    skip -= left + 1;
+                    current = current.right;
+                }
+            }
+            int visited = 0;
+            while ((current != null || !path.isEmpty()) && visited < limit) {
+                while (current != null) {
+                    path.push(current);
+                    current = current.left;
+                }
+                current = path.pop();
+                visitor.visit(current.uuid, current.balance);
+                visited++;
+                current = current.right;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rank of an account, where accounts with equal balances share a rank (1 = highest).
+     *
+     * @return the rank, or -1 if the account is unknown
+     */
+    int rank(UUID uuid) {
+        lock.lock();
+        try {
+            drain();
+            Node node = nodes.get(uuid);
+            if (node == null) {
+                return -1;
+            }
+
+            int richer = 0;
+            Node current = root;
+            while (current != null) {
+                if (current.balance > node.balance) {
+                    richer += size(current.left) + 1;
+                    current = current.right;
+                } else {
+                    current = current.left;
+                }
+            }
+            return richer + 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        Update update;
+        while ((update = updates.poll()) != null) {
+            queued.decrementAndGet();
+            if (touchedWhileSeeding != null) {
+                touchedWhileSeeding.add(update.uuid());
+            }
+
+            Node previous = nodes.remove(update.uuid());
+            if (previous != null) {
+                root = remove(root, previous);
+            }
+            if (!update.removed()) {
+                insert(new Node(update.uuid(), update.balance()));
+            }
+        }
+    }
+
+    private void insert(Node node) {
+        nodes.put(node.uuid, node);
+        root = insert(root, node);
+    }
+
+    private Node insert(Node tree, Node node) {
+        if (tree == null) {
+            return node;
+        }
+        if (node.priority > tree.priority) {
+            split(tree, node);
+            node.left = splitLeft;
+            node.right = splitRight;
+            recount(node);
+            return node;
+        }
+        if (before(node, tree)) {
+            tree.left = insert(tree.left, node);
+        } else {
+            tree.right = insert(tree.right, node);
+        }
+        recount(tree);
+        return tree;
+    }
+
+    private Node remove(Node tree, Node node) {
+        if (tree == node) {
+            return merge(tree.left, tree.right);
+        }
+        if (before(node, tree)) {
+            tree.left = remove(tree.left, node);
+        } else {
+            tree.right = remove(tree.right, node);
+        }
+        recount(tree);
+        return tree;
+    }
+
+    /**
+     * Splits a tree around a key that is not in it, leaving the halves in splitLeft and splitRight.
+     */
+    private void split(Node tree, Node key) {
+        if (tree == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        if (before(tree, key)) {
+            split(tree.right, key);
+            tree.right = splitLeft;
+            splitLeft = tree;
+        } else {
+            split(tree.left, key);
+            tree.left = splitRight;
+            splitRight = tree;
+        }
+        recount(tree);
+    }
+
+    /**
+     * Joins two trees where every key in the first sorts before every key in the second.
+     */
+    private Node merge(Node first, Node second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            recount(first);
+            return first;
+        }
+        second.left = merge(first, second.left);
+        recount(second);
+        return second;
+    }
+
+    private static boolean before(Node a, Node b) {
+        int cmp = Long.compare(b.balance, a.balance);
+        return cmp != 0 ? cmp < 0 : DatabaseProvider.compareUuids(a.uuid, b.uuid) < 0;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void recount(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+}
@@ -0,0 +1,17 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One page of the leaderboard, shared by everyone who views it while it is cached. Pages start at 1.
+ */
+public record LeaderboardPage(int number, List<Entry> entries, boolean hasNext) {
+
+    /**
+     * An account on the page, with its position on the whole leaderboard and the name its player
+     * was last seen with, or null if they have not joined since names were first recorded.
+     */
+    public record Entry(int position, UUID uuid, String name, double balance) {
+    }
+}
@@ -0,0 +1,156 @@
+package dev.improve.simpleeconomy.managers;
+
+import dev.improve.simpleeconomy.database.LedgerEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ledger entries waiting to be written, in a bounded lock-free ring that any number of threads append to while
+ * they hold account locks. Each slot carries a sequence number, so a producer claims a slot with one CAS
+ * and publishes it with one release store, and the single consumer never blocks a producer.
+ * <p>
+ * When the ring is full, entries spill into an unbounded lock-free queue rather than being dropped or blocking
+ * the caller; that only happens when the database falls behind for a long time. New entries keep going to that queue
+ * until it has been drained, so the entries of an account are drained in the order they were offered.
+ */
+final class Ledger {
+
+    /**
+     * Who made a change: the player or console behind a command, and the plugin that called SimpleEconomy.
+     * Either may be null.
+     */
+    record Cause(String actor, String source) {
+
+        // The width of the actor and source columns
+        private static final int MAX_LENGTH = 64;
+
+        Cause {
+            actor = truncate(actor);
+            source = truncate(source);
+        }
+
+        private static String truncate(String value) {
+            return value == null || value.length() <= MAX_LENGTH ? value : value.substring(0, MAX_LENGTH);
+        }
+    }
+
+    private final LedgerEntry[] slots;
+    // Slot i is free for the producer at position p when its sequence is p, and ready for the consumer when it is p + 1
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final ConcurrentLinkedQueue<LedgerEntry> overflow = new ConcurrentLinkedQueue<>();
+    private final LongAdder overflowed;
+    // Entries of a failed write, retried before anything else. Only touched by the consumer
+    private final List<LedgerEntry> retry = new ArrayList<>();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    Ledger(int capacity, LongAdder overflowed) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new LedgerEntry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.overflowed = overflowed;
+    }
+
+    /**
+     * Entries waiting to be written, give or take those being appended right now.
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get()) + overflow.size();
+    }
+
+    /**
+     * Whether enough entries are waiting that a write should start early.
+     */
+    boolean isBacklogged() {
+        return tail.get() - head.get() >= slots.length / 2;
+    }
+
+    /**
+     * Appends an entry. Safe to call from any thread and never blocks.
+     */
+    void offer(LedgerEntry entry) {
+        if (!overflow.isEmpty()) {
+            // Entries already spilled are drained after the ring, so anything newer has to queue behind them
+            overflow.add(entry);
+            overflowed.increment();
+            return;
+        }
+        long position = tail.get();
+        while (true) {
+            int slot = (int) (position & mask);
+            long difference = sequences.getAcquire(slot) - position;
+            if (difference == 0) {
+                if (tail.weakCompareAndSetVolatile(position, position + 1)) {
+                    slots[slot] = entry;
+                    sequences.setRelease(slot, position + 1);
+                    return;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The consumer has not freed this slot yet, so the ring is full
+                overflow.add(entry);
+                overflowed.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code max} entries into the list, retried entries first. Only one thread may drain at a time.
+     *
+     * @return the number of entries moved
+     */
+    int drainTo(List<LedgerEntry> into, int max) {
+        int moved = 0;
+        while (moved < max && !retry.isEmpty()) {
+            into.add(retry.removeLast());
+            moved++;
+        }
+
+        long position = head.get();
+        while (moved < max) {
+            int slot = (int) (position & mask);
+            if (sequences.getAcquire(slot) != position + 1) {
+                break;
+            }
+            into.add(slots[slot]);
+            slots[slot] = null;
+            sequences.setRelease(slot, position + slots.length);
+            position++;
+            moved++;
+        }
+        head.set(position);
+
+        LedgerEntry spilled;
+        while (moved < max && (spilled = overflow.poll()) != null) {
+            into.add(spilled);
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * Puts the entries of a failed write back, to be drained first next time. Only called by the draining thread.
+     */
+    void requeue(List<LedgerEntry> entries) {
+        // Kept reversed so removeLast hands them back in their original order
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            retry.add(entries.get(i));
+        }
+    }
+}
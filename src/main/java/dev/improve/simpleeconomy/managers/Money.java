@@ -0,0 +1,36 @@
+package dev.improve.simpleeconomy.managers;
+
+/**
+ * Converts between the {@code double} amounts used by Vault and the fixed-point minor units
+ * balances are kept in. With two fractional digits, 12.34 is stored as 1234.
+ */
+final class Money {
+
+    private final int digits;
+    private final long scale;
+
+    Money(int digits) {
+        this.digits = digits;
+        long scale = 1L;
+        for (int i = 0; i < digits; i++) {
+            scale *= 10L;
+        }
+        this.scale = scale;
+    }
+
+    int digits() {
+        return digits;
+    }
+
+    /**
+     * Rounds to the nearest minor unit. Amounts beyond the {@code long} range saturate.
+     */
+    long toMinor(double amount) {
+        // Math.round saturates on its own; keep MISSING out of the negative end
+        return Math.max(Math.round(amount * scale), -Long.MAX_VALUE);
+    }
+
+    double toMajor(long minor) {
+        return minor / (double) scale;
+    }
+}
@@ -0,0 +1,100 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Every player name SimpleEconomy has seen, looked up without case in either direction.
+ * Names are kept sorted, so completing a prefix only visits the names it returns.
+ * When two players have used the same name, it belongs to whoever was seen with it last.
+ * Changes are remembered until the next flush takes them for saving.
+ */
+final class NameIndex {
+
+    private final ConcurrentSkipListMap<String, UUID> byName = new ConcurrentSkipListMap<>();
+    private final Map<UUID, String> byId = new ConcurrentHashMap<>();
+    private final Map<UUID, String> unsaved = new ConcurrentHashMap<>();
+
+    UUID resolve(String name) {
+        return byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    String name(UUID uuid) {
+        return byId.get(uuid);
+    }
+
+    /**
+     * Up to {@code limit} names starting with the prefix, ignoring case, in alphabetical order.
+     */
+    List<String> complete(String prefix, int limit) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        List<String> matches = new ArrayList<>(Math.min(limit, 16));
+        for (Map.Entry<String, UUID> entry : byName.tailMap(from).entrySet()) {
+            if (matches.size() >= limit || !entry.getKey().startsWith(from)) {
+                break;
+            }
+            String name = byId.get(entry.getValue());
+            // Skips a name whose owner is being renamed right now
+            if (name != null && name.equalsIgnoreCase(entry.getKey())) {
+                matches.add(name);
+            }
+        }
+        return matches;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    /**
+     * Records a player's current name and queues it for saving.
+     *
+     * @return whether anything changed
+     */
+    boolean update(UUID uuid, String name) {
+        if (name.equals(byId.get(uuid)) && uuid.equals(resolve(name))) {
+            return false;
+        }
+        load(uuid, name);
+        unsaved.put(uuid, name);
+        return true;
+    }
+
+    /**
+     * Records a name that is already saved.
+     */
+    synchronized void load(UUID uuid, String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        String previous = byId.put(uuid, name);
+        if (previous != null) {
+            String previousKey = previous.toLowerCase(Locale.ROOT);
+            if (!previousKey.equals(key)) {
+                byName.remove(previousKey, uuid);
+            }
+        }
+        byName.put(key, uuid);
+    }
+
+    /**
+     * Removes and returns the names changed since the last call.
+     */
+    Map<UUID, String> takeUnsaved() {
+        Map<UUID, String> taken = new HashMap<>(unsaved);
+        // Keeps any name that changed again while copying
+        taken.forEach(unsaved::remove);
+        return taken;
+    }
+
+    /**
+     * Puts back names that could not be saved, unless a newer one was queued since.
+     */
+    void requeue(Map<UUID, String> names) {
+        names.forEach(unsaved::putIfAbsent);
+    }
+}
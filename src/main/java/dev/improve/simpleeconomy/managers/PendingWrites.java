@@ -0,0 +1,107 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Changes waiting to be written to the database, coalesced to the latest state per account.
+ * An account is either queued with a balance, queued for deletion, or not queued at all.
+ * Accounts changed together, such as the two sides of a transfer, are linked into groups
+ * that a flush writes in the same transaction.
+ * Not thread-safe; {@link DatabaseManager} guards the live queue with its pending write lock
+ * and never modifies a queue once it has been handed to a flush.
+ */
+final class PendingWrites {
+
+    private final BalanceMap balances = new BalanceMap();
+    private final Set<UUID> deletes = new HashSet<>();
+    // Union-find parent of each linked account that is not the root of its group
+    private final Map<UUID, UUID> links = new HashMap<>();
+    private final Set<UUID> linked = new HashSet<>();
+
+    int size() {
+        return balances.size() + deletes.size();
+    }
+
+    boolean isEmpty() {
+        return balances.isEmpty() && deletes.isEmpty();
+    }
+
+    /**
+     * @return the queued balance, or {@link BalanceMap#MISSING} if none is queued
+     */
+    long get(UUID uuid) {
+        return balances.get(uuid);
+    }
+
+    boolean isDeleted(UUID uuid) {
+        return !deletes.isEmpty() && deletes.contains(uuid);
+    }
+
+    /**
+     * Whether the account has any queued change, which is then newer than anything being flushed.
+     */
+    boolean contains(UUID uuid) {
+        return balances.get(uuid) != BalanceMap.MISSING || isDeleted(uuid);
+    }
+
+    void put(UUID uuid, long balance) {
+        balances.put(uuid, balance);
+        if (!deletes.isEmpty()) {
+            deletes.remove(uuid);
+        }
+    }
+
+    void delete(UUID uuid) {
+        balances.remove(uuid);
+        deletes.add(uuid);
+    }
+
+    /**
+     * Puts two accounts in the same group, along with everything already linked to either.
+     */
+    void link(UUID first, UUID second) {
+        linked.add(first);
+        linked.add(second);
+        UUID firstRoot = group(first);
+        UUID secondRoot = group(second);
+        if (!firstRoot.equals(secondRoot)) {
+            links.put(firstRoot, secondRoot);
+        }
+    }
+
+    /**
+     * Shortens the links it follows, which leaves the groups unchanged, so a flush may call it on its snapshot.
+     *
+     * @return an account that identifies the group, the same for every account in it; an account never linked is its own group
+     */
+    UUID group(UUID uuid) {
+        if (links.isEmpty()) {
+            return uuid;
+        }
+        UUID parent;
+        while ((parent = links.get(uuid)) != null) {
+            UUID grandparent = links.get(parent);
+            if (grandparent != null) {
+                links.put(uuid, grandparent);
+            }
+            uuid = parent;
+        }
+        return uuid;
+    }
+
+    boolean isLinked(UUID uuid) {
+        return !linked.isEmpty() && linked.contains(uuid);
+    }
+
+    void forEachBalance(BalanceVisitor visitor) {
+        balances.forEach(visitor);
+    }
+
+    Set<UUID> deletes() {
+        return deletes;
+    }
+}
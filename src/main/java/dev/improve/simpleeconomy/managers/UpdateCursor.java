@@ -0,0 +1,75 @@
+package dev.improve.simpleeconomy.managers;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * How far this server has read the change log of a shared database.
+ * Sequence numbers are taken when a write starts but only become visible when it commits, so a number can show up
+ * after a higher one was already read. Numbers skipped over are kept as gaps and read again until they show up
+ * or time out, which is how rolled back writes, that never show up, are eventually forgotten.
+ * <p>
+ * Writes to the same account wait for each other's row lock, so one account's entries still arrive in order.
+ * Not thread-safe.
+ */
+final class UpdateCursor {
+
+    // A run of missing sequence numbers up to and including "to"
+    private record Gap(long to, long deadline) {
+    }
+
+    private final NavigableMap<Long, Gap> gaps = new TreeMap<>();
+    private final long timeoutNanos;
+    private long last;
+
+    UpdateCursor(long start, long timeoutNanos) {
+        this.last = start;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * The sequence number to read after: just before the oldest gap, or the newest entry read.
+     */
+    long position() {
+        return gaps.isEmpty() ? last : gaps.firstKey() - 1;
+    }
+
+    /**
+     * Marks an entry as read.
+     *
+     * @param now System.nanoTime()
+     * @return false if it was read before
+     */
+    boolean accept(long sequence, long now) {
+        if (sequence > last) {
+            if (sequence > last + 1) {
+                gaps.put(last + 1, new Gap(sequence - 1, now + timeoutNanos));
+            }
+            last = sequence;
+            return true;
+        }
+
+        Map.Entry<Long, Gap> entry = gaps.floorEntry(sequence);
+        if (entry == null || entry.getValue().to() < sequence) {
+            return false;
+        }
+        long from = entry.getKey();
+        Gap gap = entry.getValue();
+        gaps.remove(from);
+        if (from < sequence) {
+            gaps.put(from, new Gap(sequence - 1, gap.deadline()));
+        }
+        if (sequence < gap.to()) {
+            gaps.put(sequence + 1, gap);
+        }
+        return true;
+    }
+
+    /**
+     * Forgets gaps older than the timeout; their writes are taken to have rolled back.
+     */
+    void expire(long now) {
+        gaps.values().removeIf(gap -> gap.deadline() - now < 0);
+    }
+}
@@ -0,0 +1,110 @@
+package dev.improve.simpleeconomy.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of non-negative values, usually nanosecond durations.
+ * Each power of two is split into 32 buckets, so reported percentiles are within about 3% of the recorded values.
+ * Recording is one atomic increment and never allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long value) {
+        long clamped = Math.max(0L, value);
+        counts.incrementAndGet(bucket(clamped));
+        total.increment();
+        sum.add(clamped);
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0.0 : (double) sum() / count;
+    }
+
+    /**
+     * @param fraction the percentile as a fraction, e.g. 0.999
+     * @return the value at that percentile, or 0 if nothing was recorded
+     */
+    public long percentile(double fraction) {
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            recorded += counts.get(i);
+        }
+        if (recorded == 0) {
+            return 0L;
+        }
+
+        long target = Math.max(1L, (long) Math.ceil(fraction * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return midpoint(i);
+            }
+        }
+        return midpoint(BUCKETS - 1);
+    }
+
+    public long max() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return midpoint(i);
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Clears the histogram. Values recorded concurrently may be kept or lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0L);
+        }
+        total.reset();
+        sum.reset();
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    private static long midpoint(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (SUB_BUCKETS + sub) * width + width / 2;
+    }
+}
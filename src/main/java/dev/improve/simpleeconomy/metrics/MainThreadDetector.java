@@ -0,0 +1,298 @@
+package dev.improve.simpleeconomy.metrics;
+
+import dev.improve.simpleeconomy.database.BalanceAddition;
+import dev.improve.simpleeconomy.database.BalanceUpdate;
+import dev.improve.simpleeconomy.database.DatabaseProvider;
+import dev.improve.simpleeconomy.database.LedgerEntry;
+import dev.improve.simpleeconomy.database.SharedDatabaseProvider;
+import dev.improve.simpleeconomy.database.StoredBalance;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Wraps a provider and reports queries made on the server's main thread, which stall the tick for a database round trip.
+ * Each query is blamed on the first other plugin found on the call stack. Every plugin is logged with a stack trace
+ * at most once per interval, together with how many such queries it caused since its last report.
+ */
+public class MainThreadDetector implements DatabaseProvider {
+
+    private static final int MAX_FRAMES = 48;
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private final DatabaseProvider delegate;
+    private final BooleanSupplier onMainThread;
+    private final Function<Class<?>, String> pluginOf;
+    private final String ownName;
+    private final LongAdder total;
+    private final Logger logger;
+    private final Map<String, Offender> offenders = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile long logIntervalMillis;
+
+    private static final class Offender {
+        final LongAdder calls = new LongAdder();
+        long lastLogged;
+    }
+
+    private MainThreadDetector(DatabaseProvider delegate, BooleanSupplier onMainThread, Function<Class<?>, String> pluginOf,
+                              String ownName, Metrics metrics, Logger logger) {
+        this.delegate = delegate;
+        this.onMainThread = onMainThread;
+        this.pluginOf = pluginOf;
+        this.ownName = ownName;
+        this.total = metrics.counter("db.mainThread");
+        this.logger = logger;
+    }
+
+    /**
+     * Wraps a provider, keeping a shared provider shared.
+     *
+     * @param pluginOf the name of the plugin that loaded a class, or null if it is not a plugin class
+     */
+    public static MainThreadDetector wrap(DatabaseProvider delegate, BooleanSupplier onMainThread,
+                                          Function<Class<?>, String> pluginOf, String ownName, Metrics metrics, Logger logger) {
+        return delegate instanceof SharedDatabaseProvider shared
+                ? new Shared(shared, onMainThread, pluginOf, ownName, metrics, logger)
+                : new MainThreadDetector(delegate, onMainThread, pluginOf, ownName, metrics, logger);
+    }
+
+    /**
+     * Turns reporting on or off. It starts off, so startup and shutdown work on the main thread is not reported.
+     */
+    public void configure(boolean enabled, long logIntervalSeconds) {
+        this.logIntervalMillis = logIntervalSeconds * 1000L;
+        this.enabled = enabled;
+    }
+
+    final void check(String query) {
+        if (!enabled || !onMainThread.getAsBoolean()) {
+            return;
+        }
+        total.increment();
+
+        List<StackWalker.StackFrame> frames = WALKER.walk(stream -> stream.skip(2).limit(MAX_FRAMES).toList());
+        String culprit = culprit(frames);
+        Offender offender = offenders.computeIfAbsent(culprit, ignored -> new Offender());
+        offender.calls.increment();
+
+        long now = System.currentTimeMillis();
+        synchronized (offender) {
+            if (offender.lastLogged != 0 && now - offender.lastLogged < logIntervalMillis) {
+                return;
+            }
+            offender.lastLogged = now;
+        }
+
+        StringBuilder trace = new StringBuilder();
+        for (StackWalker.StackFrame frame : frames) {
+            trace.append("\n\tat ").append(frame.toStackTraceElement());
+        }
+        logger.warning(culprit + " made SimpleEconomy run a database query (" + query + ") on the main thread, "
+                + offender.calls.sumThenReset() + " time(s) since its last report. Use the async API or cached balances instead:"
+                + trace);
+    }
+
+    private String culprit(List<StackWalker.StackFrame> frames) {
+        boolean own = false;
+        for (StackWalker.StackFrame frame : frames) {
+            String plugin = pluginOf.apply(frame.getDeclaringClass());
+            if (plugin == null) {
+                continue;
+            }
+            if (!plugin.equals(ownName)) {
+                return plugin;
+            }
+            own = true;
+        }
+        return own ? ownName : "Unknown";
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        delegate.initialize();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public boolean hasBalance(UUID uuid) throws SQLException {
+        check("hasBalance");
+        return delegate.hasBalance(uuid);
+    }
+
+    @Override
+    public Double loadBalance(UUID uuid) throws SQLException {
+        check("loadBalance");
+        return delegate.loadBalance(uuid);
+    }
+
+    @Override
+    public void saveBalance(UUID uuid, double balance) throws SQLException {
+        check("saveBalance");
+        delegate.saveBalance(uuid, balance);
+    }
+
+    @Override
+    public void saveBalances(Map<UUID, Double> balances) throws SQLException {
+        check("saveBalances");
+        delegate.saveBalances(balances);
+    }
+
+    @Override
+    public void deleteBalance(UUID uuid) throws SQLException {
+        check("deleteBalance");
+        delegate.deleteBalance(uuid);
+    }
+
+    @Override
+    public Map<UUID, Double> getTopBalances(int limit) throws SQLException {
+        check("getTopBalances");
+        return delegate.getTopBalances(limit);
+    }
+
+    @Override
+    public Map<UUID, Double> getTopBalancesAfter(double balance, UUID uuid, int limit) throws SQLException {
+        check("getTopBalancesAfter");
+        return delegate.getTopBalancesAfter(balance, uuid, limit);
+    }
+
+    @Override
+    public void forEachBalance(BiConsumer<UUID, Double> consumer) throws SQLException {
+        check("forEachBalance");
+        delegate.forEachBalance(consumer);
+    }
+
+    @Override
+    public void saveNames(Map<UUID, String> names) throws SQLException {
+        check("saveNames");
+        delegate.saveNames(names);
+    }
+
+    @Override
+    public void forEachName(BiConsumer<UUID, String> consumer) throws SQLException {
+        check("forEachName");
+        delegate.forEachName(consumer);
+    }
+
+    @Override
+    public void saveLedger(List<LedgerEntry> entries) throws SQLException {
+        check("saveLedger");
+        delegate.saveLedger(entries);
+    }
+
+    @Override
+    public List<LedgerEntry> getLedger(UUID uuid, int limit) throws SQLException {
+        check("getLedger");
+        return delegate.getLedger(uuid, limit);
+    }
+
+    @Override
+    public int pruneLedger(long before) throws SQLException {
+        check("pruneLedger");
+        return delegate.pruneLedger(before);
+    }
+
+    @Override
+    public double getTotalBalance() throws SQLException {
+        check("getTotalBalance");
+        return delegate.getTotalBalance();
+    }
+
+    @Override
+    public int getPlayerCount() throws SQLException {
+        check("getPlayerCount");
+        return delegate.getPlayerCount();
+    }
+
+    @Override
+    public int getPlayerRank(UUID uuid) throws SQLException {
+        check("getPlayerRank");
+        return delegate.getPlayerRank(uuid);
+    }
+
+    @Override
+    public int migrateLegacyRows(int limit) throws SQLException {
+        check("migrateLegacyRows");
+        return delegate.migrateLegacyRows(limit);
+    }
+
+    @Override
+    public int maxConnections() {
+        return delegate.maxConnections();
+    }
+
+    @Override
+    public void registerMetrics(Metrics metrics) {
+        delegate.registerMetrics(metrics);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    private static final class Shared extends MainThreadDetector implements SharedDatabaseProvider {
+
+        private final SharedDatabaseProvider shared;
+
+        Shared(SharedDatabaseProvider shared, BooleanSupplier onMainThread, Function<Class<?>, String> pluginOf,
+               String ownName, Metrics metrics, Logger logger) {
+            super(shared, onMainThread, pluginOf, ownName, metrics, logger);
+            this.shared = shared;
+        }
+
+        @Override
+        public boolean isShared() {
+            return shared.isShared();
+        }
+
+        @Override
+        public StoredBalance loadStoredBalance(UUID uuid) throws SQLException {
+            check("loadStoredBalance");
+            return shared.loadStoredBalance(uuid);
+        }
+
+        @Override
+        public Map<UUID, StoredBalance> addToBalances(Map<UUID, BalanceAddition> additions) throws SQLException {
+            check("addToBalances");
+            return shared.addToBalances(additions);
+        }
+
+        @Override
+        public List<BalanceUpdate> getBalanceUpdates(long after, int limit) throws SQLException {
+            check("getBalanceUpdates");
+            return shared.getBalanceUpdates(after, limit);
+        }
+
+        @Override
+        public long getLatestBalanceUpdate() throws SQLException {
+            check("getLatestBalanceUpdate");
+            return shared.getLatestBalanceUpdate();
+        }
+
+        @Override
+        public Map<UUID, Long> getOwnVersions(Set<UUID> uuids) throws SQLException {
+            check("getOwnVersions");
+            return shared.getOwnVersions(uuids);
+        }
+
+        @Override
+        public int pruneBalanceUpdates(long before) throws SQLException {
+            check("pruneBalanceUpdates");
+            return shared.pruneBalanceUpdates(before);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package dev.improve.simpleeconomy.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, histograms and gauges for one plugin instance.
+ * Components register what they record once, when they are created, and keep the returned object;
+ * the hot paths then only touch lock-free counters. Names keep their registration order for display.
+ */
+public final class Metrics {
+
+    private final Map<String, LatencyHistogram> timers = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram> distributions = new LinkedHashMap<>();
+    private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new LinkedHashMap<>();
+    private volatile long since = System.currentTimeMillis();
+
+    /**
+     * A histogram of durations in nanoseconds.
+     */
+    public synchronized LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, ignored -> new LatencyHistogram());
+    }
+
+    /**
+     * A histogram of plain values, such as batch sizes.
+     */
+    public synchronized LatencyHistogram distribution(String name) {
+        return distributions.computeIfAbsent(name, ignored -> new LatencyHistogram());
+    }
+
+    public synchronized LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, ignored -> new LongAdder());
+    }
+
+    /**
+     * A value read only when the metrics are displayed, such as a queue length.
+     */
+    public synchronized void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public synchronized Map<String, LatencyHistogram> timers() {
+        return new LinkedHashMap<>(timers);
+    }
+
+    public synchronized Map<String, LatencyHistogram> distributions() {
+        return new LinkedHashMap<>(distributions);
+    }
+
+    public synchronized Map<String, LongAdder> counters() {
+        return new LinkedHashMap<>(counters);
+    }
+
+    public synchronized Map<String, DoubleSupplier> gauges() {
+        return new LinkedHashMap<>(gauges);
+    }
+
+    public long count(String counter) {
+        LongAdder adder;
+        synchronized (this) {
+            adder = counters.get(counter);
+        }
+        return adder == null ? 0L : adder.sum();
+    }
+
+    public double gauge(String name) {
+        DoubleSupplier value;
+        synchronized (this) {
+            value = gauges.get(name);
+        }
+        return value == null ? 0.0 : value.getAsDouble();
+    }
+
+    /**
+     * When counting started, as epoch milliseconds.
+     */
+    public long since() {
+        return since;
+    }
+
+    /**
+     * Starts counting afresh. Gauges are unaffected.
+     */
+    public synchronized void reset() {
+        timers.values().forEach(LatencyHistogram::reset);
+        distributions.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongAdder::reset);
+        since = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,138 @@
+package dev.improve.simpleeconomy.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Serves a {@link Metrics} registry in the Prometheus text exposition format.
+ * Timers become summaries in seconds, distributions plain summaries, counters and gauges keep their type.
+ * A scrape only reads counters that are already in memory, on the exporter's own thread.
+ */
+public final class PrometheusExporter {
+
+    private static final String PREFIX = "simpleeconomy_";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Metrics metrics;
+    private final Logger logger;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public PrometheusExporter(Metrics metrics, Logger logger) {
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    public void start(String bind, int port, String path) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+        } catch (IOException ex) {
+            logger.severe("Failed to start the Prometheus exporter on " + bind + ":" + port + ": " + ex.getMessage());
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "SimpleEconomy-Metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext(path, this::handle);
+        server.start();
+        logger.info("Prometheus metrics available on http://" + bind + ":" + port + path);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    String render() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Map.Entry<String, LatencyHistogram> entry : metrics.timers().entrySet()) {
+            summary(out, metricName(entry.getKey()) + "_seconds", entry.getValue(), 1e-9);
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : metrics.distributions().entrySet()) {
+            summary(out, metricName(entry.getKey()), entry.getValue(), 1.0);
+        }
+        for (Map.Entry<String, LongAdder> entry : metrics.counters().entrySet()) {
+            String name = metricName(entry.getKey()) + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, DoubleSupplier> entry : metrics.gauges().entrySet()) {
+            String name = metricName(entry.getKey());
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            out.append(name).append(' ').append(entry.getValue().getAsDouble()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String name, LatencyHistogram histogram, double scale) {
+        long count = histogram.count();
+        out.append("# TYPE ").append(name).append(" summary\n");
+        for (double quantile : QUANTILES) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(count == 0 ? Double.NaN : histogram.percentile(quantile) * scale).append('\n');
+        }
+        out.append(name).append("_sum ").append(histogram.sum() * scale).append('\n');
+        out.append(name).append("_count ").append(count).append('\n');
+    }
+
+    /**
+     * Turns a registry name such as {@code db.loadBalance} into {@code simpleeconomy_db_load_balance}.
+     */
+    static String metricName(String name) {
+        StringBuilder out = new StringBuilder(PREFIX.length() + name.length() + 4).append(PREFIX);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                out.append('_').append(Character.toLowerCase(c));
+            } else if (Character.isLetterOrDigit(c)) {
+                out.append(c);
+            } else {
+                out.append('_');
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,350 @@
+package dev.improve.simpleeconomy.metrics;
+
+import dev.improve.simpleeconomy.database.BalanceAddition;
+import dev.improve.simpleeconomy.database.BalanceUpdate;
+import dev.improve.simpleeconomy.database.DatabaseProvider;
+import dev.improve.simpleeconomy.database.LedgerEntry;
+import dev.improve.simpleeconomy.database.SharedDatabaseProvider;
+import dev.improve.simpleeconomy.database.StoredBalance;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Wraps any provider and records how long each query takes, failed ones included.
+ * Create one with {@link #wrap(DatabaseProvider, Metrics)}, which keeps a shared provider shared.
+ */
+public class TimedProvider implements DatabaseProvider {
+
+    private final DatabaseProvider delegate;
+    private final LatencyHistogram has;
+    private final LatencyHistogram load;
+    private final LatencyHistogram save;
+    private final LatencyHistogram saveBatch;
+    private final LatencyHistogram delete;
+    private final LatencyHistogram top;
+    private final LatencyHistogram scan;
+    private final LatencyHistogram total;
+    private final LatencyHistogram count;
+    private final LatencyHistogram rank;
+    private final LatencyHistogram migrate;
+    private final LatencyHistogram saveNames;
+    private final LatencyHistogram topAfter;
+    private final LatencyHistogram scanNames;
+    private final LatencyHistogram saveLedger;
+    private final LatencyHistogram ledger;
+    private final LatencyHistogram pruneLedger;
+
+    private TimedProvider(DatabaseProvider delegate, Metrics metrics) {
+        this.delegate = delegate;
+        this.has = metrics.timer("db.hasBalance");
+        this.load = metrics.timer("db.loadBalance");
+        this.save = metrics.timer("db.saveBalance");
+        this.saveBatch = metrics.timer("db.saveBalances");
+        this.delete = metrics.timer("db.deleteBalance");
+        this.top = metrics.timer("db.getTopBalances");
+        this.scan = metrics.timer("db.forEachBalance");
+        this.total = metrics.timer("db.getTotalBalance");
+        this.count = metrics.timer("db.getPlayerCount");
+        this.rank = metrics.timer("db.getPlayerRank");
+        this.migrate = metrics.timer("db.migrateLegacyRows");
+        this.saveNames = metrics.timer("db.saveNames");
+        this.topAfter = metrics.timer("db.getTopBalancesAfter");
+        this.scanNames = metrics.timer("db.forEachName");
+        this.saveLedger = metrics.timer("db.saveLedger");
+        this.ledger = metrics.timer("db.getLedger");
+        this.pruneLedger = metrics.timer("db.pruneLedger");
+    }
+
+    public static TimedProvider wrap(DatabaseProvider delegate, Metrics metrics) {
+        return delegate instanceof SharedDatabaseProvider shared
+                ? new Shared(shared, metrics)
+                : new TimedProvider(delegate, metrics);
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        delegate.initialize();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public boolean hasBalance(UUID uuid) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.hasBalance(uuid);
+        } finally {
+            has.recordSince(start);
+        }
+    }
+
+    @Override
+    public Double loadBalance(UUID uuid) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.loadBalance(uuid);
+        } finally {
+            load.recordSince(start);
+        }
+    }
+
+    @Override
+    public void saveBalance(UUID uuid, double balance) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            delegate.saveBalance(uuid, balance);
+        } finally {
+            save.recordSince(start);
+        }
+    }
+
+    @Override
+    public void saveBalances(Map<UUID, Double> balances) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            delegate.saveBalances(balances);
+        } finally {
+            saveBatch.recordSince(start);
+        }
+    }
+
+    @Override
+    public void deleteBalance(UUID uuid) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            delegate.deleteBalance(uuid);
+        } finally {
+            delete.recordSince(start);
+        }
+    }
+
+    @Override
+    public Map<UUID, Double> getTopBalances(int limit) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTopBalances(limit);
+        } finally {
+            top.recordSince(start);
+        }
+    }
+
+    @Override
+    public Map<UUID, Double> getTopBalancesAfter(double balance, UUID uuid, int limit) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTopBalancesAfter(balance, uuid, limit);
+        } finally {
+            topAfter.recordSince(start);
+        }
+    }
+
+    @Override
+    public void forEachBalance(BiConsumer<UUID, Double> consumer) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            delegate.forEachBalance(consumer);
+        } finally {
+            scan.recordSince(start);
+        }
+    }
+
+    @Override
+    public void saveNames(Map<UUID, String> names) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            delegate.saveNames(names);
+        } finally {
+            saveNames.recordSince(start);
+        }
+    }
+
+    @Override
+    public void forEachName(BiConsumer<UUID, String> consumer) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            delegate.forEachName(consumer);
+        } finally {
+            scanNames.recordSince(start);
+        }
+    }
+
+    @Override
+    public void saveLedger(List<LedgerEntry> entries) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            delegate.saveLedger(entries);
+        } finally {
+            saveLedger.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<LedgerEntry> getLedger(UUID uuid, int limit) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getLedger(uuid, limit);
+        } finally {
+            ledger.recordSince(start);
+        }
+    }
+
+    @Override
+    public int pruneLedger(long before) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.pruneLedger(before);
+        } finally {
+            pruneLedger.recordSince(start);
+        }
+    }
+
+    @Override
+    public double getTotalBalance() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTotalBalance();
+        } finally {
+            total.recordSince(start);
+        }
+    }
+
+    @Override
+    public int getPlayerCount() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getPlayerCount();
+        } finally {
+            count.recordSince(start);
+        }
+    }
+
+    @Override
+    public int getPlayerRank(UUID uuid) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getPlayerRank(uuid);
+        } finally {
+            rank.recordSince(start);
+        }
+    }
+
+    @Override
+    public int migrateLegacyRows(int limit) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.migrateLegacyRows(limit);
+        } finally {
+            migrate.recordSince(start);
+        }
+    }
+
+    @Override
+    public int maxConnections() {
+        return delegate.maxConnections();
+    }
+
+    @Override
+    public void registerMetrics(Metrics metrics) {
+        delegate.registerMetrics(metrics);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    private static final class Shared extends TimedProvider implements SharedDatabaseProvider {
+
+        private final SharedDatabaseProvider shared;
+        private final LatencyHistogram loadStored;
+        private final LatencyHistogram add;
+        private final LatencyHistogram updates;
+        private final LatencyHistogram latestUpdate;
+        private final LatencyHistogram ownVersions;
+        private final LatencyHistogram pruneUpdates;
+
+        Shared(SharedDatabaseProvider shared, Metrics metrics) {
+            super(shared, metrics);
+            this.shared = shared;
+            this.loadStored = metrics.timer("db.loadStoredBalance");
+            this.add = metrics.timer("db.addToBalances");
+            this.updates = metrics.timer("db.getBalanceUpdates");
+            this.latestUpdate = metrics.timer("db.getLatestBalanceUpdate");
+            this.ownVersions = metrics.timer("db.getOwnVersions");
+            this.pruneUpdates = metrics.timer("db.pruneBalanceUpdates");
+        }
+
+        @Override
+        public boolean isShared() {
+            return shared.isShared();
+        }
+
+        @Override
+        public StoredBalance loadStoredBalance(UUID uuid) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return shared.loadStoredBalance(uuid);
+            } finally {
+                loadStored.recordSince(start);
+            }
+        }
+
+        @Override
+        public Map<UUID, StoredBalance> addToBalances(Map<UUID, BalanceAddition> additions) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return shared.addToBalances(additions);
+            } finally {
+                add.recordSince(start);
+            }
+        }
+
+        @Override
+        public List<BalanceUpdate> getBalanceUpdates(long after, int limit) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return shared.getBalanceUpdates(after, limit);
+            } finally {
+                updates.recordSince(start);
+            }
+        }
+
+        @Override
+        public long getLatestBalanceUpdate() throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return shared.getLatestBalanceUpdate();
+            } finally {
+                latestUpdate.recordSince(start);
+            }
+        }
+
+        @Override
+        public Map<UUID, Long> getOwnVersions(Set<UUID> uuids) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return shared.getOwnVersions(uuids);
+            } finally {
+                ownVersions.recordSince(start);
+            }
+        }
+
+        @Override
+        public int pruneBalanceUpdates(long before) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return shared.pruneBalanceUpdates(before);
+            } finally {
+                pruneUpdates.recordSince(start);
+            }
+        }
+    }
+}
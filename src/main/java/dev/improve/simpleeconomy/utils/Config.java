@@ -10,8 +10,46 @@ public class Config {
     public static double DEFAULT_BALANCE;
     public static double MIN_BALANCE;
     public static double MAX_BALANCE;
+    public static int FRACTIONAL_DIGITS;
     public static String CURRENCY_SYMBOL;
     public static long SAVE_INTERVAL_TICKS;
+    public static long TOTALS_RECONCILE_INTERVAL_TICKS;
+    public static int TAB_COMPLETE_LIMIT;
+    public static int BALTOP_PAGE_SIZE;
+    public static long BALTOP_CACHE_TTL_MS;
+    public static int WRITE_BATCH_SIZE;
+    public static int MAX_PENDING_WRITES;
+
+    // Write-ahead journal
+    public static boolean JOURNAL_ENABLED;
+    public static int JOURNAL_SEGMENT_SIZE_KB;
+
+    // Ledger
+    public static boolean LEDGER_ENABLED;
+    public static int LEDGER_BUFFER_SIZE;
+    public static long LEDGER_WRITE_INTERVAL_TICKS;
+    public static int LEDGER_BATCH_SIZE;
+    public static int LEDGER_RETENTION_MONTHS;
+    public static int LEDGER_HISTORY_SIZE;
+
+    // PlaceholderAPI cache
+    public static long PLACEHOLDER_BALANCE_TTL;
+    public static long PLACEHOLDER_RANK_TTL;
+    public static long PLACEHOLDER_TOTALS_TTL;
+    public static String PLACEHOLDER_LOADING;
+
+    // Vault reads and main-thread checks
+    public static boolean VAULT_STRICT_READS;
+    public static long VAULT_READ_TIMEOUT_MS;
+    public static double VAULT_FALLBACK_BALANCE;
+    public static boolean MAIN_THREAD_DETECTOR;
+    public static long MAIN_THREAD_DETECTOR_INTERVAL_SECONDS;
+
+    // Prometheus exporter
+    public static boolean PROMETHEUS_ENABLED;
+    public static String PROMETHEUS_BIND;
+    public static int PROMETHEUS_PORT;
+    public static String PROMETHEUS_PATH;
 
     // Database settings
     public static String DATABASE_TYPE;
@@ -21,6 +59,18 @@ public class Config {
     public static String MYSQL_USERNAME;
     public static String MYSQL_PASSWORD;
     public static int MYSQL_POOL_SIZE;
+    public static boolean MYSQL_SYNC_ENABLED;
+    public static long MYSQL_SYNC_POLL_INTERVAL_TICKS;
+    public static int MYSQL_SYNC_BATCH_SIZE;
+    public static int MYSQL_SYNC_RETENTION_MINUTES;
+    public static int SQLITE_READ_CONNECTIONS;
+    public static String DATABASE_EXECUTOR;
+    public static int DATABASE_EXECUTOR_THREADS;
+    public static String DATABASE_IMPORT_FROM;
+    public static int LOG_SEGMENT_SIZE_MB;
+    public static long LOG_COMPACTION_INTERVAL_SECONDS;
+    public static int MIGRATION_BATCH_SIZE;
+    public static long MIGRATION_PAUSE_MS;
 
     public Config(SimpleEconomy plugin) {
         this.plugin = plugin;
@@ -39,8 +89,43 @@ public class Config {
         }
 
         MAX_BALANCE = Math.max(configuredMax, MIN_BALANCE);
+        FRACTIONAL_DIGITS = Math.max(0, Math.min(8, cfg.getInt("settings.fractional-digits", 2)));
         CURRENCY_SYMBOL = cfg.getString("settings.currency-symbol", "$");
         SAVE_INTERVAL_TICKS = Math.max(0L, cfg.getLong("settings.save-interval-ticks", 1200L));
+        TOTALS_RECONCILE_INTERVAL_TICKS = Math.max(0L, cfg.getLong("settings.totals-reconcile-interval-ticks", 6000L));
+        TAB_COMPLETE_LIMIT = Math.max(1, cfg.getInt("settings.tab-complete-limit", 50));
+        BALTOP_PAGE_SIZE = Math.max(1, cfg.getInt("baltop.page-size", 10));
+        BALTOP_CACHE_TTL_MS = Math.max(0L, cfg.getLong("baltop.cache-ttl-ms", 5000L));
+
+        WRITE_BATCH_SIZE = Math.max(1, cfg.getInt("write-behind.batch-size", 1000));
+        MAX_PENDING_WRITES = Math.max(1, cfg.getInt("write-behind.max-pending", 50000));
+
+        JOURNAL_ENABLED = cfg.getBoolean("journal.enabled", true);
+        JOURNAL_SEGMENT_SIZE_KB = Math.max(64, cfg.getInt("journal.segment-size-kb", 4096));
+
+        LEDGER_ENABLED = cfg.getBoolean("ledger.enabled", false);
+        LEDGER_BUFFER_SIZE = Math.max(64, Math.min(1 << 20, cfg.getInt("ledger.buffer-size", 8192)));
+        LEDGER_WRITE_INTERVAL_TICKS = Math.max(1L, cfg.getLong("ledger.write-interval-ticks", 100L));
+        LEDGER_BATCH_SIZE = Math.max(1, cfg.getInt("ledger.batch-size", 1000));
+        LEDGER_RETENTION_MONTHS = Math.max(0, cfg.getInt("ledger.retention-months", 12));
+        LEDGER_HISTORY_SIZE = Math.max(1, cfg.getInt("ledger.history-size", 10));
+
+        PLACEHOLDER_BALANCE_TTL = Math.max(0L, cfg.getLong("placeholders.ttl.balance", 5000L));
+        PLACEHOLDER_RANK_TTL = Math.max(0L, cfg.getLong("placeholders.ttl.rank", 10000L));
+        PLACEHOLDER_TOTALS_TTL = Math.max(0L, cfg.getLong("placeholders.ttl.totals", 30000L));
+        PLACEHOLDER_LOADING = cfg.getString("placeholders.loading", "...");
+
+        VAULT_STRICT_READS = cfg.getBoolean("vault.strict-reads", false);
+        VAULT_READ_TIMEOUT_MS = Math.max(0L, cfg.getLong("vault.read-timeout-ms", 20L));
+        VAULT_FALLBACK_BALANCE = cfg.getDouble("vault.fallback-balance", 0.0);
+        MAIN_THREAD_DETECTOR = cfg.getBoolean("main-thread-detector.enabled", true);
+        MAIN_THREAD_DETECTOR_INTERVAL_SECONDS = Math.max(1L, cfg.getLong("main-thread-detector.log-interval-seconds", 300L));
+
+        PROMETHEUS_ENABLED = cfg.getBoolean("metrics.prometheus.enabled", false);
+        PROMETHEUS_BIND = cfg.getString("metrics.prometheus.bind", "127.0.0.1");
+        PROMETHEUS_PORT = cfg.getInt("metrics.prometheus.port", 9464);
+        String path = cfg.getString("metrics.prometheus.path", "/metrics");
+        PROMETHEUS_PATH = path.startsWith("/") ? path : "/" + path;
 
         // Database settings
         DATABASE_TYPE = cfg.getString("database.type", "sqlite").toLowerCase();
@@ -50,5 +135,17 @@ public class Config {
         MYSQL_USERNAME = cfg.getString("database.mysql.username", "root");
         MYSQL_PASSWORD = cfg.getString("database.mysql.password", "");
         MYSQL_POOL_SIZE = cfg.getInt("database.mysql.pool-size", 10);
+        MYSQL_SYNC_ENABLED = cfg.getBoolean("database.mysql.sync.enabled", false);
+        MYSQL_SYNC_POLL_INTERVAL_TICKS = Math.max(1L, cfg.getLong("database.mysql.sync.poll-interval-ticks", 10L));
+        MYSQL_SYNC_BATCH_SIZE = Math.max(1, cfg.getInt("database.mysql.sync.batch-size", 1000));
+        MYSQL_SYNC_RETENTION_MINUTES = Math.max(1, cfg.getInt("database.mysql.sync.retention-minutes", 10));
+        SQLITE_READ_CONNECTIONS = Math.max(1, cfg.getInt("database.sqlite.read-connections", 4));
+        DATABASE_EXECUTOR = cfg.getString("database.executor.type", "fixed").toLowerCase();
+        DATABASE_EXECUTOR_THREADS = Math.max(1, cfg.getInt("database.executor.threads", 2));
+        DATABASE_IMPORT_FROM = cfg.getString("database.import-from", "").toLowerCase();
+        LOG_SEGMENT_SIZE_MB = Math.max(1, cfg.getInt("database.log.segment-size-mb", 64));
+        LOG_COMPACTION_INTERVAL_SECONDS = Math.max(0L, cfg.getLong("database.log.compaction-interval-seconds", 300L));
+        MIGRATION_BATCH_SIZE = Math.max(1, cfg.getInt("database.migration.batch-size", 2000));
+        MIGRATION_PAUSE_MS = Math.max(0L, cfg.getLong("database.migration.pause-ms", 50L));
     }
 }
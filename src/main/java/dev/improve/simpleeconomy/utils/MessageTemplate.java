@@ -0,0 +1,103 @@
+package dev.improve.simpleeconomy.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A colorized message split into literal text and {@code {placeholder}} slots once, when messages are loaded.
+ * Rendering fills a single exactly-sized StringBuilder. Immutable, so one instance is shared by every thread.
+ */
+public final class MessageTemplate {
+
+    private final String text;
+    // literals[i] comes before slots[i]; the last literal follows the last slot
+    private final String[] literals;
+    private final String[] slots;
+    private final int literalLength;
+
+    private MessageTemplate(String text, String[] literals, String[] slots) {
+        this.text = text;
+        this.literals = literals;
+        this.slots = slots;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Splits already colorized text at each {@code {name}}, where the name is letters, digits, '-' or '_'.
+     */
+    static MessageTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int literalStart = 0;
+        int open = text.indexOf('{');
+        while (open >= 0) {
+            int close = open + 1;
+            while (close < text.length() && isNameChar(text.charAt(close))) {
+                close++;
+            }
+            if (close < text.length() && close > open + 1 && text.charAt(close) == '}') {
+                literals.add(text.substring(literalStart, open));
+                slots.add(text.substring(open + 1, close));
+                literalStart = close + 1;
+                open = text.indexOf('{', literalStart);
+            } else {
+                open = text.indexOf('{', open + 1);
+            }
+        }
+        literals.add(text.substring(literalStart));
+        return new MessageTemplate(text, literals.toArray(String[]::new), slots.toArray(String[]::new));
+    }
+
+    private static boolean isNameChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_';
+    }
+
+    /**
+     * The colorized message with its placeholders left in.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Fills the placeholders from name and value pairs, such as {@code render("player", name, "amount", amount)}.
+     * Placeholders without a value are left as they are.
+     */
+    public String render(String... placeholders) {
+        if (slots.length == 0) {
+            return text;
+        }
+
+        String[] values = new String[slots.length];
+        int length = literalLength;
+        for (int i = 0; i < slots.length; i++) {
+            String value = valueOf(slots[i], placeholders);
+            values[i] = value != null ? value : "{" + slots[i] + "}";
+            length += values[i].length();
+        }
+
+        StringBuilder out = new StringBuilder(length);
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]).append(values[i]);
+        }
+        return out.append(literals[slots.length]).toString();
+    }
+
+    private static String valueOf(String slot, String[] placeholders) {
+        for (int i = 0; i + 1 < placeholders.length; i += 2) {
+            if (placeholders[i].equals(slot)) {
+                return placeholders[i + 1];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -1,43 +1,75 @@
 package dev.improve.simpleeconomy.utils;
 
-import dev.improve.simpleeconomy.utils.Config;
 import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Messages from the config, colorized and compiled into {@link MessageTemplate}s once when the config is loaded.
+ * A new instance is created on every reload.
+ */
 public class MessageUtil {
 
-    private final FileConfiguration config;
-    private final Pattern hexPattern = Pattern.compile("&#([A-Fa-f0-9]{6})");
+    private static final Pattern HEX_PATTERN = Pattern.compile("&#([A-Fa-f0-9]{6})");
 
-    public MessageUtil(FileConfiguration config) {
-        this.config = config;
+    // Configured messages, plus the defaults of messages missing from the config once they are first used
+    private final Map<String, MessageTemplate> templates = new ConcurrentHashMap<>();
+    private final MoneyFormat moneyFormat;
+
+    /**
+     * @param fractionalDigits the digits balances are kept to, which can differ from the config until a restart
+     */
+    public MessageUtil(FileConfiguration config, int fractionalDigits) {
+        ConfigurationSection messages = config.getConfigurationSection("messages");
+        if (messages != null) {
+            for (String path : messages.getKeys(true)) {
+                if (messages.isString(path)) {
+                    templates.put(path, MessageTemplate.compile(translate(messages.getString(path))));
+                }
+            }
+        }
+        this.moneyFormat = new MoneyFormat(Config.CURRENCY_SYMBOL, fractionalDigits);
     }
 
     public String getMessage(String path) {
-        String message = config.getString("messages." + path);
-        if (message == null) {
+        MessageTemplate template = templates.get(path);
+        if (template == null) {
             return ChatColor.RED + "Message not found: " + path;
         }
-        return colorize(message);
+        return template.text();
+    }
+
+    /**
+     * The message at the path, or the default if it is not configured, with placeholders filled from
+     * name and value pairs: {@code getMessage("pay.sent", def, "player", name, "amount", amount)}.
+     */
+    public String getMessage(String path, String def, String... placeholders) {
+        return template(path, def).render(placeholders);
     }
 
-    public String getMessage(String path, String def) {
-        String message = config.getString("messages." + path, def);
-        return colorize(message);
+    public MessageTemplate template(String path, String def) {
+        MessageTemplate template = templates.get(path);
+        if (template == null) {
+            template = templates.computeIfAbsent(path, ignored -> MessageTemplate.compile(translate(def)));
+        }
+        return template;
     }
 
     public String colorize(String input) {
+        return translate(input);
+    }
+
+    private static String translate(String input) {
         if (input == null) {
             return "";
         }
-        Matcher matcher = hexPattern.matcher(input);
-        StringBuffer buffer = new StringBuffer();
+        Matcher matcher = HEX_PATTERN.matcher(input);
+        StringBuilder buffer = new StringBuilder(input.length() + 32);
         while (matcher.find()) {
             String hexCode = matcher.group(1);
             String replacement = net.md_5.bungee.api.ChatColor.of("#" + hexCode).toString();
@@ -48,9 +80,6 @@ public class MessageUtil {
     }
 
     public String formatCurrency(double amount) {
-        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.US);
-        DecimalFormat formatter = new DecimalFormat("#,##0.00", symbols);
-        return Config.CURRENCY_SYMBOL + formatter.format(amount);
+        return moneyFormat.format(amount);
     }
-
 }
@@ -0,0 +1,83 @@
+package dev.improve.simpleeconomy.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Formats amounts as the currency symbol followed by a number with thousands separators and a fixed number
+ * of decimals, as {@code DecimalFormat("#,##0.00")} does in the US locale, rounding half to even.
+ * Digits are written straight into the output, so apart from amounts within a rounding error of halfway
+ * between two cents, nothing but the result is allocated. Thread-safe.
+ */
+public final class MoneyFormat {
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    // Doubles above this are not exact integers, so they are left to DecimalFormat
+    private static final double MAX_SCALED = 1L << 53;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final String symbol;
+    private final int decimals;
+    private final ThreadLocal<DecimalFormat> fallback;
+
+    public MoneyFormat(String symbol, int decimals) {
+        this.symbol = symbol;
+        this.decimals = Math.max(0, Math.min(8, decimals));
+        String pattern = this.decimals == 0 ? "#,##0" : "#,##0." + "0".repeat(this.decimals);
+        this.fallback = ThreadLocal.withInitial(() -> new DecimalFormat(pattern, DecimalFormatSymbols.getInstance(Locale.US)));
+    }
+
+    public String format(double amount) {
+        return appendTo(new StringBuilder(symbol.length() + 24), amount).toString();
+    }
+
+    public StringBuilder appendTo(StringBuilder out, double amount) {
+        out.append(symbol);
+        double product = amount * POWERS_OF_TEN[decimals];
+        if (!(Math.abs(product) < MAX_SCALED)) {
+            return out.append(fallback.get().format(amount));
+        }
+        long scaled;
+        if (Math.abs(product - Math.floor(product) - 0.5) <= 2 * Math.ulp(product)) {
+            // Too close to halfway for the rounded product to decide, so round the exact value
+            scaled = new BigDecimal(amount).setScale(decimals, RoundingMode.HALF_EVEN).unscaledValue().longValue();
+        } else {
+            scaled = (long) Math.rint(product);
+        }
+
+        // DecimalFormat keeps the sign of negative amounts that round to zero
+        if (Double.doubleToRawLongBits(amount) < 0) {
+            out.append('-');
+        }
+        long units = Math.abs(scaled);
+        long whole = units / POWERS_OF_TEN[decimals];
+        int digits = 1;
+        while (digits < POWERS_OF_TEN.length && whole >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            out.append((char) ('0' + whole / POWERS_OF_TEN[i] % 10));
+            if (i > 0 && i % 3 == 0) {
+                out.append(',');
+            }
+        }
+
+        if (decimals > 0) {
+            out.append('.');
+            long fraction = units % POWERS_OF_TEN[decimals];
+            for (int i = decimals - 1; i >= 0; i--) {
+                out.append((char) ('0' + fraction / POWERS_OF_TEN[i] % 10));
+            }
+        }
+        return out;
+    }
+}